@@ -2,7 +2,9 @@ package com.pixl.backend.config;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
 
 import org.springframework.beans.factory.annotation.Value;
@@ -18,11 +20,44 @@ public class MinioConfig {
     @Value("${minio.secret-key}")
     private String secretKey;
 
+    @Value("${minio.public-endpoint}")
+    private String publicEndpoint;
+
+    @Value("${minio.region}")
+    private String region;
+
     @Bean
+    @Primary
     public MinioClient minioClient() {
         return MinioClient.builder()
                 .endpoint(endpoint)
                 .credentials(accessKey, secretKey)
                 .build();
     }
+
+    /**
+     * Non-blocking client for the reactive delivery path: calls complete on the
+     * HTTP client's own threads instead of holding the caller's.
+     */
+    @Bean
+    public MinioAsyncClient minioAsyncClient() {
+        return MinioAsyncClient.builder()
+                .endpoint(endpoint)
+                .credentials(accessKey, secretKey)
+                .build();
+    }
+
+    /**
+     * Client used only to sign URLs handed to browsers: the signature covers the
+     * host, so it signs for the endpoint clients reach. With the region set,
+     * signing is a local computation with no bucket-location lookup.
+     */
+    @Bean
+    public MinioClient presignClient() {
+        return MinioClient.builder()
+                .endpoint(publicEndpoint)
+                .credentials(accessKey, secretKey)
+                .region(region)
+                .build();
+    }
 }
@@ -0,0 +1,52 @@
+package com.pixl.backend.config;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.TomcatHttpHandlerAdapter;
+import org.springframework.web.cors.CorsConfiguration;
+import org.springframework.web.cors.reactive.CorsWebFilter;
+import org.springframework.web.cors.reactive.UrlBasedCorsConfigurationSource;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+
+import com.pixl.backend.controller.StreamHandler;
+
+/**
+ * Mounts the reactive stream endpoints next to the MVC dispatcher. The app
+ * stays a servlet application; the WebFlux router gets its own servlet that
+ * uses Tomcat's non-blocking IO, so only /api/stream/** is reactive.
+ */
+@Configuration
+public class ReactiveStreamConfig {
+
+    @Value("${app.stream.reactive.enabled}")
+    private boolean enabled;
+
+    @Bean
+    public ServletRegistrationBean<TomcatHttpHandlerAdapter> reactiveStreamServlet(StreamHandler streamHandler) {
+        // Browser players fetch media cross-origin, like the @CrossOrigin MVC endpoints
+        CorsConfiguration cors = new CorsConfiguration();
+        cors.addAllowedOrigin("*");
+        cors.setAllowedMethods(List.of("GET", "HEAD"));
+        cors.addAllowedHeader("*");
+        cors.setExposedHeaders(List.of("Content-Range", "Content-Length", "Accept-Ranges", "ETag"));
+        UrlBasedCorsConfigurationSource corsSource = new UrlBasedCorsConfigurationSource();
+        corsSource.registerCorsConfiguration("/**", cors);
+
+        HttpHandler handler = RouterFunctions.toHttpHandler(streamHandler.routes(),
+                HandlerStrategies.builder().webFilter(new CorsWebFilter(corsSource)).build());
+
+        ServletRegistrationBean<TomcatHttpHandlerAdapter> registration =
+                new ServletRegistrationBean<>(new TomcatHttpHandlerAdapter(handler), "/api/stream/*");
+        registration.setName("reactiveStream");
+        registration.setAsyncSupported(true);
+        registration.setLoadOnStartup(1);
+        registration.setEnabled(enabled);
+        return registration;
+    }
+}
@@ -0,0 +1,73 @@
+package com.pixl.backend.controller;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+import com.pixl.backend.service.ObjectStatCache;
+
+/**
+ * Range header handling shared by the servlet and reactive stream endpoints.
+ */
+final class ByteRanges {
+
+    private ByteRanges() {
+    }
+
+    /**
+     * Whether the Range header asks for a single byte range. Multi-range
+     * requests are served as the full object, which RFC 7233 allows.
+     */
+    static boolean isSingle(String range) {
+        return range != null && range.startsWith("bytes=") && !range.contains(",");
+    }
+
+    /**
+     * If-Range: a partial response is only valid if the client's copy is still
+     * current, otherwise the full object is sent.
+     */
+    static boolean stillValid(String ifRange, String etag, ObjectStatCache.ObjectStat stat) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(etag);
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return date.toEpochSecond() == stat.getLastModified().toEpochSecond();
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses a single "bytes=start-end", "bytes=start-" or "bytes=-suffix" range.
+     * Returns inclusive {start, end}, or null if it cannot be satisfied.
+     */
+    static long[] parse(String range, long totalSize) {
+        String spec = range.substring("bytes=".length()).trim();
+        if (!spec.contains("-")) {
+            return null;
+        }
+
+        try {
+            String startPart = spec.substring(0, spec.indexOf('-')).trim();
+            String endPart = spec.substring(spec.indexOf('-') + 1).trim();
+
+            long start;
+            long end;
+            if (startPart.isEmpty()) {
+                long suffix = Long.parseLong(endPart);
+                start = Math.max(0, totalSize - suffix);
+                end = totalSize - 1;
+            } else {
+                start = Long.parseLong(startPart);
+                end = endPart.isEmpty() ? totalSize - 1 : Math.min(Long.parseLong(endPart), totalSize - 1);
+            }
+            return start > end || start >= totalSize ? null : new long[] { start, end };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
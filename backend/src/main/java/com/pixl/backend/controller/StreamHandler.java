@@ -0,0 +1,253 @@
+package com.pixl.backend.controller;
+
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import com.pixl.backend.service.HLSService;
+import com.pixl.backend.service.JitPackager;
+import com.pixl.backend.service.MediaDeliveryService;
+import com.pixl.backend.service.MinioService;
+import com.pixl.backend.service.ObjectStatCache;
+import com.pixl.backend.service.PlaylistCache;
+import com.pixl.backend.service.PlaylistService;
+import com.pixl.backend.service.PresignedUrlService;
+import com.pixl.backend.service.SegmentPrefetcher;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Non-blocking playback endpoints under /api/stream, mirroring
+ * /api/videos/{id}/stream. Mounted on Tomcat's non-blocking servlet IO by
+ * ReactiveStreamConfig, so a viewer waiting on MinIO or draining a segment
+ * slowly holds no request thread; writes follow the client's demand.
+ *
+ * Cache hits are read from memory, or from disk through an asynchronous file
+ * channel. Misses that get cached are loaded through the same coalesced path
+ * as the servlet endpoints, on the bounded elastic scheduler; everything else
+ * is fetched with the asynchronous MinIO client.
+ */
+@Component
+public class StreamHandler {
+
+    private final PlaylistService playlistService;
+    private final ObjectStatCache objectStatCache;
+    private final MediaDeliveryService mediaDeliveryService;
+    private final MinioService minioService;
+    private final PresignedUrlService presignedUrlService;
+    private final SegmentPrefetcher segmentPrefetcher;
+    private final Counter bytesStreamed;
+
+    @Value("${minio.bucket.videos-transcoded}")
+    private String transcodedBucket;
+
+    @Value("${app.delivery.buffer-size}")
+    private int bufferSize;
+
+    public StreamHandler(PlaylistService playlistService, ObjectStatCache objectStatCache,
+            MediaDeliveryService mediaDeliveryService, MinioService minioService,
+            PresignedUrlService presignedUrlService, SegmentPrefetcher segmentPrefetcher,
+            MeterRegistry meterRegistry) {
+        this.playlistService = playlistService;
+        this.objectStatCache = objectStatCache;
+        this.mediaDeliveryService = mediaDeliveryService;
+        this.minioService = minioService;
+        this.presignedUrlService = presignedUrlService;
+        this.segmentPrefetcher = segmentPrefetcher;
+        this.bytesStreamed = meterRegistry.counter("delivery.bytes.streamed");
+    }
+
+    /**
+     * Routes relative to the servlet mapping. The first match wins, so the
+     * fixed file names come before the segment catch-all.
+     */
+    public RouterFunction<ServerResponse> routes() {
+        return RouterFunctions.route()
+                .GET("/{id}/master.m3u8", request -> playlist(request,
+                        () -> playlistService.master(request.pathVariable("id")),
+                        PlaylistService.HLS_CONTENT_TYPE, "max-age=10"))
+                .GET("/{id}/manifest.mpd", request -> playlist(request,
+                        () -> playlistService.dashManifest(request.pathVariable("id")),
+                        PlaylistService.DASH_CONTENT_TYPE, "max-age=10"))
+                .GET("/{id}/{quality}/playlist.m3u8", request -> playlist(request,
+                        () -> playlistService.media(request.pathVariable("id"), request.pathVariable("quality")),
+                        PlaylistService.HLS_CONTENT_TYPE, playlistService.mediaCacheControl()))
+                .GET("/{id}/{quality}/" + HLSService.IFRAME_PLAYLIST, request -> playlist(request,
+                        () -> playlistService.iframes(request.pathVariable("id"), request.pathVariable("quality")),
+                        PlaylistService.HLS_CONTENT_TYPE, playlistService.mediaCacheControl()))
+                .GET("/{id}/{quality}/" + JitPackager.MEDIA_FILE, this::jitMedia)
+                .GET("/{id}/{quality}/{segment}", this::segment)
+                .build();
+    }
+
+    private Mono<ServerResponse> playlist(ServerRequest request, Callable<PlaylistCache.CachedPlaylist> loader,
+            String contentType, String cacheControl) {
+        // Cache misses read MinIO or build a JIT manifest, so they leave the request thread
+        return Mono.fromCallable(loader)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(playlist -> {
+                    boolean gzip = playlist.getGzipBody() != null
+                            && PlaylistCache.acceptsGzip(request.headers().firstHeader(HttpHeaders.ACCEPT_ENCODING));
+                    String etag = gzip ? playlist.getGzipEtag() : playlist.getEtag();
+
+                    return request.checkNotModified(etag)
+                            .switchIfEmpty(Mono.defer(() -> ServerResponse.ok()
+                                    .header(HttpHeaders.CONTENT_TYPE, contentType)
+                                    .header(HttpHeaders.CACHE_CONTROL, cacheControl)
+                                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                                    .headers(headers -> {
+                                        if (gzip) {
+                                            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+                                        }
+                                    })
+                                    .eTag(etag)
+                                    .bodyValue(gzip ? playlist.getGzipBody() : playlist.getBody())));
+                })
+                .onErrorResume(e -> ServerResponse.notFound().build());
+    }
+
+    private Mono<ServerResponse> jitMedia(ServerRequest request) {
+        String id = request.pathVariable("id");
+        String quality = request.pathVariable("quality");
+        return media(request, id, quality, JitPackager.renditionObjectName(id, quality), "video/mp4");
+    }
+
+    private Mono<ServerResponse> segment(ServerRequest request) {
+        String id = request.pathVariable("id");
+        String quality = request.pathVariable("quality");
+        String segment = request.pathVariable("segment");
+        String contentType = HLSService.segmentContentType(segment);
+        if (contentType == null) {
+            return ServerResponse.notFound().build();
+        }
+        return media(request, id, quality, id + "/hls/" + quality + "/" + segment, contentType);
+    }
+
+    private Mono<ServerResponse> media(ServerRequest request, String id, String quality, String objectName,
+            String contentType) {
+        if (presignedUrlService.redirectsMedia()) {
+            return Mono.fromCallable(() -> presignedUrlService.redirectUri(transcodedBucket, objectName, null))
+                    .flatMap(uri -> ServerResponse.status(HttpStatus.FOUND).location(uri).build())
+                    .onErrorResume(e -> ServerResponse.notFound().build());
+        }
+
+        String range = request.headers().firstHeader(HttpHeaders.RANGE);
+        return Mono.fromFuture(() -> {
+                    try {
+                        return objectStatCache.getAsync(transcodedBucket, objectName);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                })
+                .flatMap(stat -> respond(request, objectName, stat, range, contentType))
+                .doOnSuccess(response -> {
+                    // Only a served segment means playback moved on; 304 and 416 do not
+                    int status = response != null ? response.statusCode().value() : 0;
+                    if (status == HttpStatus.OK.value() || status == HttpStatus.PARTIAL_CONTENT.value()) {
+                        segmentPrefetcher.onSegmentRequest(id, quality, objectName, range);
+                    }
+                })
+                .onErrorResume(e -> ServerResponse.notFound().build());
+    }
+
+    /**
+     * Same semantics as the servlet endpoints: 304/412 from cached object
+     * metadata, 206 for a single satisfiable range, 416 otherwise, and the full
+     * object for no range, multiple ranges or a stale If-Range.
+     */
+    private Mono<ServerResponse> respond(ServerRequest request, String objectName, ObjectStatCache.ObjectStat stat,
+            String range, String contentType) {
+        long totalSize = stat.getSize();
+        String etag = "\"" + stat.getEtag() + "\"";
+
+        return request.checkNotModified(stat.getLastModified().toInstant(), etag)
+                .switchIfEmpty(Mono.defer(() -> {
+                    ServerResponse.BodyBuilder builder;
+                    long offset = 0;
+                    long length = totalSize;
+
+                    String ifRange = request.headers().firstHeader(HttpHeaders.IF_RANGE);
+                    if (ByteRanges.isSingle(range) && ByteRanges.stillValid(ifRange, etag, stat)) {
+                        long[] bounds = ByteRanges.parse(range, totalSize);
+                        if (bounds == null) {
+                            return ServerResponse.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + totalSize)
+                                    .build();
+                        }
+                        offset = bounds[0];
+                        length = bounds[1] - bounds[0] + 1;
+                        builder = ServerResponse.status(HttpStatus.PARTIAL_CONTENT)
+                                .header(HttpHeaders.CONTENT_RANGE,
+                                        "bytes " + bounds[0] + "-" + bounds[1] + "/" + totalSize);
+                    } else {
+                        builder = ServerResponse.ok();
+                    }
+
+                    return builder
+                            .header(HttpHeaders.CONTENT_TYPE, contentType)
+                            .header(HttpHeaders.CACHE_CONTROL, "max-age=31536000")
+                            .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                            .eTag(etag)
+                            .lastModified(stat.getLastModified())
+                            .contentLength(length)
+                            .body(BodyInserters.fromDataBuffers(body(objectName, offset, length, stat)));
+                }));
+    }
+
+    private Flux<DataBuffer> body(String objectName, long offset, long length, ObjectStatCache.ObjectStat stat) {
+        Flux<DataBuffer> body = Mono
+                .fromCallable(() -> mediaDeliveryService.openCached(transcodedBucket, objectName, offset, length, stat))
+                .flatMapMany(media -> read(media, false))
+                .switchIfEmpty(Flux.defer(() -> origin(objectName, offset, length, stat)));
+        return body.doOnNext(buffer -> bytesStreamed.increment(buffer.readableByteCount()));
+    }
+
+    private Flux<DataBuffer> origin(String objectName, long offset, long length, ObjectStatCache.ObjectStat stat) {
+        if (mediaDeliveryService.isCacheable(transcodedBucket, length)) {
+            return Mono.fromCallable(() -> mediaDeliveryService.open(transcodedBucket, objectName, offset, length, stat))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .flatMapMany(media -> read(media, true));
+        }
+
+        return Mono.fromFuture(() -> {
+                    try {
+                        return minioService.downloadFileRangeAsync(transcodedBucket, objectName, offset, length);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                })
+                .flatMapMany(stream -> readStream(stream, true));
+    }
+
+    /**
+     * @param mayBlock the stream may wait on the network, so it is read off the IO thread
+     */
+    private Flux<DataBuffer> read(MediaDeliveryService.Media media, boolean mayBlock) {
+        if (media.getFile() != null) {
+            return DataBufferUtils.read(media.getFile(), DefaultDataBufferFactory.sharedInstance, bufferSize);
+        }
+        return readStream(media.getStream(), mayBlock);
+    }
+
+    private Flux<DataBuffer> readStream(InputStream stream, boolean mayBlock) {
+        Flux<DataBuffer> buffers = DataBufferUtils.readInputStream(() -> stream,
+                DefaultDataBufferFactory.sharedInstance, bufferSize);
+        return mayBlock ? buffers.subscribeOn(Schedulers.boundedElastic()) : buffers;
+    }
+}
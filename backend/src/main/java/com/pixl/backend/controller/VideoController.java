@@ -5,17 +5,31 @@ import com.clickhouse.client.api.command.CommandResponse;
 import com.pixl.backend.dto.InitiateUploadRequest;
 import com.pixl.backend.dto.InitiateUploadResponse;
 import com.pixl.backend.dto.UploadProgressResponse;
+import com.pixl.backend.model.PipelineStage;
 import com.pixl.backend.model.Video;
 import com.pixl.backend.service.ChunkedUploadService;
+import com.pixl.backend.service.HLSService;
+import com.pixl.backend.service.JitPackager;
+import com.pixl.backend.service.MediaDeliveryService;
+import com.pixl.backend.service.MediaStreamer;
 import com.pixl.backend.service.MinioService;
+import com.pixl.backend.service.ObjectStatCache;
+import com.pixl.backend.service.PipelineOrchestrator;
+import com.pixl.backend.service.PlaylistCache;
+import com.pixl.backend.service.PlaylistService;
+import com.pixl.backend.service.PresignedUrlService;
+import com.pixl.backend.service.SegmentPrefetcher;
 import com.pixl.backend.service.VideoService;
 
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/api/videos")
@@ -26,13 +40,35 @@ public class VideoController {
     private final ChunkedUploadService chunkedUploadService;
     private final MinioService minioService;
     private final Client clickhouseClient;
+    private final PipelineOrchestrator pipelineOrchestrator;
+    private final JitPackager jitPackager;
+    private final MediaStreamer mediaStreamer;
+    private final ObjectStatCache objectStatCache;
+    private final MediaDeliveryService mediaDeliveryService;
+    private final SegmentPrefetcher segmentPrefetcher;
+    private final PlaylistCache playlistCache;
+    private final PresignedUrlService presignedUrlService;
+    private final PlaylistService playlistService;
 
     public VideoController(VideoService videoService, ChunkedUploadService chunkedUploadService,
-            MinioService minioService, @Qualifier("clickhouseClient") Client clickhouseClient) {
+            MinioService minioService, @Qualifier("clickhouseClient") Client clickhouseClient,
+            PipelineOrchestrator pipelineOrchestrator, JitPackager jitPackager,
+            MediaStreamer mediaStreamer, ObjectStatCache objectStatCache,
+            MediaDeliveryService mediaDeliveryService, SegmentPrefetcher segmentPrefetcher,
+            PlaylistCache playlistCache, PresignedUrlService presignedUrlService, PlaylistService playlistService) {
         this.videoService = videoService;
         this.chunkedUploadService = chunkedUploadService;
         this.minioService = minioService;
         this.clickhouseClient = clickhouseClient;
+        this.pipelineOrchestrator = pipelineOrchestrator;
+        this.jitPackager = jitPackager;
+        this.mediaStreamer = mediaStreamer;
+        this.objectStatCache = objectStatCache;
+        this.mediaDeliveryService = mediaDeliveryService;
+        this.segmentPrefetcher = segmentPrefetcher;
+        this.playlistCache = playlistCache;
+        this.presignedUrlService = presignedUrlService;
+        this.playlistService = playlistService;
     }
 
     @PostMapping("/upload/initiate")
@@ -93,19 +129,27 @@ public class VideoController {
         return ResponseEntity.ok(videoService.getVideo(id));
     }
 
+    @GetMapping("/{id}/pipeline")
+    public ResponseEntity<List<PipelineStage>> getPipeline(@PathVariable String id) {
+        return ResponseEntity.ok(pipelineOrchestrator.getStages(id));
+    }
+
+    /**
+     * Streams the original upload. Range requests let interrupted downloads resume.
+     */
     @GetMapping("/{id}/download")
-    public ResponseEntity<byte[]> downloadVideo(@PathVariable String id) {
+    public ResponseEntity<StreamingResponseBody> downloadVideo(
+            @PathVariable String id,
+            @RequestHeader(value = "Range", required = false) String range,
+            ServletWebRequest request) {
         try {
             Video video = videoService.getVideo(id);
 
-            byte[] videoData = minioService.downloadFileAsBytes(
-                    "videos-original",
-                    video.getFilePath());
+            HttpHeaders headers = new HttpHeaders();
+            headers.set("Content-Type", "video/mp4");
+            headers.set("Content-Disposition", "attachment; filename=\"" + video.getOriginalFilename() + "\"");
 
-            return ResponseEntity.ok()
-                    .header("Content-Type", "video/mp4")
-                    .header("Content-Disposition", "attachment; filename=\"" + video.getOriginalFilename() + "\"")
-                    .body(videoData);
+            return streamObject(request, "videos-original", video.getFilePath(), headers, range);
 
         } catch (Exception e) {
             return ResponseEntity.internalServerError().build();
@@ -113,7 +157,10 @@ public class VideoController {
     }
 
     @GetMapping("/{id}/thumbnail")
-    public ResponseEntity<byte[]> getThumbnail(@PathVariable String id) {
+    public ResponseEntity<StreamingResponseBody> getThumbnail(
+            @PathVariable String id,
+            @RequestHeader(value = "Range", required = false) String range,
+            ServletWebRequest request) {
         try {
             Video video = videoService.getVideo(id);
 
@@ -121,14 +168,8 @@ public class VideoController {
                 return ResponseEntity.notFound().build();
             }
 
-            byte[] thumbnailData = minioService.downloadFileAsBytes(
-                    "thumbnails",
-                    video.getThumbnailPath());
-
-            return ResponseEntity.ok()
-                    .header("Content-Type", "image/jpeg")
-                    .header("Cache-Control", "max-age=86400") // Cache for 1 day
-                    .body(thumbnailData);
+            return streamObject(request, "thumbnails", video.getThumbnailPath(),
+                    mediaHeaders("image/jpeg", "max-age=86400"), range); // Cache for 1 day
 
         } catch (Exception e) {
             return ResponseEntity.internalServerError().build();
@@ -136,15 +177,9 @@ public class VideoController {
     }
 
     @GetMapping("/{id}/stream/master.m3u8")
-    public ResponseEntity<String> getMasterPlaylist(@PathVariable String id) {
+    public ResponseEntity<byte[]> getMasterPlaylist(@PathVariable String id, ServletWebRequest request) {
         try {
-            String objectName = id + "/hls/master.m3u8";
-            byte[] content = minioService.downloadFileAsBytes("videos-transcoded", objectName);
-
-            return ResponseEntity.ok()
-                    .header("Content-Type", "application/vnd.apple.mpegurl")
-                    .header("Cache-Control", "max-age=10")
-                    .body(new String(content));
+            return servePlaylist(request, playlistService.master(id), PlaylistService.HLS_CONTENT_TYPE, "max-age=10");
 
         } catch (Exception e) {
             return ResponseEntity.notFound().build();
@@ -152,76 +187,213 @@ public class VideoController {
     }
 
     @GetMapping("/{id}/stream/{quality}/playlist.m3u8")
-    public ResponseEntity<String> getQualityPlaylist(
+    public ResponseEntity<byte[]> getQualityPlaylist(
             @PathVariable String id,
-            @PathVariable String quality) {
+            @PathVariable String quality,
+            ServletWebRequest request) {
         try {
-            String objectName = id + "/hls/" + quality + "/playlist.m3u8";
-            byte[] content = minioService.downloadFileAsBytes("videos-transcoded", objectName);
+            return servePlaylist(request, playlistService.media(id, quality), PlaylistService.HLS_CONTENT_TYPE,
+                    playlistService.mediaCacheControl());
 
-            return ResponseEntity.ok()
-                    .header("Content-Type", "application/vnd.apple.mpegurl")
-                    .header("Cache-Control", "max-age=3600")
-                    .body(new String(content));
+        } catch (Exception e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @GetMapping("/{id}/stream/manifest.mpd")
+    public ResponseEntity<byte[]> getDashManifest(@PathVariable String id, ServletWebRequest request) {
+        try {
+            return servePlaylist(request, playlistService.dashManifest(id), PlaylistService.DASH_CONTENT_TYPE,
+                    "max-age=10");
 
         } catch (Exception e) {
             return ResponseEntity.notFound().build();
         }
     }
 
+    /**
+     * The stored fragmented MP4 rendition behind just-in-time HLS and DASH
+     * manifests. Players request its init section and segments by byte range.
+     */
+    @GetMapping("/{id}/stream/{quality}/" + JitPackager.MEDIA_FILE)
+    public ResponseEntity<StreamingResponseBody> getJitMedia(
+            @PathVariable String id,
+            @PathVariable String quality,
+            @RequestHeader(value = "Range", required = false) String range,
+            ServletWebRequest request) {
+        try {
+            String objectName = JitPackager.renditionObjectName(id, quality);
+            ResponseEntity<StreamingResponseBody> response = streamObject(request, "videos-transcoded", objectName,
+                    mediaHeaders("video/mp4", "max-age=31536000"), range);
+            if (!presignedUrlService.redirectsMedia()) {
+                segmentPrefetcher.onSegmentRequest(id, quality, objectName, range);
+            }
+            return response;
+
+        } catch (Exception e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @GetMapping("/{id}/stream/{quality}/iframes.m3u8")
+    public ResponseEntity<byte[]> getIFramePlaylist(
+            @PathVariable String id,
+            @PathVariable String quality,
+            ServletWebRequest request) {
+        try {
+            return servePlaylist(request, playlistService.iframes(id, quality), PlaylistService.HLS_CONTENT_TYPE,
+                    playlistService.mediaCacheControl());
+
+        } catch (Exception e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Serves a segment object, or a byte range of it. Single-file renditions put
+     * every segment in one object and address them with EXT-X-BYTERANGE, so
+     * players fetch them with Range requests.
+     */
     @GetMapping("/{id}/stream/{quality}/{segment}")
-    public ResponseEntity<byte[]> getSegment(
+    public ResponseEntity<StreamingResponseBody> getSegment(
             @PathVariable String id,
             @PathVariable String quality,
-            @PathVariable String segment) {
+            @PathVariable String segment,
+            @RequestHeader(value = "Range", required = false) String range,
+            ServletWebRequest request) {
         try {
             String objectName = id + "/hls/" + quality + "/" + segment;
-            byte[] content = minioService.downloadFileAsBytes("videos-transcoded", objectName);
+            String contentType = HLSService.segmentContentType(segment);
+            if (contentType == null) {
+                return ResponseEntity.notFound().build();
+            }
 
-            return ResponseEntity.ok()
-                    .header("Content-Type", "video/mp2t")
-                    .header("Cache-Control", "max-age=31536000") // Cache segments for 1 year
-                    .body(content);
+            ResponseEntity<StreamingResponseBody> response = streamObject(request, "videos-transcoded", objectName,
+                    mediaHeaders(contentType, "max-age=31536000"), range); // Cache segments for 1 year
+            if (!presignedUrlService.redirectsMedia()) {
+                segmentPrefetcher.onSegmentRequest(id, quality, objectName, range);
+            }
+            return response;
 
         } catch (Exception e) {
             return ResponseEntity.notFound().build();
         }
     }
 
+    /**
+     * Streams an object, or the requested byte range of it, to the response from
+     * the media cache tiers or MinIO. Revalidations (If-None-Match / If-Modified-Since) are
+     * answered 304 from cached object metadata without reading the object.
+     * Multi-range requests are served as the full object, which RFC 7233 allows.
+     * In redirect delivery modes the client is sent to a presigned URL instead,
+     * and MinIO answers the range and conditional headers itself.
+     */
+    private ResponseEntity<StreamingResponseBody> streamObject(ServletWebRequest request, String bucket, String objectName,
+            HttpHeaders headers, String range) throws Exception {
+        if (presignedUrlService.redirectsMedia()) {
+            return ResponseEntity.status(302)
+                    .location(presignedUrlService.redirectUri(bucket, objectName,
+                            headers.getFirst("Content-Disposition")))
+                    .build();
+        }
+
+        ObjectStatCache.ObjectStat stat = objectStatCache.get(bucket, objectName);
+        long totalSize = stat.getSize();
+        String etag = "\"" + stat.getEtag() + "\"";
+
+        headers.setETag(etag);
+        headers.setLastModified(stat.getLastModified());
+        headers.set("Accept-Ranges", "bytes");
+
+        // 304 for a matching If-None-Match / If-Modified-Since, 412 for a failed If-Match / If-Unmodified-Since
+        if (request.checkNotModified(etag, stat.getLastModified().toInstant().toEpochMilli())) {
+            return ResponseEntity.status(request.getResponse().getStatus()).headers(headers).build();
+        }
+
+        if (ByteRanges.isSingle(range) && ByteRanges.stillValid(request.getHeader("If-Range"), etag, stat)) {
+            long[] bounds = ByteRanges.parse(range, totalSize);
+            if (bounds == null) {
+                return ResponseEntity.status(416)
+                        .header("Content-Range", "bytes */" + totalSize)
+                        .build();
+            }
+
+            long length = bounds[1] - bounds[0] + 1;
+            MediaDeliveryService.Media media = mediaDeliveryService.open(bucket, objectName, bounds[0], length, stat);
+
+            return ResponseEntity.status(206)
+                    .headers(headers)
+                    .header("Content-Range", "bytes " + bounds[0] + "-" + bounds[1] + "/" + totalSize)
+                    .contentLength(length)
+                    .body(mediaStreamer.send(request.getRequest(), media));
+        }
+
+        MediaDeliveryService.Media media = mediaDeliveryService.open(bucket, objectName, 0, totalSize, stat);
+
+        return ResponseEntity.ok()
+                .headers(headers)
+                .contentLength(totalSize)
+                .body(mediaStreamer.send(request.getRequest(), media));
+    }
+
+    /**
+     * Sends a cached playlist, gzip encoded when the client accepts it, or 304
+     * when the client's copy is current.
+     */
+    private ResponseEntity<byte[]> servePlaylist(ServletWebRequest request, PlaylistCache.CachedPlaylist playlist,
+            String contentType, String cacheControl) {
+        HttpHeaders headers = mediaHeaders(contentType, cacheControl);
+        headers.set("Vary", "Accept-Encoding");
+
+        boolean gzip = playlist.getGzipBody() != null && PlaylistCache.acceptsGzip(request.getHeader("Accept-Encoding"));
+        String etag = gzip ? playlist.getGzipEtag() : playlist.getEtag();
+        headers.setETag(etag);
+        if (gzip) {
+            headers.set("Content-Encoding", "gzip");
+        }
+
+        if (request.checkNotModified(etag)) {
+            return ResponseEntity.status(request.getResponse().getStatus()).headers(headers).build();
+        }
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(gzip ? playlist.getGzipBody() : playlist.getBody());
+    }
+
+    private HttpHeaders mediaHeaders(String contentType, String cacheControl) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Content-Type", contentType);
+        headers.set("Cache-Control", cacheControl);
+        return headers;
+    }
+
     @GetMapping("/{id}/sprite")
-    public ResponseEntity<byte[]> getSprite(@PathVariable String id) {
+    public ResponseEntity<StreamingResponseBody> getSprite(
+            @PathVariable String id,
+            @RequestHeader(value = "Range", required = false) String range,
+            ServletWebRequest request) {
         try {
             Video video = videoService.getVideo(id);
             if (video.getSpritePath() == null) {
                 return ResponseEntity.notFound().build();
             }
-            byte[] spriteData = minioService.downloadFileAsBytes(
-                    "thumbnails",
-                    video.getSpritePath());
-            return ResponseEntity.ok()
-                    .header("Content-Type", "image/jpeg")
-                    .header("Cache-Control", "max-age=86400") // Cache for 1 day
-                    .body(spriteData);
+            return streamObject(request, "thumbnails", video.getSpritePath(),
+                    mediaHeaders("image/jpeg", "max-age=86400"), range); // Cache for 1 day
         } catch (Exception e) {
             return ResponseEntity.internalServerError().build();
         }
     }
 
     @GetMapping("/{id}/sprite/vtt")
-    public ResponseEntity<byte[]> getSpriteVTT(@PathVariable String id) {
+    public ResponseEntity<StreamingResponseBody> getSpriteVTT(@PathVariable String id, ServletWebRequest request) {
         try {
             Video video = videoService.getVideo(id);
             if (video.getVTTPath() == null) {
                 return ResponseEntity.notFound().build();   
             }
 
-            byte[] vttData = minioService.downloadFileAsBytes(
-                    "thumbnails",
-                    video.getVTTPath());
-            return ResponseEntity.ok()
-                    .header("Content-Type", "text/vtt")
-                    .header("Cache-Control", "max-age=86400") // Cache for 1 day
-                    .body(vttData);
+            return streamObject(request, "thumbnails", video.getVTTPath(),
+                    mediaHeaders("text/vtt", "max-age=86400"), null); // Cache for 1 day
         } catch (Exception e) {
             return ResponseEntity.internalServerError().build();
         }
@@ -232,6 +404,10 @@ public class VideoController {
         try {
             System.out.println("🗑️ Deleting video with ID: " + id);
             minioService.deleteVideoFiles(id);
+            jitPackager.evict(id);
+            playlistCache.invalidate(id);
+            objectStatCache.invalidate(id);
+            mediaDeliveryService.evict(id);
             String sql = "DELETE FROM analytics.video_events WHERE video_id = '"+id+"'";
             System.out.println(sql);
             CommandResponse deleteAnalytics = clickhouseClient.execute(sql).get();
@@ -0,0 +1,111 @@
+package com.pixl.backend.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Byte layout of a fragmented MP4 rendition: the init section (ftyp + moov) and
+ * the media segments, each a contiguous run of moof/mdat fragments.
+ */
+public class Mp4Index {
+
+    private long initLength;
+    private long fileSize;
+    private List<Segment> segments = new ArrayList<>();
+
+    public Mp4Index() {}
+
+    public long getInitLength() {
+        return initLength;
+    }
+
+    public void setInitLength(long initLength) {
+        this.initLength = initLength;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    public void setSegments(List<Segment> segments) {
+        this.segments = segments;
+    }
+
+    @JsonIgnore
+    public double getDurationSeconds() {
+        return segments.stream().mapToDouble(Segment::getDurationSeconds).sum();
+    }
+
+    @JsonIgnore
+    public double getMaxSegmentSeconds() {
+        return segments.stream().mapToDouble(Segment::getDurationSeconds).max().orElse(0);
+    }
+
+    public static class Segment {
+        private long offset;
+        private long length;
+        private double startSeconds;
+        private double durationSeconds;
+        // From offset through the segment's first (key) video sample, for I-frame playlists; 0 in older indexes
+        private long keyframeLength;
+
+        public Segment() {}
+
+        public Segment(long offset, long length, double startSeconds, double durationSeconds) {
+            this.offset = offset;
+            this.length = length;
+            this.startSeconds = startSeconds;
+            this.durationSeconds = durationSeconds;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public void setOffset(long offset) {
+            this.offset = offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public void setLength(long length) {
+            this.length = length;
+        }
+
+        public double getStartSeconds() {
+            return startSeconds;
+        }
+
+        public void setStartSeconds(double startSeconds) {
+            this.startSeconds = startSeconds;
+        }
+
+        public double getDurationSeconds() {
+            return durationSeconds;
+        }
+
+        public void setDurationSeconds(double durationSeconds) {
+            this.durationSeconds = durationSeconds;
+        }
+
+        public long getKeyframeLength() {
+            return keyframeLength;
+        }
+
+        public void setKeyframeLength(long keyframeLength) {
+            this.keyframeLength = keyframeLength;
+        }
+    }
+}
@@ -8,6 +8,7 @@ public class TranscodeMessage implements Serializable {
     private String videoId;
     private String quality;
     private String inputPath;
+    private String encodeProfile;
     private String traceId;  
     private String spanId;
     
@@ -52,6 +53,14 @@ public class TranscodeMessage implements Serializable {
         this.inputPath = inputPath;
     }
     
+    public String getEncodeProfile() {
+        return encodeProfile;
+    }
+    
+    public void setEncodeProfile(String encodeProfile) {
+        this.encodeProfile = encodeProfile;
+    }
+    
     public String getTraceId() {
         return traceId;
     }
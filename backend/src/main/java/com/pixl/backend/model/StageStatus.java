@@ -0,0 +1,8 @@
+package com.pixl.backend.model;
+
+public enum StageStatus {
+    PENDING,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
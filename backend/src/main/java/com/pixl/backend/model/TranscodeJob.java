@@ -43,6 +43,32 @@ public class TranscodeJob {
     
     @Column(name = "created_at")
     private LocalDateTime createdAt = LocalDateTime.now();
+
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
+
+    @Column(name = "lane")
+    private String lane;
+
+    @Column(name = "encode_profile")
+    private String encodeProfile;
+
+    // Average bitrate of the produced rendition, bits per second
+    @Column(name = "output_bitrate")
+    private Long outputBitrate;
+
+    // RFC 6381 codec string of the output, used for the master playlist CODECS attribute
+    @Column(name = "codecs")
+    private String codecs;
+
+    // Media seconds encoded per wall-clock second
+    @Column(name = "encode_speed")
+    private Double encodeSpeed;
+
+    // Bumped by every conditional status transition in TranscodeJobRepository
+    @Version
+    @Column(name = "version", columnDefinition = "BIGINT DEFAULT 0")
+    private long version;
     
     public TranscodeJob() {}
     
@@ -146,4 +172,60 @@ public class TranscodeJob {
     public void setCreatedAt(LocalDateTime createdAt) {
         this.createdAt = createdAt;
     }
+
+    public LocalDateTime getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+    
+    public void setLeaseExpiresAt(LocalDateTime leaseExpiresAt) {
+        this.leaseExpiresAt = leaseExpiresAt;
+    }
+
+    public String getLane() {
+        return lane;
+    }
+    
+    public void setLane(String lane) {
+        this.lane = lane;
+    }
+
+    public String getEncodeProfile() {
+        return encodeProfile;
+    }
+    
+    public void setEncodeProfile(String encodeProfile) {
+        this.encodeProfile = encodeProfile;
+    }
+
+    public Long getOutputBitrate() {
+        return outputBitrate;
+    }
+    
+    public void setOutputBitrate(Long outputBitrate) {
+        this.outputBitrate = outputBitrate;
+    }
+
+    public String getCodecs() {
+        return codecs;
+    }
+    
+    public void setCodecs(String codecs) {
+        this.codecs = codecs;
+    }
+
+    public Double getEncodeSpeed() {
+        return encodeSpeed;
+    }
+    
+    public void setEncodeSpeed(Double encodeSpeed) {
+        this.encodeSpeed = encodeSpeed;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
\ No newline at end of file
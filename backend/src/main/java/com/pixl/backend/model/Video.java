@@ -49,6 +49,9 @@ public class Video {
     @Column(name = "vtt_path")
     private String vTTPath;
 
+    @Column(name = "complexity_score")
+    private Double complexityScore;
+
     protected Video() {
     }
 
@@ -164,4 +167,12 @@ public class Video {
     public void setVTTPath(String vTTPath) {
         this.vTTPath = vTTPath;
     }
+
+    public Double getComplexityScore() {
+        return complexityScore;
+    }
+
+    public void setComplexityScore(Double complexityScore) {
+        this.complexityScore = complexityScore;
+    }
 }
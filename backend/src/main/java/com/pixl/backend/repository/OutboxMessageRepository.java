@@ -0,0 +1,47 @@
+package com.pixl.backend.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.pixl.backend.model.OutboxMessage;
+
+@Repository
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, String> {
+
+    List<OutboxMessage> findBySentAtIsNullAndDeadAtIsNullOrderByCreatedAtAsc(Pageable pageable);
+
+    long countBySentAtIsNullAndDeadAtIsNull();
+
+    // REQUIRES_NEW: the relay also runs from afterCommit callbacks, where a joined
+    // transaction would already be committed and the update silently lost
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("UPDATE OutboxMessage o SET o.sentAt = :sentAt, o.attempts = o.attempts + 1, o.lastError = null "
+            + "WHERE o.id IN :ids")
+    int markSent(@Param("ids") List<String> ids, @Param("sentAt") LocalDateTime sentAt);
+
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("UPDATE OutboxMessage o SET o.attempts = o.attempts + 1, o.lastError = :error WHERE o.id IN :ids")
+    int markFailed(@Param("ids") List<String> ids, @Param("error") String error);
+
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("UPDATE OutboxMessage o SET o.deadAt = :deadAt, o.attempts = o.attempts + 1, o.lastError = :error "
+            + "WHERE o.id = :id")
+    int markDead(@Param("id") String id, @Param("error") String error, @Param("deadAt") LocalDateTime deadAt);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM OutboxMessage o WHERE o.sentAt < :before")
+    int deleteSentBefore(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,77 @@
+package com.pixl.backend.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.pixl.backend.model.PipelineStage;
+import com.pixl.backend.model.StageStatus;
+
+@Repository
+public interface PipelineStageRepository extends JpaRepository<PipelineStage, String> {
+    List<PipelineStage> findByVideoIdOrderByCreatedAtAsc(String videoId);
+
+    Optional<PipelineStage> findByVideoIdAndName(String videoId, String name);
+
+    @Transactional
+    void deleteByVideoId(String videoId);
+
+    List<PipelineStage> findByStatusAndLeaseExpiresAtBefore(StageStatus status, LocalDateTime time);
+
+    /**
+     * Moves a stage from PENDING to RUNNING. Returns 0 when another thread or
+     * instance already claimed it, so each stage is dispatched exactly once.
+     *
+     * @param leaseExpiresAt null for stages whose liveness is tracked elsewhere (transcodes)
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE PipelineStage s SET s.status = com.pixl.backend.model.StageStatus.RUNNING, s.startedAt = :now, "
+            + "s.leaseExpiresAt = :leaseExpiresAt, s.attempts = COALESCE(s.attempts, 0) + 1 "
+            + "WHERE s.videoId = :videoId AND s.name = :name "
+            + "AND s.status = com.pixl.backend.model.StageStatus.PENDING")
+    int claim(@Param("videoId") String videoId, @Param("name") String name, @Param("now") LocalDateTime now,
+            @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE PipelineStage s SET s.leaseExpiresAt = :leaseExpiresAt "
+            + "WHERE s.id = :id AND s.status = com.pixl.backend.model.StageStatus.RUNNING")
+    int extendLease(@Param("id") String id, @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt);
+
+    /**
+     * Compare-and-set from RUNNING to a terminal status. Returns 0 when the stage
+     * is not running, e.g. because the sweeper already requeued or failed it.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE PipelineStage s SET s.status = :status, s.completedAt = :now, s.durationMs = :durationMs, "
+            + "s.errorMessage = :errorMessage, s.leaseExpiresAt = null "
+            + "WHERE s.id = :id AND s.status = com.pixl.backend.model.StageStatus.RUNNING")
+    int finish(@Param("id") String id, @Param("status") StageStatus status, @Param("now") LocalDateTime now,
+            @Param("durationMs") Long durationMs, @Param("errorMessage") String errorMessage);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE PipelineStage s SET s.status = com.pixl.backend.model.StageStatus.PENDING, "
+            + "s.startedAt = null, s.leaseExpiresAt = null "
+            + "WHERE s.id = :id AND s.status = com.pixl.backend.model.StageStatus.RUNNING "
+            + "AND s.leaseExpiresAt < :now")
+    int requeueExpired(@Param("id") String id, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE PipelineStage s SET s.status = com.pixl.backend.model.StageStatus.FAILED, s.completedAt = :now, "
+            + "s.errorMessage = :errorMessage, s.leaseExpiresAt = null "
+            + "WHERE s.id = :id AND s.status = com.pixl.backend.model.StageStatus.RUNNING "
+            + "AND s.leaseExpiresAt < :now")
+    int failExpired(@Param("id") String id, @Param("now") LocalDateTime now,
+            @Param("errorMessage") String errorMessage);
+}
@@ -1,9 +1,14 @@
 package com.pixl.backend.repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.pixl.backend.model.TranscodeJob;
 import com.pixl.backend.model.TranscodeStatus;
@@ -14,4 +19,95 @@ public interface TranscodeJobRepository extends JpaRepository<TranscodeJob, Stri
     List<TranscodeJob> findByStatus(String status);
 
     long countByStatus(TranscodeStatus status);
-}
\ No newline at end of file
+
+    List<TranscodeJob> findByStatusAndLeaseExpiresAtBefore(TranscodeStatus status, LocalDateTime time);
+
+    /**
+     * Extends the lease only while the job is still PROCESSING and owned by the
+     * given worker. Returns 0 when the lease was lost (e.g. requeued by the sweeper).
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE TranscodeJob j SET j.leaseExpiresAt = :leaseExpiresAt, j.version = j.version + 1 "
+            + "WHERE j.id = :id AND j.workerId = :workerId "
+            + "AND j.status = com.pixl.backend.model.TranscodeStatus.PROCESSING")
+    int extendLease(@Param("id") String id,
+            @Param("workerId") String workerId,
+            @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE TranscodeJob j SET j.status = com.pixl.backend.model.TranscodeStatus.QUEUED, "
+            + "j.workerId = null, j.leaseExpiresAt = null, j.retryCount = j.retryCount + 1, j.version = j.version + 1 "
+            + "WHERE j.id = :id AND j.status = com.pixl.backend.model.TranscodeStatus.PROCESSING "
+            + "AND j.leaseExpiresAt < :now")
+    int requeueExpired(@Param("id") String id, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE TranscodeJob j SET j.status = com.pixl.backend.model.TranscodeStatus.FAILED, "
+            + "j.leaseExpiresAt = null, j.errorMessage = :errorMessage, j.version = j.version + 1 "
+            + "WHERE j.id = :id AND j.status = com.pixl.backend.model.TranscodeStatus.PROCESSING "
+            + "AND j.leaseExpiresAt < :now")
+    int failExpired(@Param("id") String id,
+            @Param("now") LocalDateTime now,
+            @Param("errorMessage") String errorMessage);
+
+    /**
+     * Idempotency guard for message delivery: claims the job for a worker only if it
+     * is QUEUED or its previous owner's lease has expired.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE TranscodeJob j SET j.status = com.pixl.backend.model.TranscodeStatus.PROCESSING, "
+            + "j.workerId = :workerId, j.startedAt = :now, j.leaseExpiresAt = :leaseExpiresAt, "
+            + "j.version = j.version + 1 "
+            + "WHERE j.id = :id AND (j.status = com.pixl.backend.model.TranscodeStatus.QUEUED "
+            + "OR (j.status = com.pixl.backend.model.TranscodeStatus.PROCESSING AND j.leaseExpiresAt < :now))")
+    int claim(@Param("id") String id,
+            @Param("workerId") String workerId,
+            @Param("now") LocalDateTime now,
+            @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE TranscodeJob j SET j.status = com.pixl.backend.model.TranscodeStatus.COMPLETED, "
+            + "j.completedAt = :now, j.outputPath = :outputPath, j.outputSize = :outputSize, "
+            + "j.encodeProfile = :encodeProfile, j.outputBitrate = :outputBitrate, j.encodeSpeed = :encodeSpeed, "
+            + "j.codecs = :codecs, "
+            + "j.leaseExpiresAt = null, j.version = j.version + 1 "
+            + "WHERE j.id = :id AND j.workerId = :workerId "
+            + "AND j.status = com.pixl.backend.model.TranscodeStatus.PROCESSING")
+    int complete(@Param("id") String id,
+            @Param("workerId") String workerId,
+            @Param("now") LocalDateTime now,
+            @Param("outputPath") String outputPath,
+            @Param("outputSize") Long outputSize,
+            @Param("encodeProfile") String encodeProfile,
+            @Param("outputBitrate") Long outputBitrate,
+            @Param("encodeSpeed") Double encodeSpeed,
+            @Param("codecs") String codecs);
+
+    /**
+     * Hands a job this worker just completed back to it as PROCESSING, for when
+     * its output could not be put in place after the completion CAS.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE TranscodeJob j SET j.status = com.pixl.backend.model.TranscodeStatus.PROCESSING, "
+            + "j.completedAt = null, j.outputPath = null, j.version = j.version + 1 "
+            + "WHERE j.id = :id AND j.workerId = :workerId "
+            + "AND j.status = com.pixl.backend.model.TranscodeStatus.COMPLETED")
+    int reopenCompleted(@Param("id") String id, @Param("workerId") String workerId);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE TranscodeJob j SET j.status = com.pixl.backend.model.TranscodeStatus.FAILED, "
+            + "j.errorMessage = :errorMessage, j.retryCount = j.retryCount + 1, "
+            + "j.leaseExpiresAt = null, j.version = j.version + 1 "
+            + "WHERE j.id = :id AND j.workerId = :workerId "
+            + "AND j.status = com.pixl.backend.model.TranscodeStatus.PROCESSING")
+    int fail(@Param("id") String id,
+            @Param("workerId") String workerId,
+            @Param("errorMessage") String errorMessage);
+}
@@ -172,6 +172,69 @@ public class AnalyticsQueryService {
         return topVideos;
     }
 
+    /**
+     * Videos by views in the last windowMinutes minutes (view velocity), fastest first
+     */
+    public List<Map<String, Object>> getTrendingVideos(int windowMinutes, int limit) {
+        String sql = """
+            SELECT video_id, count() as views
+            FROM analytics.video_events
+            WHERE event_type = 'view' AND timestamp >= now() - INTERVAL {mins:Int32} MINUTE
+            GROUP BY video_id ORDER BY views DESC LIMIT {lim:Int32}
+            """;
+
+        Map<String, Object> params = Map.of("mins", windowMinutes, "lim", limit);
+        List<Map<String, Object>> videos = new ArrayList<>();
+
+        try (QueryResponse response = clickhouseClient.query(sql, params, new QuerySettings())
+                .get(TIMEOUT_SEC, TimeUnit.SECONDS)) {
+
+            ClickHouseBinaryFormatReader reader = clickhouseClient.newBinaryFormatReader(response);
+            while (reader.hasNext()) {
+                reader.next();
+                Map<String, Object> item = new HashMap<>();
+                item.put("videoId", reader.getString("video_id"));
+                item.put("views", reader.getLong("views"));
+                videos.add(item);
+            }
+        } catch (Exception e) {
+            log.error("Failed to get trending videos", e);
+        }
+        return videos;
+    }
+
+    /**
+     * Videos with at least minViews views in the last windowDays days, most viewed first
+     */
+    public List<Map<String, Object>> getVideosWithMinViews(long minViews, int windowDays, int limit) {
+        String sql = """
+            SELECT video_id, count() as views
+            FROM analytics.video_events
+            WHERE event_type = 'view' AND timestamp >= now() - INTERVAL {days:Int32} DAY
+            GROUP BY video_id HAVING views >= {min:UInt64}
+            ORDER BY views DESC LIMIT {lim:Int32}
+            """;
+
+        Map<String, Object> params = Map.of("days", windowDays, "min", minViews, "lim", limit);
+        List<Map<String, Object>> videos = new ArrayList<>();
+
+        try (QueryResponse response = clickhouseClient.query(sql, params, new QuerySettings())
+                .get(TIMEOUT_SEC, TimeUnit.SECONDS)) {
+
+            ClickHouseBinaryFormatReader reader = clickhouseClient.newBinaryFormatReader(response);
+            while (reader.hasNext()) {
+                reader.next();
+                Map<String, Object> item = new HashMap<>();
+                item.put("videoId", reader.getString("video_id"));
+                item.put("views", reader.getLong("views"));
+                videos.add(item);
+            }
+        } catch (Exception e) {
+            log.error("Failed to get videos above view threshold", e);
+        }
+        return videos;
+    }
+
     /**
      * Get real-time statistics (helper method used for multiple queries)
      */
@@ -0,0 +1,180 @@
+package com.pixl.backend.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.pixl.backend.model.TranscodeJob;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Warms the playlist and segment caches with what viewers are about to ask
+ * for, so the first viewers of a popular video after a deploy do not pay for
+ * MinIO round trips.
+ *
+ * Videos trending in the recent window come first, then the all-time most
+ * viewed. For each, the playlists are built and the opening segments of its
+ * most played renditions (from the quality distribution, or the first
+ * renditions of the ladder if none is recorded) are loaded, until the byte
+ * budget of the run is spent. Runs shortly after startup and then periodically.
+ */
+@Service
+public class CacheWarmer {
+
+    private final AnalyticsQueryService analyticsQueryService;
+    private final HLSService hlsService;
+    private final PlaylistService playlistService;
+    private final SegmentPrefetcher segmentPrefetcher;
+    private final SegmentCache segmentCache;
+    private final PresignedUrlService presignedUrlService;
+    private final ExecutorService warmExecutor;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Counter runCounter;
+    private final Counter bytesCounter;
+
+    @Value("${app.cache.warm.enabled}")
+    private boolean enabled;
+
+    @Value("${app.cache.warm.top-videos}")
+    private int topVideos;
+
+    @Value("${app.cache.warm.trending-window-minutes}")
+    private int trendingWindowMinutes;
+
+    @Value("${app.cache.warm.renditions-per-video}")
+    private int renditionsPerVideo;
+
+    @Value("${app.cache.warm.segments-per-rendition}")
+    private int segmentsPerRendition;
+
+    @Value("${app.cache.warm.byte-budget}")
+    private long byteBudget;
+
+    public CacheWarmer(AnalyticsQueryService analyticsQueryService,
+            HLSService hlsService,
+            PlaylistService playlistService,
+            SegmentPrefetcher segmentPrefetcher,
+            SegmentCache segmentCache,
+            PresignedUrlService presignedUrlService,
+            MeterRegistry meterRegistry) {
+        this.analyticsQueryService = analyticsQueryService;
+        this.hlsService = hlsService;
+        this.playlistService = playlistService;
+        this.segmentPrefetcher = segmentPrefetcher;
+        this.segmentCache = segmentCache;
+        this.presignedUrlService = presignedUrlService;
+        this.runCounter = meterRegistry.counter("cache.warm.runs");
+        this.bytesCounter = meterRegistry.counter("cache.warm.bytes");
+        // Runs off the shared scheduler thread: a run makes many MinIO reads
+        this.warmExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "cache-warmer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        warmExecutor.shutdownNow();
+    }
+
+    @Scheduled(initialDelayString = "${app.cache.warm.initial-delay-ms}",
+            fixedDelayString = "${app.cache.warm.interval-ms}")
+    public void scheduleWarm() {
+        if (!enabled || !running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            warmExecutor.execute(() -> {
+                try {
+                    warm();
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.set(false);
+        }
+    }
+
+    private void warm() {
+        long start = System.currentTimeMillis();
+        // Media bytes only pass through the caches when the API serves them
+        boolean warmSegments = segmentCache.isEnabled() && !presignedUrlService.redirectsMedia();
+        long remaining = byteBudget;
+        int videos = 0;
+
+        for (String videoId : popularVideos()) {
+            if (warmSegments && remaining <= 0) {
+                break;
+            }
+            try {
+                playlistService.master(videoId);
+                for (String quality : renditionsToWarm(videoId)) {
+                    playlistService.media(videoId, quality);
+                    if (warmSegments && remaining > 0) {
+                        remaining -= segmentPrefetcher.warm(videoId, quality, segmentsPerRendition, remaining);
+                    }
+                }
+                videos++;
+            } catch (Exception e) {
+                System.err.println("[CacheWarmer] Could not warm " + videoId + ": " + e.getMessage());
+            }
+        }
+
+        runCounter.increment();
+        bytesCounter.increment(byteBudget - remaining);
+        System.out.println("[CacheWarmer] Warmed " + videos + " videos, " + ((byteBudget - remaining) / 1024 / 1024)
+                + " MB of segments in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Trending videos first, then the all-time top, without duplicates.
+     */
+    private Set<String> popularVideos() {
+        Set<String> videoIds = new LinkedHashSet<>();
+        for (Map<String, Object> entry : analyticsQueryService.getTrendingVideos(trendingWindowMinutes, topVideos)) {
+            videoIds.add((String) entry.get("videoId"));
+        }
+        for (Map<String, Object> entry : analyticsQueryService.getTopVideos(topVideos)) {
+            videoIds.add((String) entry.get("videoId"));
+        }
+        return videoIds;
+    }
+
+    private List<String> renditionsToWarm(String videoId) {
+        List<String> completed = hlsService.completedRenditions(videoId).stream()
+                .map(TranscodeJob::getQuality)
+                .toList();
+
+        List<String> qualities = new ArrayList<>();
+        for (Map<String, Object> entry : analyticsQueryService.getQualityDistribution(videoId)) {
+            String quality = (String) entry.get("quality");
+            if (completed.contains(quality) && qualities.size() < renditionsPerVideo) {
+                qualities.add(quality);
+            }
+        }
+        for (String quality : completed) {
+            if (qualities.size() >= renditionsPerVideo) {
+                break;
+            }
+            if (!qualities.contains(quality)) {
+                qualities.add(quality);
+            }
+        }
+        return qualities;
+    }
+}
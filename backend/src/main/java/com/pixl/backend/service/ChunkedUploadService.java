@@ -3,8 +3,6 @@ package com.pixl.backend.service;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.UUID;
 
 import org.springframework.beans.factory.annotation.Value;
@@ -31,7 +29,7 @@ import io.micrometer.core.instrument.Timer;
 public class ChunkedUploadService {
     private final UploadSessionRepository uploadSessionRepository;
     private final VideoRepository videoRepository;
-    private final TranscodeService transcodeService;
+    private final PipelineOrchestrator pipelineOrchestrator;
     private final MinioService minioService;
     private final Tracer tracer;
     private final Counter videoUploadCounter;
@@ -39,17 +37,14 @@ public class ChunkedUploadService {
     private final Counter uploadFailureCounter;
     private final Timer chunkUploadTimer;
     private final ProgressNotificationService progressNotificationService;
-    private final FFProbeService ffProbeService;
-
-    private final ThumbnailService thumbnailService;
 
     @Value("${app.upload.chunk-size}")
     private Integer defaultChunkSize;
 
     public ChunkedUploadService(UploadSessionRepository uploadSessionRepository, VideoRepository videoRepository,
             MinioService minioService, Tracer tracer, Counter videoUploadCounter, Counter uploadSuccessCounter,
-            Counter uploadFailureCounter, Timer chunkUploadTimer, TranscodeService transcodeService,
-            ThumbnailService thumbnailService, ProgressNotificationService progressNotificationService, FFProbeService ffProbeService) {
+            Counter uploadFailureCounter, Timer chunkUploadTimer, PipelineOrchestrator pipelineOrchestrator,
+            ProgressNotificationService progressNotificationService) {
         this.uploadSessionRepository = uploadSessionRepository;
         this.videoRepository = videoRepository;
         this.minioService = minioService;
@@ -58,10 +53,8 @@ public class ChunkedUploadService {
         this.uploadSuccessCounter = uploadSuccessCounter;
         this.uploadFailureCounter = uploadFailureCounter;
         this.chunkUploadTimer = chunkUploadTimer;
-        this.transcodeService = transcodeService;
-        this.thumbnailService = thumbnailService;
+        this.pipelineOrchestrator = pipelineOrchestrator;
         this.progressNotificationService = progressNotificationService;
-        this.ffProbeService = ffProbeService;
     }
 
     public InitiateUploadResponse initiateUpload(String filename, Long fileSize, String title, String description)
@@ -199,30 +192,6 @@ public class ChunkedUploadService {
             byte[] finalFileData = outputStream.toByteArray();
             span.setAttribute("final.file.size", finalFileData.length);
 
-            Span probeSpan = tracer.spanBuilder("ffprobe-metadata-extraction").startSpan();
-            try (Scope probeScope = probeSpan.makeCurrent()) {
-                Path tempVideoPath = Files.createTempFile("video-metadata-", ".mp4");
-                Files.write(tempVideoPath, finalFileData);
-
-                FFProbeService.VideoMetadata metadata = ffProbeService.extractMetadata(tempVideoPath);
-                probeSpan.setAttribute("video.duration.seconds", metadata.getDurationSeconds());
-                probeSpan.setAttribute("video.width", metadata.getWidth());
-                probeSpan.setAttribute("video.height", metadata.getHeight());
-                probeSpan.addEvent("FFProbe metadata extraction completed" + metadata.toString());
-
-                Video video = videoRepository.findById(uploadId)
-                        .orElseThrow(() -> new RuntimeException("Video not found"));
-                video.setDurationSeconds(metadata.getDurationSeconds());
-                videoRepository.save(video);
-
-                Files.deleteIfExists(tempVideoPath);
-            } catch (Exception e) {
-                probeSpan.recordException(e);
-                System.err.println("⚠️  Failed to extract video metadata: " + e.getMessage());
-            } finally {
-                probeSpan.end();
-            }
-
             Span uploadSpan = tracer.spanBuilder("upload-final-file").startSpan();
             try (Scope uploadScope = uploadSpan.makeCurrent()) {
                 String fileExtension = session.getFilename().substring(
@@ -247,27 +216,20 @@ public class ChunkedUploadService {
 
             video.setFilePath(uploadId + session.getFilename().substring(session.getFilename().lastIndexOf(".")));
             video.setFileSize((long) finalFileData.length);
-            video.setStatus(VideoStatus.READY);
-
-            span.addEvent("Queueing transcode jobs");
-            transcodeService.queueTranscodeJobs(uploadId);
-            progressNotificationService.sendTranscodeQueued(uploadId);
-            try {
-                thumbnailService.generateThumbnail(uploadId);
-            } catch (Exception e) {
-                System.err.println("[ChunkedUploadSerice]Thumbnail generation failed: " + e.getMessage());
-            }
-            
+            video.setStatus(VideoStatus.PROCESSING);
+            videoRepository.save(video);
+
+            // Probe is the root of the stage graph and runs on the pipeline pool, off this request
+            span.addEvent("Starting processing pipeline");
+            pipelineOrchestrator.startPipeline(uploadId);
+
             uploadSuccessCounter.increment();
 
             System.out.println("[ChunkedUpload] Upload completed for uploadId: " + uploadId);
-            uploadSuccessCounter.increment();
             span.addEvent("Upload completed successfully");
 
-            span.addEvent("Generating thumbnail");
-
-
-            return videoRepository.save(video);
+            return videoRepository.findById(uploadId)
+                    .orElseThrow(() -> new RuntimeException("Video not found"));
 
         } catch (Exception e) {
 
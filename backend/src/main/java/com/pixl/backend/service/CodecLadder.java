@@ -0,0 +1,127 @@
+package com.pixl.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Naming and encoder settings for renditions beyond the H.264 ladder. A
+ * rendition is identified by its rung plus an optional codec suffix, e.g.
+ * "1080p" (H.264) or "1080p-hevc". The same string is used as the job
+ * quality, the pipeline stage suffix, and the HLS directory name.
+ */
+@Component
+public class CodecLadder {
+
+    public static final String H264 = "h264";
+    public static final String HEVC = "hevc";
+    public static final String AV1 = "av1";
+
+    private final List<String> hevcRungs;
+    private final List<String> av1Rungs;
+
+    @Value("${app.transcode.codecs.hevc.crf-offset}")
+    private int hevcCrfOffset;
+
+    @Value("${app.transcode.codecs.hevc.bitrate-factor}")
+    private double hevcBitrateFactor;
+
+    @Value("${app.transcode.codecs.av1.crf-offset}")
+    private int av1CrfOffset;
+
+    @Value("${app.transcode.codecs.av1.bitrate-factor}")
+    private double av1BitrateFactor;
+
+    @Value("${app.transcode.codecs.av1.preset}")
+    private int av1Preset;
+
+    public CodecLadder(@Value("${app.transcode.codecs.hevc.rungs}") String hevcRungs,
+            @Value("${app.transcode.codecs.av1.rungs}") String av1Rungs) {
+        this.hevcRungs = parseList(hevcRungs);
+        this.av1Rungs = parseList(av1Rungs);
+    }
+
+    public static String codecOf(String rendition) {
+        int separator = rendition.indexOf('-');
+        return separator < 0 ? H264 : rendition.substring(separator + 1);
+    }
+
+    public static String rungOf(String rendition) {
+        int separator = rendition.indexOf('-');
+        return separator < 0 ? rendition : rendition.substring(0, separator);
+    }
+
+    public static String rendition(String rung, String codec) {
+        return H264.equals(codec) ? rung : rung + "-" + codec;
+    }
+
+    /**
+     * HEVC and AV1 are only valid in HLS inside fragmented MP4.
+     */
+    public static boolean usesFragmentedMp4(String rendition) {
+        return !H264.equals(codecOf(rendition));
+    }
+
+    /**
+     * Extra-codec renditions to add for a video that earned them, limited to rungs
+     * that already exist in H.264 (so nothing is upscaled beyond the source).
+     */
+    public List<String> extraRenditions(List<String> existingH264Rungs) {
+        List<String> renditions = new ArrayList<>();
+        for (String rung : hevcRungs) {
+            if (existingH264Rungs.contains(rung)) {
+                renditions.add(rendition(rung, HEVC));
+            }
+        }
+        for (String rung : av1Rungs) {
+            if (existingH264Rungs.contains(rung)) {
+                renditions.add(rendition(rung, AV1));
+            }
+        }
+        return renditions;
+    }
+
+    public int crfFor(String codec, int h264Crf) {
+        return switch (codec) {
+            case HEVC -> h264Crf + hevcCrfOffset;
+            case AV1 -> h264Crf + av1CrfOffset;
+            default -> h264Crf;
+        };
+    }
+
+    /**
+     * Bitrate the codec needs relative to H.264 for similar quality.
+     */
+    public double bitrateFactor(String codec) {
+        return switch (codec) {
+            case HEVC -> hevcBitrateFactor;
+            case AV1 -> av1BitrateFactor;
+            default -> 1.0;
+        };
+    }
+
+    /**
+     * Encoder arguments for the video stream. x265 shares x264's preset names;
+     * SVT-AV1 uses a numeric speed preset instead.
+     */
+    public List<String> videoEncoderArgs(String codec, String x264Preset) {
+        // Scene-cut keyframes are off, so every rung has keyframes on the same (forced) timestamps
+        return switch (codec) {
+            case HEVC -> List.of("-c:v", "libx265", "-preset", x264Preset, "-tag:v", "hvc1",
+                    "-x265-params", "scenecut=0");
+            case AV1 -> List.of("-c:v", "libsvtav1", "-preset", String.valueOf(av1Preset),
+                    "-svtav1-params", "scd=0");
+            default -> List.of("-c:v", "libx264", "-preset", x264Preset, "-sc_threshold", "0");
+        };
+    }
+
+    private static List<String> parseList(String value) {
+        if (value == null || value.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(value.split(",")).map(String::trim).toList();
+    }
+}
@@ -0,0 +1,107 @@
+package com.pixl.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.pixl.backend.model.TranscodeJob;
+import com.pixl.backend.model.TranscodeStatus;
+import com.pixl.backend.model.Video;
+import com.pixl.backend.model.VideoStatus;
+import com.pixl.backend.repository.TranscodeJobRepository;
+import com.pixl.backend.repository.VideoRepository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * HEVC and AV1 encodes cost several times the CPU of H.264, so they are only
+ * added once a video's recent views show the bandwidth savings will pay for
+ * them. Renditions that already exist in any state are not re-queued, so a
+ * failed extra encode is not retried on every sweep.
+ */
+@Service
+public class CodecRolloutService {
+
+    private final AnalyticsQueryService analyticsQueryService;
+    private final VideoRepository videoRepository;
+    private final TranscodeJobRepository transcodeJobRepository;
+    private final PipelineOrchestrator pipelineOrchestrator;
+    private final CodecLadder codecLadder;
+    private final Counter rolloutCounter;
+
+    @Value("${app.transcode.codecs.rollout-enabled}")
+    private boolean rolloutEnabled;
+
+    @Value("${app.transcode.codecs.min-views}")
+    private long minViews;
+
+    @Value("${app.transcode.codecs.view-window-days}")
+    private int viewWindowDays;
+
+    @Value("${app.transcode.codecs.max-videos-per-sweep}")
+    private int maxVideosPerSweep;
+
+    public CodecRolloutService(AnalyticsQueryService analyticsQueryService,
+            VideoRepository videoRepository,
+            TranscodeJobRepository transcodeJobRepository,
+            PipelineOrchestrator pipelineOrchestrator,
+            CodecLadder codecLadder,
+            MeterRegistry meterRegistry) {
+        this.analyticsQueryService = analyticsQueryService;
+        this.videoRepository = videoRepository;
+        this.transcodeJobRepository = transcodeJobRepository;
+        this.pipelineOrchestrator = pipelineOrchestrator;
+        this.codecLadder = codecLadder;
+        this.rolloutCounter = meterRegistry.counter("transcode.codec.rollout");
+    }
+
+    @Scheduled(fixedDelayString = "${app.transcode.codecs.rollout-interval-ms}")
+    public void rolloutPopularVideos() {
+        if (!rolloutEnabled) {
+            return;
+        }
+
+        List<Map<String, Object>> popular = analyticsQueryService
+                .getVideosWithMinViews(minViews, viewWindowDays, maxVideosPerSweep);
+
+        for (Map<String, Object> entry : popular) {
+            String videoId = (String) entry.get("videoId");
+            try {
+                rollout(videoId, (Long) entry.get("views"));
+            } catch (Exception e) {
+                System.err.println("[CodecRollout] Failed to add codec renditions for " + videoId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void rollout(String videoId, long views) {
+        Video video = videoRepository.findById(videoId).orElse(null);
+        if (video == null || video.getStatus() != VideoStatus.READY) {
+            return;
+        }
+
+        List<TranscodeJob> jobs = transcodeJobRepository.findByVideoId(videoId);
+        Set<String> existing = jobs.stream().map(TranscodeJob::getQuality).collect(Collectors.toSet());
+        List<String> h264Rungs = jobs.stream()
+                .filter(job -> job.getStatus() == TranscodeStatus.COMPLETED)
+                .map(TranscodeJob::getQuality)
+                .filter(quality -> CodecLadder.H264.equals(CodecLadder.codecOf(quality)))
+                .toList();
+
+        List<String> missing = codecLadder.extraRenditions(h264Rungs).stream()
+                .filter(rendition -> !existing.contains(rendition))
+                .toList();
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        System.out.println("[CodecRollout] Video " + videoId + " has " + views + " views, adding " + missing);
+        pipelineOrchestrator.addRenditions(videoId, missing);
+        rolloutCounter.increment();
+    }
+}
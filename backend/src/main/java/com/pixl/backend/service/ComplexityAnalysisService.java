@@ -0,0 +1,175 @@
+package com.pixl.backend.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Per-title encoding: a cheap constant-quality probe encode of a few sampled
+ * segments tells how many bits the content needs. Static content (screen
+ * recordings, slides) compresses far below the ladder's fixed targets, while
+ * high-motion content needs more. The resulting score picks CRF and maxrate
+ * for every rung.
+ */
+@Service
+public class ComplexityAnalysisService {
+
+    private final Tracer tracer;
+    private final FfmpegRunner ffmpegRunner;
+    private final DistributionSummary scoreSummary;
+
+    @Value("${app.transcode.complexity.samples}")
+    private int samples;
+
+    @Value("${app.transcode.complexity.sample-seconds}")
+    private int sampleSeconds;
+
+    @Value("${app.transcode.complexity.timeout-seconds}")
+    private long timeoutSeconds;
+
+    // Probe bitrates (360p, CRF 23) treated as trivially easy / very hard content
+    @Value("${app.transcode.complexity.easy-kbps}")
+    private double easyKbps;
+
+    @Value("${app.transcode.complexity.hard-kbps}")
+    private double hardKbps;
+
+    @Value("${app.transcode.complexity.crf-easy}")
+    private int crfEasy;
+
+    @Value("${app.transcode.complexity.crf-hard}")
+    private int crfHard;
+
+    @Value("${app.transcode.complexity.maxrate-factor-easy}")
+    private double maxrateFactorEasy;
+
+    @Value("${app.transcode.complexity.maxrate-factor-hard}")
+    private double maxrateFactorHard;
+
+    public ComplexityAnalysisService(Tracer tracer, FfmpegRunner ffmpegRunner, MeterRegistry meterRegistry) {
+        this.tracer = tracer;
+        this.ffmpegRunner = ffmpegRunner;
+        this.scoreSummary = DistributionSummary.builder("transcode.complexity.score")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns a complexity score in [0, 1], where 0 is static content and 1 is
+     * content at or above the configured hard threshold.
+     */
+    public double analyze(Path videoPath, Integer durationSeconds) throws Exception {
+        Span span = tracer.spanBuilder("complexity-analysis").startSpan();
+
+        try (Scope scope = span.makeCurrent()) {
+            span.setAttribute("video.path", videoPath.toString());
+
+            int duration = durationSeconds != null ? durationSeconds : 0;
+            int sampleCount = duration > sampleSeconds * samples ? samples : 1;
+
+            long totalBytes = 0;
+            double totalSeconds = 0;
+
+            for (int i = 0; i < sampleCount; i++) {
+                // Spread samples evenly, skipping intros and end cards
+                double offset = sampleCount == 1 ? 0 : duration * (i + 1.0) / (sampleCount + 1);
+                double length = duration > 0 ? Math.min(sampleSeconds, duration - offset) : sampleSeconds;
+
+                totalBytes += encodeSample(videoPath, offset, length);
+                totalSeconds += length;
+            }
+
+            double probeKbps = totalBytes * 8 / 1000.0 / Math.max(totalSeconds, 1);
+            double score = Math.max(0, Math.min(1, (probeKbps - easyKbps) / (hardKbps - easyKbps)));
+
+            span.setAttribute("samples", sampleCount);
+            span.setAttribute("probe.kbps", probeKbps);
+            span.setAttribute("complexity.score", score);
+            scoreSummary.record(score);
+
+            System.out.println("[ComplexityAnalysis] Probe encode " + Math.round(probeKbps) +
+                    " kbps over " + sampleCount + " samples, score " + String.format("%.2f", score));
+
+            return score;
+        } catch (Exception e) {
+            span.recordException(e);
+            span.setStatus(StatusCode.ERROR, e.getMessage());
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Interpolates CRF and a VBV cap between the easy and hard settings. A null
+     * score (analysis unavailable) keeps the ladder's historical defaults.
+     */
+    public RungTuning tune(Double score, long rungBitrateBps) {
+        if (score == null) {
+            return new RungTuning(23, null);
+        }
+        int crf = (int) Math.round(crfEasy + (crfHard - crfEasy) * score);
+        double factor = maxrateFactorEasy + (maxrateFactorHard - maxrateFactorEasy) * score;
+        return new RungTuning(crf, Math.round(rungBitrateBps * factor));
+    }
+
+    private long encodeSample(Path videoPath, double offset, double length) throws Exception {
+        Path samplePath = Files.createTempFile("complexity-", ".mp4");
+        try {
+            List<String> command = List.of(
+                "ffmpeg",
+                "-ss", String.format(Locale.ROOT, "%.3f", offset),
+                "-t", String.format(Locale.ROOT, "%.3f", length),
+                "-i", videoPath.toString(),
+                "-an",
+                "-vf", "scale=-2:360",
+                "-c:v", "libx264",
+                "-preset", "ultrafast",
+                "-crf", "23",
+                "-y",
+                samplePath.toString()
+            );
+
+            FfmpegRunner.Result result = ffmpegRunner.run("complexity", command,
+                    Duration.ofSeconds(timeoutSeconds), null);
+            if (!result.isSuccess()) {
+                throw new RuntimeException("Complexity probe failed with " + result.describeFailure());
+            }
+            return Files.size(samplePath);
+        } finally {
+            Files.deleteIfExists(samplePath);
+        }
+    }
+
+    public static class RungTuning {
+        private final int crf;
+        private final Long maxrateBps;
+
+        public RungTuning(int crf, Long maxrateBps) {
+            this.crf = crf;
+            this.maxrateBps = maxrateBps;
+        }
+
+        public int getCrf() {
+            return crf;
+        }
+
+        /**
+         * VBV cap for the rung, or null for unconstrained CRF.
+         */
+        public Long getMaxrateBps() {
+            return maxrateBps;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.pixl.backend.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Second cache tier on local disk, between the in-memory {@link SegmentCache}
+ * and MinIO. It holds far more than memory can and survives restarts.
+ *
+ * Entries are content-addressed: the file name is a hash of the object's ETag
+ * and byte range, so a rewritten object can never be served stale and
+ * identical content is stored once. Files live under two-character fan-out
+ * directories.
+ *
+ * The index is a fixed-slot file mapped into memory. Each slot records hash,
+ * length and last access. Updating it on every hit is just a memory write, and
+ * on startup it restores both contents and LRU order without re-reading files.
+ * Eviction is LRU by bytes. Evicted files are deleted after a grace period, so
+ * a response that is still sending one is not cut short.
+ */
+@Component
+public class DiskSegmentCache {
+
+    private static final int SLOT_BYTES = 56;   // used(1) hash(32) pad(7) length(8) lastAccess(8)
+    private static final int HASH_BYTES = 32;
+    private static final long DELETE_GRACE_SECONDS = 60;
+    // Content keys and the temp files they are written under; nothing else in the directory is ours
+    private static final Pattern CACHE_FILE = Pattern.compile("([0-9a-f]{64})(\\d*\\.tmp)?");
+
+    private final Path directory;
+    private final boolean enabled;
+    private final long maxBytes;
+    private final int maxEntries;
+
+    private final LinkedHashMap<String, DiskEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+    private final Set<String> writing = new HashSet<>();
+    private long usedBytes;
+
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+
+    private final ScheduledExecutorService deleteScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "disk-cache-delete");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+
+    public DiskSegmentCache(MeterRegistry meterRegistry,
+            @Value("${app.cache.disk.enabled}") boolean enabled,
+            @Value("${app.cache.disk.directory}") String directory,
+            @Value("${app.cache.disk.max-bytes}") long maxBytes,
+            @Value("${app.cache.disk.max-entries}") int maxEntries) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        if (enabled && !this.directory.isAbsolute()) {
+            // Unrecognised files are deleted on startup, so the location must not depend on the working directory
+            throw new IllegalStateException("app.cache.disk.directory must be an absolute path: " + directory);
+        }
+        this.maxBytes = maxBytes;
+        this.maxEntries = maxEntries;
+
+        this.hitCounter = meterRegistry.counter("segment.cache.disk.requests", "result", "hit");
+        this.missCounter = meterRegistry.counter("segment.cache.disk.requests", "result", "miss");
+        this.evictionCounter = meterRegistry.counter("segment.cache.disk.evictions");
+        Gauge.builder("segment.cache.disk.bytes", this, DiskSegmentCache::getUsedBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("segment.cache.disk.entries", this, DiskSegmentCache::getEntryCount)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        indexChannel = FileChannel.open(directory.resolve("index.dat"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) maxEntries * SLOT_BYTES);
+        rebuild();
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        deleteScheduler.shutdown();
+        if (index != null) {
+            synchronized (this) {
+                index.force();
+            }
+            indexChannel.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled && index != null;
+    }
+
+    /**
+     * Content address of a byte range of an object version.
+     */
+    public static String contentKey(String etag, long offset, long length) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest((etag + "@" + offset + "+" + length).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the cached file, or null on a miss.
+     */
+    public synchronized Path get(String contentKey) {
+        if (!isEnabled()) {
+            return null;
+        }
+        DiskEntry entry = entries.get(contentKey);
+        if (entry == null) {
+            missCounter.increment();
+            return null;
+        }
+        hitCounter.increment();
+        index.putLong(entry.slot * SLOT_BYTES + 48, System.currentTimeMillis());
+        return fileFor(contentKey);
+    }
+
+    public synchronized boolean contains(String contentKey) {
+        return entries.containsKey(contentKey) || writing.contains(contentKey);
+    }
+
+    /**
+     * Writes length bytes from source as a new entry. The file is written under a
+     * temporary name and moved into place, so a crash never leaves a partial
+     * entry behind an index slot.
+     */
+    public void store(String contentKey, InputStream source, long length) throws IOException {
+        if (!isEnabled() || length > maxBytes) {
+            return;
+        }
+        synchronized (this) {
+            if (entries.containsKey(contentKey) || !writing.add(contentKey)) {
+                return;
+            }
+        }
+
+        Path target = fileFor(contentKey);
+        Path temp = null;
+        try {
+            Files.createDirectories(target.getParent());
+            temp = Files.createTempFile(target.getParent(), contentKey, ".tmp");
+            long written;
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                written = source.transferTo(out);
+            }
+            if (written != length) {
+                throw new IOException("Expected " + length + " bytes, got " + written);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+
+            synchronized (this) {
+                makeRoom(length);
+                int slot = freeSlots.poll();
+                writeSlot(slot, contentKey, length, System.currentTimeMillis());
+                entries.put(contentKey, new DiskEntry(slot, length));
+                usedBytes += length;
+            }
+        } finally {
+            synchronized (this) {
+                writing.remove(contentKey);
+            }
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    private void makeRoom(long length) {
+        Iterator<Map.Entry<String, DiskEntry>> eldest = entries.entrySet().iterator();
+        while ((usedBytes + length > maxBytes || freeSlots.isEmpty()) && eldest.hasNext()) {
+            Map.Entry<String, DiskEntry> victim = eldest.next();
+            eldest.remove();
+            usedBytes -= victim.getValue().length;
+            index.put(victim.getValue().slot * SLOT_BYTES, (byte) 0);
+            freeSlots.push(victim.getValue().slot);
+            evictionCounter.increment();
+
+            Path file = fileFor(victim.getKey());
+            deleteScheduler.schedule(() -> {
+                try {
+                    // Re-stored under the same content key meanwhile
+                    synchronized (this) {
+                        if (entries.containsKey(victim.getKey()) || writing.contains(victim.getKey())) {
+                            return;
+                        }
+                    }
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    System.err.println("[DiskSegmentCache] Could not delete " + file + ": " + e.getMessage());
+                }
+            }, DELETE_GRACE_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Restores entries from the index, dropping slots whose file is missing or
+     * truncated, and deletes cache files no slot refers to (writes interrupted by
+     * a crash). Only names in the cache's own layout are touched.
+     */
+    private synchronized void rebuild() throws IOException {
+        List<long[]> live = new ArrayList<>();   // {slot, lastAccess}
+        Set<String> indexed = new HashSet<>();
+        byte[] hash = new byte[HASH_BYTES];
+
+        for (int slot = 0; slot < maxEntries; slot++) {
+            int base = slot * SLOT_BYTES;
+            if (index.get(base) == 0) {
+                continue;
+            }
+            index.get(base + 1, hash);
+            String key = HexFormat.of().formatHex(hash);
+            long length = index.getLong(base + 40);
+            Path file = fileFor(key);
+            if (Files.isRegularFile(file) && Files.size(file) == length && indexed.add(key)) {
+                live.add(new long[] { slot, index.getLong(base + 48) });
+            } else {
+                index.put(base, (byte) 0);
+            }
+        }
+
+        live.sort(Comparator.comparingLong(entry -> entry[1]));
+        for (long[] entry : live) {
+            int slot = (int) entry[0];
+            index.get(slot * SLOT_BYTES + 1, hash);
+            long length = index.getLong(slot * SLOT_BYTES + 40);
+            entries.put(HexFormat.of().formatHex(hash), new DiskEntry(slot, length));
+            usedBytes += length;
+        }
+        for (int slot = 0; slot < maxEntries; slot++) {
+            if (index.get(slot * SLOT_BYTES) == 0) {
+                freeSlots.add(slot);
+            }
+        }
+
+        try (Stream<Path> files = Files.walk(directory, 2)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                if (isOrphan(file)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+
+        System.out.println("[DiskSegmentCache] Restored " + entries.size() + " entries ("
+                + (usedBytes / 1024 / 1024) + " MB) from " + directory);
+    }
+
+    /**
+     * A leftover temp file or an unindexed entry file in its fan-out directory;
+     * anything the cache did not write is never an orphan.
+     */
+    private boolean isOrphan(Path file) {
+        Path parent = file.getParent();
+        if (parent == null || !directory.equals(parent.getParent())) {
+            return false;
+        }
+        String fanOut = parent.getFileName().toString();
+        Matcher match = CACHE_FILE.matcher(file.getFileName().toString());
+        if (fanOut.length() != 2 || !match.matches() || !match.group(1).startsWith(fanOut)) {
+            return false;
+        }
+        return match.group(2) != null || !entries.containsKey(match.group(1));
+    }
+
+    private void writeSlot(int slot, String contentKey, long length, long lastAccess) {
+        int base = slot * SLOT_BYTES;
+        index.put(base + 1, HexFormat.of().parseHex(contentKey));
+        index.putLong(base + 40, length);
+        index.putLong(base + 48, lastAccess);
+        index.put(base, (byte) 1);   // Marked used last, once the slot is complete
+    }
+
+    private Path fileFor(String contentKey) {
+        return directory.resolve(contentKey.substring(0, 2)).resolve(contentKey);
+    }
+
+    private static class DiskEntry {
+        final int slot;
+        final long length;
+
+        DiskEntry(int slot, long length) {
+            this.slot = slot;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.pixl.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Named x264 speed profiles and the rules that pick one per rendition. The
+ * profile is resolved when a job is queued and travels with the job, so a
+ * requeued job keeps the profile it was planned with.
+ */
+@Component
+public class EncodeProfiles {
+
+    public static final String LANE_STANDARD = "standard";
+    public static final String LANE_OFF_PEAK = "off-peak";
+
+    // Recorded on jobs produced by stream copy rather than an encode
+    public static final String PASSTHROUGH = "passthrough";
+
+    private final Map<String, String> presets;
+    private final Map<String, String> rungProfiles;
+    private final Map<String, String> offPeakRungProfiles;
+    private final String defaultProfile;
+    private final int offPeakStartHour;
+    private final int offPeakEndHour;
+
+    public EncodeProfiles(
+            @Value("${app.transcode.encode.profiles}") String profiles,
+            @Value("${app.transcode.encode.default-profile}") String defaultProfile,
+            @Value("${app.transcode.encode.rung-profiles}") String rungProfiles,
+            @Value("${app.transcode.encode.off-peak-rung-profiles}") String offPeakRungProfiles,
+            @Value("${app.transcode.encode.off-peak-start-hour}") int offPeakStartHour,
+            @Value("${app.transcode.encode.off-peak-end-hour}") int offPeakEndHour) {
+        this.presets = parsePairs(profiles);
+        this.rungProfiles = parsePairs(rungProfiles);
+        this.offPeakRungProfiles = parsePairs(offPeakRungProfiles);
+        this.defaultProfile = defaultProfile;
+        this.offPeakStartHour = offPeakStartHour;
+        this.offPeakEndHour = offPeakEndHour;
+
+        if (!presets.containsKey(defaultProfile)) {
+            throw new IllegalStateException("Default encode profile not defined: " + defaultProfile);
+        }
+        for (String profile : this.rungProfiles.values()) {
+            requireDefined(profile);
+        }
+        for (String profile : this.offPeakRungProfiles.values()) {
+            requireDefined(profile);
+        }
+    }
+
+    public String laneAt(LocalTime time) {
+        int hour = time.getHour();
+        boolean offPeak = offPeakStartHour <= offPeakEndHour
+                ? hour >= offPeakStartHour && hour < offPeakEndHour
+                : hour >= offPeakStartHour || hour < offPeakEndHour;   // window wraps midnight
+        return offPeak ? LANE_OFF_PEAK : LANE_STANDARD;
+    }
+
+    /**
+     * Off-peak overrides win over the per-rung profile, which wins over the default.
+     */
+    public String resolve(String quality, String lane) {
+        String rung = CodecLadder.rungOf(quality);
+        if (LANE_OFF_PEAK.equals(lane) && offPeakRungProfiles.containsKey(rung)) {
+            return offPeakRungProfiles.get(rung);
+        }
+        return rungProfiles.getOrDefault(rung, defaultProfile);
+    }
+
+    /**
+     * Unknown or missing profiles (e.g. messages queued before a config change)
+     * fall back to the default profile's preset.
+     */
+    public String presetFor(String profile) {
+        return presets.getOrDefault(profile, presets.get(defaultProfile));
+    }
+
+    public String normalize(String profile) {
+        return profile != null && presets.containsKey(profile) ? profile : defaultProfile;
+    }
+
+    private void requireDefined(String profile) {
+        if (!presets.containsKey(profile)) {
+            throw new IllegalStateException("Encode profile not defined: " + profile);
+        }
+    }
+
+    // "a:b,c:d" -> {a=b, c=d}
+    private static Map<String, String> parsePairs(String value) {
+        Map<String, String> pairs = new HashMap<>();
+        if (value == null || value.isBlank()) {
+            return pairs;
+        }
+        for (String entry : value.split(",")) {
+            String[] parts = entry.split(":", 2);
+            if (parts.length != 2) {
+                throw new IllegalStateException("Expected name:value but got '" + entry + "'");
+            }
+            pairs.put(parts[0].trim(), parts[1].trim());
+        }
+        return pairs;
+    }
+}
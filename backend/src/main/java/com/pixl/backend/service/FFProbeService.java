@@ -6,66 +6,57 @@ import io.opentelemetry.api.trace.Tracer;
 import io.opentelemetry.context.Scope;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.List;
 
 @Service
 public class FFProbeService {
-    
+    private static final int PROBE_FILES_PER_RUN = 200;
+
     private final Tracer tracer;
-    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
     public FFProbeService(Tracer tracer) {
         this.tracer = tracer;
     }
-    
+
     public VideoMetadata extractMetadata(Path videoPath) throws Exception {
         Span span = tracer.spanBuilder("ffprobe-extract-metadata").startSpan();
-        
+
         try (Scope scope = span.makeCurrent()) {
             span.setAttribute("video.path", videoPath.toString());
-            
-            ProcessBuilder processBuilder = new ProcessBuilder(
+
+            String output = runProbe(List.of(
                 "ffprobe",
                 "-v", "error",
-                "-show_entries", "format=duration,size,bit_rate",
-                "-show_entries", "stream=codec_name,width,height,r_frame_rate",
-                "-of", "default=noprint_wrappers=1",
+                "-print_format", "json",
+                "-show_format",
+                "-show_streams",
                 videoPath.toString()
-            );
-            
-            Process process = processBuilder.start();
-            
-            StringBuilder output = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line).append("\n");
-                }
-            }
-            
-            int exitCode = process.waitFor();
-            
-            if (exitCode != 0) {
-                throw new RuntimeException("FFprobe failed with exit code: " + exitCode);
-            }
-            
-            VideoMetadata metadata = parseFFprobeOutput(output.toString());
-            
+            ));
+
+            VideoMetadata metadata = parseFFprobeOutput(output);
+            metadata.setKeyframeTimes(probeKeyframeTimes(videoPath));
+
             span.setAttribute("duration.seconds", metadata.getDurationSeconds());
             span.setAttribute("width", metadata.getWidth());
             span.setAttribute("height", metadata.getHeight());
             span.addEvent("Metadata extracted");
-            
-            System.out.println("📊 Video metadata extracted: " + 
-                             metadata.getDurationSeconds() + "s, " + 
-                             metadata.getWidth() + "x" + metadata.getHeight());
-            
+
+            System.out.println("📊 Video metadata extracted: " +
+                             metadata.getDurationSeconds() + "s, " +
+                             metadata.getWidth() + "x" + metadata.getHeight() + ", " +
+                             metadata.getCodec() + "/" + metadata.getAudioCodec());
+
             return metadata;
-            
+
         } catch (Exception e) {
             span.recordException(e);
             span.setStatus(StatusCode.ERROR, e.getMessage());
@@ -74,94 +65,329 @@ public class FFProbeService {
             span.end();
         }
     }
-    
-    private VideoMetadata parseFFprobeOutput(String output) {
+
+    /**
+     * Reads keyframe timestamps of the whole video stream from packet flags only,
+     * so nothing is decoded.
+     */
+    private List<Double> probeKeyframeTimes(Path videoPath) throws Exception {
+        String output = runProbe(List.of(
+            "ffprobe",
+            "-v", "error",
+            "-select_streams", "v:0",
+            "-show_entries", "packet=pts_time,flags",
+            "-of", "csv=p=0",
+            videoPath.toString()
+        ));
+
+        List<Double> keyframes = new ArrayList<>();
+        for (String line : output.split("\n")) {
+            String[] fields = line.trim().split(",");
+            if (fields.length >= 2 && fields[1].contains("K") && !fields[0].equals("N/A")) {
+                keyframes.add(Double.parseDouble(fields[0]));
+            }
+        }
+        keyframes.sort(Double::compare);
+        return keyframes;
+    }
+
+    /**
+     * Every packet of the first video stream with its byte position, in file
+     * order. Files are read back to back, as the concat protocol does, so
+     * positions count from the start of the first file. Used to address
+     * keyframes by byte range.
+     */
+    public List<VideoPacket> probeVideoPackets(List<Path> files) throws Exception {
+        List<VideoPacket> packets = new ArrayList<>();
+        long base = 0;
+        // Chunked so the concat argument stays far below the kernel's per-argument limit
+        for (int start = 0; start < files.size(); start += PROBE_FILES_PER_RUN) {
+            List<Path> chunk = files.subList(start, Math.min(start + PROBE_FILES_PER_RUN, files.size()));
+            String input = chunk.size() == 1 ? chunk.get(0).toString()
+                    : "concat:" + String.join("|", chunk.stream().map(Path::toString).toList());
+
+            String output = runProbe(List.of(
+                "ffprobe",
+                "-v", "error",
+                "-select_streams", "v:0",
+                "-show_entries", "packet=pts_time,pos,flags",
+                "-of", "csv=p=0",
+                input
+            ));
+
+            for (String line : output.split("\n")) {
+                String[] fields = line.trim().split(",");
+                if (fields.length < 3 || fields[0].equals("N/A") || fields[1].equals("N/A")) {
+                    continue;
+                }
+                packets.add(new VideoPacket(Double.parseDouble(fields[0]), base + Long.parseLong(fields[1]),
+                        fields[2].contains("K")));
+            }
+            for (Path file : chunk) {
+                base += Files.size(file);
+            }
+        }
+        return packets;
+    }
+
+    private String runProbe(List<String> command) throws Exception {
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.redirectError(ProcessBuilder.Redirect.DISCARD);
+        Process process = processBuilder.start();
+
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.append(line).append("\n");
+            }
+        }
+
+        int exitCode = process.waitFor();
+
+        if (exitCode != 0) {
+            throw new RuntimeException("FFprobe failed with exit code: " + exitCode);
+        }
+        return output.toString();
+    }
+
+    private VideoMetadata parseFFprobeOutput(String output) throws Exception {
         VideoMetadata metadata = new VideoMetadata();
-        
-        // Parse duration
-        Pattern durationPattern = Pattern.compile("duration=([0-9.]+)");
-        Matcher durationMatcher = durationPattern.matcher(output);
-        if (durationMatcher.find()) {
-            double duration = Double.parseDouble(durationMatcher.group(1));
-            metadata.setDurationSeconds((int) Math.round(duration));
-        }
-        
-        // Parse width
-        Pattern widthPattern = Pattern.compile("width=([0-9]+)");
-        Matcher widthMatcher = widthPattern.matcher(output);
-        if (widthMatcher.find()) {
-            metadata.setWidth(Integer.parseInt(widthMatcher.group(1)));
-        }
-        
-        // Parse height
-        Pattern heightPattern = Pattern.compile("height=([0-9]+)");
-        Matcher heightMatcher = heightPattern.matcher(output);
-        if (heightMatcher.find()) {
-            metadata.setHeight(Integer.parseInt(heightMatcher.group(1)));
-        }
-        
-        // Parse codec
-        Pattern codecPattern = Pattern.compile("codec_name=([a-z0-9]+)");
-        Matcher codecMatcher = codecPattern.matcher(output);
-        if (codecMatcher.find()) {
-            metadata.setCodec(codecMatcher.group(1));
-        }
-        
-        // Parse bitrate
-        Pattern bitratePattern = Pattern.compile("bit_rate=([0-9]+)");
-        Matcher bitrateMatcher = bitratePattern.matcher(output);
-        if (bitrateMatcher.find()) {
-            metadata.setBitrate(Long.parseLong(bitrateMatcher.group(1)));
-        }
-        
+        JsonNode root = objectMapper.readTree(output);
+
+        JsonNode format = root.path("format");
+        if (format.hasNonNull("duration")) {
+            metadata.setDurationSeconds((int) Math.round(format.get("duration").asDouble()));
+        }
+        if (format.hasNonNull("bit_rate")) {
+            metadata.setBitrate(format.get("bit_rate").asLong());
+        }
+
+        for (JsonNode stream : root.path("streams")) {
+            String codecType = stream.path("codec_type").asText();
+
+            if ("video".equals(codecType) && metadata.getCodec() == null) {
+                metadata.setCodec(stream.path("codec_name").asText(null));
+                metadata.setProfile(stream.path("profile").asText(null));
+                metadata.setPixelFormat(stream.path("pix_fmt").asText(null));
+                if (stream.hasNonNull("level") && stream.get("level").asInt() > 0) {
+                    metadata.setLevel(stream.get("level").asInt());
+                }
+                if (stream.hasNonNull("width")) {
+                    metadata.setWidth(stream.get("width").asInt());
+                }
+                if (stream.hasNonNull("height")) {
+                    metadata.setHeight(stream.get("height").asInt());
+                }
+                if (stream.hasNonNull("bit_rate")) {
+                    metadata.setVideoBitrate(stream.get("bit_rate").asLong());
+                }
+                metadata.setFrameRate(parseFrameRate(stream.path("avg_frame_rate").asText("0/0")));
+            } else if ("audio".equals(codecType) && metadata.getAudioCodec() == null) {
+                metadata.setAudioCodec(stream.path("codec_name").asText(null));
+            }
+        }
+
         return metadata;
     }
-    
+
+    private Double parseFrameRate(String rate) {
+        String[] parts = rate.split("/");
+        try {
+            double numerator = Double.parseDouble(parts[0]);
+            double denominator = parts.length > 1 ? Double.parseDouble(parts[1]) : 1;
+            return denominator == 0 ? null : numerator / denominator;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public static class VideoPacket {
+        private final double time;
+        private final long position;
+        private final boolean keyframe;
+
+        public VideoPacket(double time, long position, boolean keyframe) {
+            this.time = time;
+            this.position = position;
+            this.keyframe = keyframe;
+        }
+
+        public double getTime() {
+            return time;
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        public boolean isKeyframe() {
+            return keyframe;
+        }
+    }
+
     public static class VideoMetadata {
         private Integer durationSeconds;
         private Integer width;
         private Integer height;
         private String codec;
         private Long bitrate;
-        
+        private String profile;
+        private Integer level;
+        private String pixelFormat;
+        private Long videoBitrate;
+        private Double frameRate;
+        private String audioCodec;
+        private List<Double> keyframeTimes = new ArrayList<>();
+
         public Integer getDurationSeconds() {
             return durationSeconds;
         }
-        
+
         public void setDurationSeconds(Integer durationSeconds) {
             this.durationSeconds = durationSeconds;
         }
-        
+
         public Integer getWidth() {
             return width;
         }
-        
+
         public void setWidth(Integer width) {
             this.width = width;
         }
-        
+
         public Integer getHeight() {
             return height;
         }
-        
+
         public void setHeight(Integer height) {
             this.height = height;
         }
-        
+
         public String getCodec() {
             return codec;
         }
-        
+
         public void setCodec(String codec) {
             this.codec = codec;
         }
-        
+
         public Long getBitrate() {
             return bitrate;
         }
-        
+
         public void setBitrate(Long bitrate) {
             this.bitrate = bitrate;
         }
+
+        public String getProfile() {
+            return profile;
+        }
+
+        public void setProfile(String profile) {
+            this.profile = profile;
+        }
+
+        public Integer getLevel() {
+            return level;
+        }
+
+        public void setLevel(Integer level) {
+            this.level = level;
+        }
+
+        public String getPixelFormat() {
+            return pixelFormat;
+        }
+
+        public void setPixelFormat(String pixelFormat) {
+            this.pixelFormat = pixelFormat;
+        }
+
+        public Long getVideoBitrate() {
+            return videoBitrate;
+        }
+
+        public void setVideoBitrate(Long videoBitrate) {
+            this.videoBitrate = videoBitrate;
+        }
+
+        public Double getFrameRate() {
+            return frameRate;
+        }
+
+        public void setFrameRate(Double frameRate) {
+            this.frameRate = frameRate;
+        }
+
+        public String getAudioCodec() {
+            return audioCodec;
+        }
+
+        public void setAudioCodec(String audioCodec) {
+            this.audioCodec = audioCodec;
+        }
+
+        public List<Double> getKeyframeTimes() {
+            return keyframeTimes;
+        }
+
+        public void setKeyframeTimes(List<Double> keyframeTimes) {
+            this.keyframeTimes = keyframeTimes;
+        }
+
+        /**
+         * Largest gap between keyframes, or null if fewer than two were seen.
+         */
+        public Double getMaxKeyframeIntervalSeconds() {
+            if (keyframeTimes.size() < 2) {
+                return null;
+            }
+            double max = 0;
+            for (int i = 1; i < keyframeTimes.size(); i++) {
+                max = Math.max(max, keyframeTimes.get(i) - keyframeTimes.get(i - 1));
+            }
+            return max;
+        }
+
+        /**
+         * RFC 6381 codec string for an HLS CODECS attribute, e.g. "avc1.64001f,mp4a.40.2".
+         * Returns null when the video codec or level is not one we can describe.
+         */
+        public String getCodecsAttribute() {
+            if (codec == null || level == null) {
+                return null;
+            }
+            String p = profile != null ? profile.toLowerCase() : "";
+            String video = switch (codec) {
+                case "h264" -> {
+                    // profile_idc + constraint flags; Constrained Baseline sets constraint_set0/1
+                    String profileAndConstraints = p.contains("constrained baseline") ? "42e0"
+                            : p.contains("baseline") ? "4200"
+                            : p.contains("main") ? "4d00"
+                            : p.contains("high") ? "6400"
+                            : null;
+                    yield profileAndConstraints == null ? null
+                            : "avc1." + profileAndConstraints + String.format("%02x", level);
+                }
+                // HEVC level is reported as level_idc (30 x level), e.g. 120 for 4.0
+                case "hevc" -> (p.contains("main 10") ? "hvc1.2.4.L" : "hvc1.1.6.L") + level + ".90";
+                // AV1 level is seq_level_idx; 8-bit Main tier
+                case "av1" -> "av01.0." + String.format("%02d", level) + "M.08";
+                default -> null;
+            };
+            if (video == null) {
+                return null;
+            }
+            return "aac".equals(audioCodec) ? video + ",mp4a.40.2" : video;
+        }
+
+        /**
+         * Video stream bitrate, falling back to the container bitrate.
+         */
+        public Long getEffectiveVideoBitrate() {
+            return videoBitrate != null ? videoBitrate : bitrate;
+        }
     }
-}
\ No newline at end of file
+}
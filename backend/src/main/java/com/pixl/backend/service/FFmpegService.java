@@ -1,23 +1,36 @@
 package com.pixl.backend.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.StatusCode;
 import io.opentelemetry.api.trace.Tracer;
 import io.opentelemetry.context.Scope;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 public class FFmpegService {
     private final Tracer tracer;
+    private final FfmpegRunner ffmpegRunner;
+    private final MeterRegistry meterRegistry;
+    private final ComplexityAnalysisService complexityAnalysisService;
+    private final EncodeProfiles encodeProfiles;
+    private final CodecLadder codecLadder;
+    private final SegmentPolicy segmentPolicy;
 
     private static final Map<String, QualitySettings> QUALITY_MAP = new HashMap<>();
-    
+
     static {
         QUALITY_MAP.put("360p", new QualitySettings(640, 360, "500k"));
         QUALITY_MAP.put("480p", new QualitySettings(854, 480, "1000k"));
@@ -25,11 +38,43 @@ public class FFmpegService {
         QUALITY_MAP.put("1080p", new QualitySettings(1920, 1080, "5000k"));
     }
 
-    public FFmpegService(Tracer tracer){
+    @Value("${app.transcode.passthrough.enabled}")
+    private boolean passthroughEnabled;
+
+    @Value("${app.transcode.passthrough.max-bitrate-ratio}")
+    private double passthroughMaxBitrateRatio;
+
+    @Value("${app.transcode.passthrough.max-keyframe-interval-seconds}")
+    private double passthroughMaxKeyframeInterval;
+
+    @Value("${app.hls.packaging-mode}")
+    private String packagingMode;
+
+    private final Set<String> passthroughProfiles;
+
+    public FFmpegService(Tracer tracer, FfmpegRunner ffmpegRunner, MeterRegistry meterRegistry,
+            ComplexityAnalysisService complexityAnalysisService, EncodeProfiles encodeProfiles, CodecLadder codecLadder,
+            SegmentPolicy segmentPolicy,
+            @Value("${app.transcode.passthrough.allowed-profiles}") String allowedProfiles){
         this.tracer = tracer;
+        this.ffmpegRunner = ffmpegRunner;
+        this.meterRegistry = meterRegistry;
+        this.complexityAnalysisService = complexityAnalysisService;
+        this.encodeProfiles = encodeProfiles;
+        this.codecLadder = codecLadder;
+        this.segmentPolicy = segmentPolicy;
+        this.passthroughProfiles = Arrays.stream(allowedProfiles.split(","))
+                .map(profile -> profile.trim().toLowerCase())
+                .collect(Collectors.toSet());
     }
 
-    public Path transcode(Path inputPath, String quality, Path outputPath) throws Exception {
+    /**
+     * @param source          probe of the input, or null if unavailable (always re-encodes)
+     * @param complexityScore per-title score from {@link ComplexityAnalysisService}, or null for ladder defaults
+     * @param encodeProfile   named speed profile from {@link EncodeProfiles}; null selects the default
+     */
+    public TranscodeResult transcode(Path inputPath, String quality, Path outputPath,
+            FFProbeService.VideoMetadata source, Double complexityScore, String encodeProfile) throws Exception {
         Span span = tracer.spanBuilder("ffmpeg-transcode").startSpan();
 
         try(Scope scope = span.makeCurrent()){
@@ -37,53 +82,63 @@ public class FFmpegService {
             span.setAttribute("output.path", outputPath.toString());
             span.setAttribute("quality", quality);
 
-            QualitySettings settings = QUALITY_MAP.get(quality);
+            QualitySettings settings = QUALITY_MAP.get(CodecLadder.rungOf(quality));
             if(settings == null){
                 throw new IllegalArgumentException("Unknown quality: " + quality);
             }
+            String codec = CodecLadder.codecOf(quality);
+            span.setAttribute("codec", codec);
 
             span.setAttribute("resolution.width", settings.width);
             span.setAttribute("resolution.height", settings.height);
             span.setAttribute("bitrate", settings.bitrate);
 
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "ffmpeg",
-                "-i", inputPath.toString(),
-                "-c:v", "libx264",           // H.264 codec
-                "-preset", "medium",          // Encoding speed/quality tradeoff
-                "-crf", "23",                 // Constant Rate Factor (quality)
-                "-vf", String.format("scale=%d:%d:force_original_aspect_ratio=decrease,pad=%d:%d:(ow-iw)/2:(oh-ih)/2", 
-    settings.width, settings.height, settings.width, settings.height),
-                "-c:a", "aac",                // Audio codec
-                "-b:a", "128k",               // Audio bitrate
-                "-movflags", "+faststart",    // Enable streaming
-                "-y",                         // Overwrite output file
-                outputPath.toString()
-            );
+            boolean passthrough = CodecLadder.H264.equals(codec) && canPassthrough(source, settings);
+            span.setAttribute("passthrough", passthrough);
+
+            String profile = passthrough ? EncodeProfiles.PASSTHROUGH : encodeProfiles.normalize(encodeProfile);
+            span.setAttribute("encode.profile", profile);
+
+            List<String> command;
+            if (passthrough) {
+                command = remuxCommand(inputPath, outputPath);
+            } else {
+                ComplexityAnalysisService.RungTuning rungTuning = complexityAnalysisService.tune(complexityScore,
+                        Math.round(settings.bitrateBps * codecLadder.bitrateFactor(codec)));
+                ComplexityAnalysisService.RungTuning tuning = new ComplexityAnalysisService.RungTuning(
+                        codecLadder.crfFor(codec, rungTuning.getCrf()), rungTuning.getMaxrateBps());
+                span.setAttribute("crf", tuning.getCrf());
+                if (tuning.getMaxrateBps() != null) {
+                    span.setAttribute("maxrate", tuning.getMaxrateBps());
+                }
+                command = encodeCommand(inputPath, settings,
+                        codecLadder.videoEncoderArgs(codec, encodeProfiles.presetFor(profile)), tuning, outputPath);
+            }
 
             span.addEvent("FFmpeg process started");
-            System.out.println("[FFmpegService] Starting FFmpeg transcode to " + quality + "...");
-
-            Process process = processBuilder.start();
-            monitorFFmpegProgress(process, span);
-
-            int exitCode = process.waitFor();
-            span.setAttribute("ffmpeg.exit_code", exitCode);
-            
-            if (exitCode != 0) {
-                String error = readProcessError(process);
-                span.recordException(new RuntimeException("FFmpeg failed: " + error));
-                throw new RuntimeException("FFmpeg failed with exit code " + exitCode + ": " + error);
+            System.out.println("[FFmpegService] Starting FFmpeg " + (passthrough ? "stream copy" : "transcode")
+                    + " to " + quality + "...");
+
+            FfmpegRunner.Result result = ffmpegRunner.run(passthrough ? "remux" : "transcode", command);
+            span.setAttribute("ffmpeg.exit_code", result.getExitCode());
+            span.setAttribute("ffmpeg.cpu_ms", result.getCpuTime().toMillis());
+
+            if (!result.isSuccess()) {
+                throw new RuntimeException("FFmpeg failed with " + result.describeFailure());
             }
-            
+
+            if (passthrough) {
+                meterRegistry.counter("transcode.passthrough", "quality", quality).increment();
+            }
+
             long outputSize = Files.size(outputPath);
             span.setAttribute("output.size", outputSize);
             span.addEvent("FFmpeg transcode completed");
-            
-            System.out.println("[FFmpegService] FFmpeg transcode completed: " + quality + 
+
+            System.out.println("[FFmpegService] FFmpeg transcode completed: " + quality +
                              " (" + (outputSize / 1024 / 1024) + " MB)");
-            
-            return outputPath;
+
+            return new TranscodeResult(profile, result.getElapsed());
         }catch (Exception e) {
             span.recordException(e);
             span.setStatus(StatusCode.ERROR, e.getMessage());
@@ -93,48 +148,119 @@ public class FFmpegService {
         }
     }
 
-    private void monitorFFmpegProgress(Process process, Span span) {
-        new Thread(() -> {
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getErrorStream()))) {
-                
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    // FFmpeg outputs progress to stderr
-                    if (line.contains("time=")) {
-                        // You could parse this and update progress
-                        // For now, just log it
-                    }
-                }
-            } catch (IOException e) {
-                // Ignore
-            }
-        }).start();
+    /**
+     * A rung can be produced by remuxing when the source already is that rung:
+     * same height, H.264 in an allowed profile with 4:2:0 chroma, AAC (or no) audio,
+     * a bitrate within the configured ratio of the rung's target, and keyframes
+     * frequent enough to cut HLS segments and sitting on the segment boundaries
+     * every encoded rung uses.
+     */
+    private boolean canPassthrough(FFProbeService.VideoMetadata source, QualitySettings settings) {
+        if (!passthroughEnabled || source == null) {
+            return false;
+        }
+
+        Long bitrate = source.getEffectiveVideoBitrate();
+        Double keyframeInterval = source.getMaxKeyframeIntervalSeconds();
+
+        return "h264".equals(source.getCodec())
+                && source.getProfile() != null
+                && passthroughProfiles.contains(source.getProfile().toLowerCase())
+                && "yuv420p".equals(source.getPixelFormat())
+                && (source.getAudioCodec() == null || "aac".equals(source.getAudioCodec()))
+                && source.getHeight() != null && source.getHeight() == settings.height
+                && source.getWidth() != null && source.getWidth() <= settings.width
+                && bitrate != null && bitrate <= settings.bitrateBps * passthroughMaxBitrateRatio
+                && keyframeInterval != null && keyframeInterval <= passthroughMaxKeyframeInterval
+                && segmentPolicy.isAligned(source.getKeyframeTimes(), source.getDurationSeconds());
     }
 
-    private String readProcessError(Process process) {
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(process.getErrorStream()))) {
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line).append("\n");
-            }
-            return sb.toString();
-        } catch (IOException e) {
-            return "Could not read error stream";
+    /**
+     * Just-in-time packaging serves segments as byte ranges of the rendition, so it
+     * is written as fragmented MP4 with a fragment starting at every keyframe,
+     * including the forced segment-boundary ones.
+     */
+    private String movflags() {
+        return HLSService.JIT.equals(packagingMode)
+                ? "+frag_keyframe+empty_moov+default_base_moof"
+                : "+faststart";
+    }
+
+    private List<String> remuxCommand(Path inputPath, Path outputPath) {
+        return List.of(
+            "ffmpeg",
+            "-i", inputPath.toString(),
+            "-map", "0:v:0",
+            "-map", "0:a:0?",
+            "-c", "copy",                 // No re-encode
+            "-movflags", movflags(),
+            "-y",
+            outputPath.toString()
+        );
+    }
+
+    private List<String> encodeCommand(Path inputPath, QualitySettings settings, List<String> videoEncoderArgs,
+            ComplexityAnalysisService.RungTuning tuning, Path outputPath) {
+        List<String> command = new ArrayList<>(List.of(
+            "ffmpeg",
+            "-i", inputPath.toString()
+        ));
+        command.addAll(videoEncoderArgs);  // Codec and speed/quality preset
+        command.addAll(List.of(
+            "-crf", String.valueOf(tuning.getCrf()),  // Constant Rate Factor (quality)
+            "-force_key_frames", segmentPolicy.forceKeyFramesExpression(),  // IDR on every segment boundary
+            "-vf", String.format("scale=%d:%d:force_original_aspect_ratio=decrease,pad=%d:%d:(ow-iw)/2:(oh-ih)/2",
+    settings.width, settings.height, settings.width, settings.height)
+        ));
+        if (tuning.getMaxrateBps() != null) {
+            // Capped CRF: quality-driven, but never above the rung's per-title ceiling
+            command.addAll(List.of(
+                "-maxrate", String.valueOf(tuning.getMaxrateBps()),
+                "-bufsize", String.valueOf(tuning.getMaxrateBps() * 2)
+            ));
+        }
+        command.addAll(List.of(
+            "-c:a", "aac",                // Audio codec
+            "-b:a", "128k",               // Audio bitrate
+            "-movflags", movflags(),      // Enable streaming
+            "-y",                         // Overwrite output file
+            outputPath.toString()
+        ));
+        return command;
+    }
+
+    public static class TranscodeResult {
+        private final String encodeProfile;
+        private final Duration elapsed;
+
+        TranscodeResult(String encodeProfile, Duration elapsed) {
+            this.encodeProfile = encodeProfile;
+            this.elapsed = elapsed;
+        }
+
+        /**
+         * Profile actually used, or {@link EncodeProfiles#PASSTHROUGH} for stream copies.
+         */
+        public String getEncodeProfile() {
+            return encodeProfile;
+        }
+
+        public Duration getElapsed() {
+            return elapsed;
         }
     }
-    
+
     private static class QualitySettings {
         final int width;
         final int height;
         final String bitrate;
-        
+        final long bitrateBps;
+
         QualitySettings(int width, int height, String bitrate) {
             this.width = width;
             this.height = height;
             this.bitrate = bitrate;
+            this.bitrateBps = Long.parseLong(bitrate.replace("k", "")) * 1000;
         }
     }
 }
@@ -0,0 +1,238 @@
+package com.pixl.backend.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Runs ffmpeg processes for all media services. Stderr is drained on a reader
+ * pool into a bounded tail buffer and every invocation is bounded by a
+ * wall-clock timeout. The pool hands each drain straight to a thread (there is
+ * no queue), so a chatty encode can never block on a full pipe however many
+ * encodes run at once.
+ */
+@Component
+public class FfmpegRunner {
+
+    private static final long CPU_SAMPLE_INTERVAL_MS = 500;
+
+    private static final long DRAIN_GRACE_MS = 5000;
+
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService readerExecutor;
+
+    @Value("${app.ffmpeg.timeout-seconds}")
+    private long defaultTimeoutSeconds;
+
+    @Value("${app.ffmpeg.stderr-tail-lines}")
+    private int stderrTailLines;
+
+    public FfmpegRunner(MeterRegistry meterRegistry,
+            @Value("${app.ffmpeg.reader-threads}") int readerThreads) {
+        this.meterRegistry = meterRegistry;
+        AtomicInteger threadCount = new AtomicInteger();
+        // Idle readers above the core size are retired after a minute
+        this.readerExecutor = new ThreadPoolExecutor(readerThreads, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> {
+                    Thread thread = new Thread(r, "ffmpeg-stderr-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        readerExecutor.shutdownNow();
+    }
+
+    public Result run(String invocationType, List<String> command) throws IOException, InterruptedException {
+        return run(invocationType, command, Duration.ofSeconds(defaultTimeoutSeconds), null);
+    }
+
+    public Result run(String invocationType, List<String> command, Consumer<String> lineListener)
+            throws IOException, InterruptedException {
+        return run(invocationType, command, Duration.ofSeconds(defaultTimeoutSeconds), lineListener);
+    }
+
+    /**
+     * @param invocationType metric tag, e.g. "transcode", "hls", "thumbnail"
+     * @param lineListener   optional callback for every stderr line (progress parsing)
+     */
+    public Result run(String invocationType, List<String> command, Duration timeout,
+            Consumer<String> lineListener) throws IOException, InterruptedException {
+        long startNanos = System.nanoTime();
+
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        Process process = processBuilder.start();
+
+        StderrTail tail = new StderrTail(stderrTailLines);
+        AtomicReference<Duration> cpuTime = new AtomicReference<>(Duration.ZERO);
+        Future<?> drain;
+        try {
+            drain = readerExecutor.submit(() -> drainStderr(process, tail, cpuTime, lineListener));
+        } catch (RuntimeException e) {
+            process.destroyForcibly();
+            throw e;
+        }
+
+        boolean timedOut;
+        try {
+            timedOut = !process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            if (timedOut) {
+                System.err.println("[FfmpegRunner] " + invocationType + " exceeded " + timeout.toSeconds() + "s, killing pid " + process.pid());
+                process.destroyForcibly();
+                process.waitFor();
+            }
+        } catch (InterruptedException e) {
+            // The caller is giving up on the result, so the process must not outlive it
+            process.destroyForcibly();
+            drain.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+
+        awaitDrain(drain);
+
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+        int exitCode = process.exitValue();
+        String exitTag = timedOut ? "timeout" : String.valueOf(exitCode);
+
+        Timer.builder("ffmpeg.duration")
+                .tag("type", invocationType)
+                .tag("exit_code", exitTag)
+                .register(meterRegistry)
+                .record(elapsed);
+        Timer.builder("ffmpeg.cpu.time")
+                .tag("type", invocationType)
+                .register(meterRegistry)
+                .record(cpuTime.get());
+        meterRegistry.counter("ffmpeg.exit", "type", invocationType, "exit_code", exitTag).increment();
+
+        return new Result(exitCode, timedOut, tail.snapshot(), elapsed, cpuTime.get());
+    }
+
+    /**
+     * The pipe closes with the process; a grandchild holding it open must not
+     * hang the caller.
+     */
+    private void awaitDrain(Future<?> drain) throws InterruptedException {
+        try {
+            drain.get(DRAIN_GRACE_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            drain.cancel(true);
+        } catch (ExecutionException e) {
+            System.err.println("[FfmpegRunner] Stderr reader failed: " + e.getCause());
+        }
+    }
+
+    private void drainStderr(Process process, StderrTail tail, AtomicReference<Duration> cpuTime,
+            Consumer<String> lineListener) {
+        long lastSample = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                tail.add(line);
+                if (lineListener != null) {
+                    lineListener.accept(line);
+                }
+
+                // CPU time is only observable while the process is alive, so sample it as output arrives
+                long now = System.currentTimeMillis();
+                if (now - lastSample >= CPU_SAMPLE_INTERVAL_MS) {
+                    lastSample = now;
+                    process.info().totalCpuDuration().ifPresent(cpuTime::set);
+                }
+            }
+        } catch (IOException e) {
+            // Stream closed when the process was killed
+        }
+    }
+
+    private static class StderrTail {
+        private final ArrayDeque<String> lines;
+        private final int capacity;
+
+        StderrTail(int capacity) {
+            this.capacity = capacity;
+            this.lines = new ArrayDeque<>(capacity);
+        }
+
+        synchronized void add(String line) {
+            if (lines.size() == capacity) {
+                lines.removeFirst();
+            }
+            lines.addLast(line);
+        }
+
+        synchronized String snapshot() {
+            return String.join("\n", lines);
+        }
+    }
+
+    public static class Result {
+        private final int exitCode;
+        private final boolean timedOut;
+        private final String stderrTail;
+        private final Duration elapsed;
+        private final Duration cpuTime;
+
+        Result(int exitCode, boolean timedOut, String stderrTail, Duration elapsed, Duration cpuTime) {
+            this.exitCode = exitCode;
+            this.timedOut = timedOut;
+            this.stderrTail = stderrTail;
+            this.elapsed = elapsed;
+            this.cpuTime = cpuTime;
+        }
+
+        public boolean isSuccess() {
+            return !timedOut && exitCode == 0;
+        }
+
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        public String getStderrTail() {
+            return stderrTail;
+        }
+
+        public Duration getElapsed() {
+            return elapsed;
+        }
+
+        public Duration getCpuTime() {
+            return cpuTime;
+        }
+
+        public String describeFailure() {
+            return timedOut ? "timed out after " + elapsed.toSeconds() + "s" : "exit code " + exitCode + ": " + stderrTail;
+        }
+    }
+}
@@ -1,18 +1,36 @@
 package com.pixl.backend.service;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.pixl.backend.dto.Mp4Index;
+import com.pixl.backend.model.TranscodeJob;
+import com.pixl.backend.model.TranscodeStatus;
+import com.pixl.backend.repository.TranscodeJobRepository;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.StatusCode;
 import io.opentelemetry.api.trace.Tracer;
@@ -20,8 +38,25 @@ import io.opentelemetry.context.Scope;
 
 @Service
 public class HLSService {
+    public static final String SINGLE_FILE = "single-file";
+    public static final String IFRAME_PLAYLIST = "iframes.m3u8";
+    public static final String JIT = "jit";
+
+    private static final int TS_PACKET_BYTES = 188;
+    // ffmpeg's mpegts muxer opens every file with SDT, PAT and PMT
+    private static final int TS_TABLES_BYTES = 3 * TS_PACKET_BYTES;
+
     private final MinioService minioService;
     private final Tracer tracer;
+    private final FfmpegRunner ffmpegRunner;
+    private final TranscodeJobRepository transcodeJobRepository;
+    private final CodecLadder codecLadder;
+    private final SegmentPolicy segmentPolicy;
+    private final SegmentUploader segmentUploader;
+    private final MeterRegistry meterRegistry;
+    private final FFProbeService ffProbeService;
+    private final PlaylistCache playlistCache;
+    private final Mp4FragmentIndexer indexer;
 
     @Value("${minio.bucket.videos-transcoded}")
     private String transcodedBucket;
@@ -29,12 +64,43 @@ public class HLSService {
     @Value("${app.transcode.qualities}")
     private String qualities;
 
+    @Value("${app.hls.max-segments-in-flight}")
+    private int maxSegmentsInFlight;
+
+    // "segmented" (one object per segment), "single-file" (one object per rendition, EXT-X-BYTERANGE)
+    // or "jit" (manifests generated on request by JitPackager)
+    @Value("${app.hls.packaging-mode}")
+    private String packagingMode;
+
     public HLSService(MinioService minioService,
-            Tracer tracer) {
+            Tracer tracer,
+            FfmpegRunner ffmpegRunner,
+            TranscodeJobRepository transcodeJobRepository,
+            CodecLadder codecLadder,
+            SegmentPolicy segmentPolicy,
+            SegmentUploader segmentUploader,
+            MeterRegistry meterRegistry,
+            FFProbeService ffProbeService,
+            PlaylistCache playlistCache,
+            Mp4FragmentIndexer indexer) {
         this.minioService = minioService;
         this.tracer = tracer;
+        this.ffmpegRunner = ffmpegRunner;
+        this.transcodeJobRepository = transcodeJobRepository;
+        this.codecLadder = codecLadder;
+        this.segmentPolicy = segmentPolicy;
+        this.segmentUploader = segmentUploader;
+        this.meterRegistry = meterRegistry;
+        this.ffProbeService = ffProbeService;
+        this.playlistCache = playlistCache;
+        this.indexer = indexer;
     }
 
+    /**
+     * Packages every completed rendition that has no playlist yet and rewrites the
+     * master playlist, so re-running it after extra codec renditions are added
+     * only packages the new ones.
+     */
     public void generateHLS(String videoId) {
         Span span = tracer.spanBuilder("generate-hls").startSpan();
 
@@ -42,19 +108,25 @@ public class HLSService {
             span.setAttribute("video.id", videoId);
             System.out.println("[HLSService] generating HLS Stream for " + videoId);
 
-            List<String> qualityLevels = Arrays.asList(qualities.split(","));
+            List<TranscodeJob> renditions = completedRenditions(videoId);
+            span.setAttribute("rendition.count", renditions.size());
 
-            for (String quality : qualityLevels) {
-                generateHLSforQuality(videoId, quality.trim(), span);
+            for (TranscodeJob rendition : renditions) {
+                if (minioService.fileExists(transcodedBucket, playlistObjectName(videoId, rendition.getQuality()))) {
+                    continue;
+                }
+                generateHLSforQuality(videoId, rendition.getQuality(), span);
             }
 
-            generateMasterPlaylist(videoId, qualityLevels);
+            generateMasterPlaylist(videoId, renditions);
+            playlistCache.invalidate(videoId);
 
             span.addEvent("hls-generation-complete");
             System.out.println("[HLSService] HLS Stream generated for " + videoId);
         } catch (Exception e) {
             span.recordException(e);
             span.setStatus(StatusCode.ERROR, e.getMessage());
+            throw new RuntimeException("HLS generation failed for " + videoId + ": " + e.getMessage(), e);
         } finally {
             span.end();
         }
@@ -80,32 +152,64 @@ public class HLSService {
                 Files.copy(stream, inputPath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
             }
 
+            long packageStartNanos = System.nanoTime();
             Path hlsDir = Files.createTempDirectory("hls-" + quality + "-");
             Path playlistPath = hlsDir.resolve("playlist.m3u8");
 
-            ProcessBuilder processBuilder = new ProcessBuilder(
+            List<String> command = new ArrayList<>(List.of(
                     "ffmpeg",
                     "-i", inputPath.toString(),
                     "-codec:", "copy",
                     "-start_number", "0",
-                    "-hls_time", "6",
-                    "-hls_list_size", "0",
-                    "-hls_segment_filename", hlsDir.resolve("segment%03d.ts").toString(),
-                    "-f", "hls",
-                    playlistPath.toString());
-
-            Process process = processBuilder.start();
-            int exitCode = process.waitFor();
-
-            if (exitCode != 0) {
-                String error = readProcessError(process);
-                throw new RuntimeException("HLS generation failed: " + error);
+                    "-hls_list_size", "0"));
+            command.addAll(segmentPolicy.hlsTimingArgs());
+
+            boolean singleFile = SINGLE_FILE.equals(packagingMode);
+            span.setAttribute("hls.single_file", singleFile);
+            String extension = CodecLadder.usesFragmentedMp4(quality) ? ".m4s" : ".ts";
+            // In single-file mode the muxer writes every segment (and the fMP4 init section) into one file
+            String segmentPattern = singleFile ? "stream" + extension : "segment%03d" + extension;
+
+            if (CodecLadder.usesFragmentedMp4(quality)) {
+                command.addAll(List.of(
+                        "-hls_segment_type", "fmp4",
+                        "-hls_fmp4_init_filename", "init.mp4"));
+            }
+            if (singleFile) {
+                command.addAll(List.of("-hls_flags", "single_file"));
+            }
+            command.addAll(List.of(
+                    "-hls_segment_filename", hlsDir.resolve(segmentPattern).toString()));
+            command.addAll(List.of("-f", "hls", playlistPath.toString()));
+
+            SegmentUploader.Batch batch = segmentUploader.newBatch(transcodedBucket,
+                    videoId + "/hls/" + quality + "/", maxSegmentsInFlight);
+            ClosedSegmentTracker tracker = new ClosedSegmentTracker(hlsDir, batch);
+
+            try {
+                // Segments are uploaded as ffmpeg closes them, overlapping packaging with network I/O
+                FfmpegRunner.Result result = ffmpegRunner.run("hls", command, tracker);
+
+                if (!result.isSuccess()) {
+                    throw new RuntimeException("HLS generation failed: " + result.describeFailure());
+                }
+
+                // Needs every local segment, so it runs before publishing uploads and deletes them
+                writeIFramePlaylist(hlsDir, CodecLadder.usesFragmentedMp4(quality));
+
+                publishRendition(videoId, quality, hlsDir, batch, span);
+            } finally {
+                // Never delete files out from under uploads that are still running
+                batch.settle();
+                Files.deleteIfExists(inputPath);
+                deleteDirectory(hlsDir);
             }
 
-            uploadHLSFiles(videoId, quality, hlsDir);
-
-            Files.deleteIfExists(inputPath);
-            deleteDirectory(hlsDir);
+            Timer.builder("hls.package.publish.latency")
+                    .description("From start of packaging to the rendition playlist being published")
+                    .tag("quality", quality)
+                    .register(meterRegistry)
+                    .record(Duration.ofNanos(System.nanoTime() - packageStartNanos));
 
             span.addEvent("HLS quality stream generated");
 
@@ -115,55 +219,289 @@ public class HLSService {
 
     }
 
-    private void uploadHLSFiles(String videoId, String quality, Path hlsDir) throws Exception {
-        Path playlistPath = hlsDir.resolve("playlist.m3u8");
-        String playlistObjectName = videoId + "/hls/" + quality + "/playlist.m3u8";
+    /**
+     * Uploads whatever the tracker has not (the final segment, the fMP4 init
+     * segment), waits for every segment, and only then publishes the playlist.
+     */
+    private void publishRendition(String videoId, String quality, Path hlsDir,
+            SegmentUploader.Batch batch, Span span) throws Exception {
+        try (Stream<Path> files = Files.list(hlsDir)) {
+            for (Path path : files.toList()) {
+                String contentType = segmentContentType(path.getFileName().toString());
+                if (contentType != null) {
+                    batch.submit(path, contentType, true);
+                }
+            }
+        }
 
+        // The playlist doubles as the "already packaged" marker, so it only goes up once every segment is stored
+        batch.await();
+        span.setAttribute("segment.count", batch.getSegmentCount());
+        span.setAttribute("segment.bytes", batch.getBytes());
+
+        Path iframePlaylistPath = hlsDir.resolve(IFRAME_PLAYLIST);
+        if (Files.exists(iframePlaylistPath)) {
+            try (InputStream stream = Files.newInputStream(iframePlaylistPath)) {
+                minioService.uploadFile(transcodedBucket, videoId + "/hls/" + quality + "/" + IFRAME_PLAYLIST,
+                        stream, Files.size(iframePlaylistPath), "application/vnd.apple.mpegurl");
+            }
+        }
+
+        Path playlistPath = hlsDir.resolve("playlist.m3u8");
         try (InputStream stream = Files.newInputStream(playlistPath)) {
-            minioService.uploadFile(transcodedBucket, playlistObjectName,
+            minioService.uploadFile(transcodedBucket, playlistObjectName(videoId, quality),
                     stream, Files.size(playlistPath), "application/vnd.apple.mpegurl");
         }
+    }
 
-        Files.list(hlsDir)
-                .filter(path -> path.toString().endsWith(".ts"))
-                .forEach(segmentPath -> {
-                    try {
-                        String segmentObjectName = videoId + "/hls/" + quality + "/"
-                                + segmentPath.getFileName().toString();
-                        try (InputStream stream = Files.newInputStream(segmentPath)) {
-                            minioService.uploadFile(transcodedBucket, segmentObjectName,
-                                    stream, Files.size(segmentPath), "video/mp2t");
-                        }
-                    } catch (Exception e) {
-                        throw new RuntimeException("Failed to upload segment: " + e.getMessage());
+    /**
+     * Builds the rendition's EXT-X-I-FRAMES-ONLY playlist from its local media
+     * playlist and segments, in every packaging mode. Nothing is written if no
+     * keyframe was found.
+     */
+    private void writeIFramePlaylist(Path hlsDir, boolean fragmentedMp4) throws Exception {
+        LocalPlaylist playlist = LocalPlaylist.read(hlsDir.resolve("playlist.m3u8"));
+        List<IFramePlaylist.Entry> entries = fragmentedMp4
+                ? fragmentedIFrames(hlsDir, playlist)
+                : transportStreamIFrames(hlsDir, playlist);
+        if (entries.isEmpty()) {
+            return;
+        }
+        Files.writeString(hlsDir.resolve(IFRAME_PLAYLIST), IFramePlaylist.build(entries, fragmentedMp4 ? 7 : 5));
+    }
+
+    /**
+     * MPEG-TS: one entry per keyframe, from its first TS packet to the next
+     * video packet, lasting until the next keyframe. Everything before a file's
+     * first video packet (the SDT, PAT and PMT ffmpeg writes at the start of
+     * every file) is referenced as the map so clients can parse a range on its own.
+     */
+    private List<IFramePlaylist.Entry> transportStreamIFrames(Path hlsDir, LocalPlaylist playlist) throws Exception {
+        List<String> names = playlist.segments.stream().map(segment -> segment.uri).distinct().toList();
+        List<Path> files = names.stream().map(hlsDir::resolve).toList();
+        long[] starts = new long[files.size() + 1];
+        for (int i = 0; i < files.size(); i++) {
+            starts[i + 1] = starts[i] + Files.size(files.get(i));
+        }
+
+        // One scan over the files back to back; positions are mapped back to each file
+        List<FFProbeService.VideoPacket> packets = ffProbeService.probeVideoPackets(files);
+        List<FFProbeService.VideoPacket> keyframes = new ArrayList<>();
+        List<IFramePlaylist.Entry> ranges = new ArrayList<>();
+        long[] mapLengths = new long[files.size()];
+        int file = 0;
+        for (int i = 0; i < packets.size(); i++) {
+            FFProbeService.VideoPacket packet = packets.get(i);
+            while (file + 1 < files.size() && packet.getPosition() >= starts[file + 1]) {
+                file++;
+            }
+            long position = packet.getPosition() - starts[file];
+            if (mapLengths[file] == 0) {
+                // Falls back to the muxer's fixed table layout if the scan reports no usable position
+                mapLengths[file] = position < TS_TABLES_BYTES || position % TS_PACKET_BYTES != 0
+                        ? TS_TABLES_BYTES : position;
+            }
+            if (!packet.isKeyframe()) {
+                continue;
+            }
+
+            long end = i + 1 < packets.size() ? Math.min(packets.get(i + 1).getPosition(), starts[file + 1])
+                    : starts[file + 1];
+            String map = "URI=\"" + names.get(file) + "\",BYTERANGE=\"" + mapLengths[file] + "@0\"";
+            keyframes.add(packet);
+            ranges.add(new IFramePlaylist.Entry(map, names.get(file), position, end - packet.getPosition(), 0));
+        }
+
+        double lastPacketTime = packets.isEmpty() ? 0 : packets.get(packets.size() - 1).getTime();
+        List<IFramePlaylist.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < ranges.size(); i++) {
+            IFramePlaylist.Entry range = ranges.get(i);
+            double next = i + 1 < keyframes.size() ? keyframes.get(i + 1).getTime() : lastPacketTime;
+            double duration = Math.max(next - keyframes.get(i).getTime(), 0.001);
+            entries.add(new IFramePlaylist.Entry(range.map, range.uri, range.offset, range.length, duration));
+        }
+        return entries;
+    }
+
+    /**
+     * Fragmented MP4: one entry per fragment, from its moof through its first
+     * video sample. Fragments start on keyframes, and the playlist's own map
+     * (the init section) is reused.
+     */
+    private List<IFramePlaylist.Entry> fragmentedIFrames(Path hlsDir, LocalPlaylist playlist) throws Exception {
+        if (playlist.map == null) {
+            throw new IllegalStateException("fMP4 playlist without EXT-X-MAP");
+        }
+        LocalPlaylist.Segment mapSegment = LocalPlaylist.mapSegment(playlist.map);
+        byte[] init = readRange(hlsDir.resolve(mapSegment.uri), mapSegment.offset, mapSegment.length);
+
+        List<IFramePlaylist.Entry> entries = new ArrayList<>();
+        for (LocalPlaylist.Segment segment : playlist.segments) {
+            byte[] media = readRange(hlsDir.resolve(segment.uri), segment.offset, segment.length);
+            Mp4Index index;
+            // The indexer needs the moov ahead of the fragments
+            try (InputStream stream = new SequenceInputStream(new ByteArrayInputStream(init),
+                    new ByteArrayInputStream(media))) {
+                index = indexer.indexFragments(stream);
+            }
+            for (Mp4Index.Segment fragment : index.getSegments()) {
+                entries.add(new IFramePlaylist.Entry(playlist.map, segment.uri,
+                        segment.offset + fragment.getOffset() - init.length, fragment.getKeyframeLength(),
+                        fragment.getDurationSeconds()));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @param length bytes to read, or -1 for the rest of the file
+     */
+    private static byte[] readRange(Path file, long offset, long length) throws IOException {
+        try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+            long size = length < 0 ? channel.size() - offset : length;
+            ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(size));
+            channel.position(offset);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException(file.getFileName() + " is shorter than its playlist says");
+                }
+            }
+            return buffer.array();
+        }
+    }
+
+    /**
+     * The media playlist ffmpeg wrote: the EXT-X-MAP attributes and every
+     * segment's file and byte range.
+     */
+    private static class LocalPlaylist {
+        private static final Pattern URI = Pattern.compile("URI=\"([^\"]+)\"");
+        private static final Pattern BYTERANGE = Pattern.compile("BYTERANGE=\"(\\d+)(?:@(\\d+))?\"");
+
+        String map;
+        final List<Segment> segments = new ArrayList<>();
+
+        static class Segment {
+            final String uri;
+            final long offset;
+            final long length;   // -1 for the whole file
+
+            Segment(String uri, long offset, long length) {
+                this.uri = uri;
+                this.offset = offset;
+                this.length = length;
+            }
+        }
+
+        static LocalPlaylist read(Path path) throws IOException {
+            LocalPlaylist playlist = new LocalPlaylist();
+            Map<String, Long> ends = new HashMap<>();
+            long offset = 0;
+            long length = -1;
+            boolean ranged = false;
+            for (String line : Files.readAllLines(path)) {
+                String trimmed = line.trim();
+                if (trimmed.startsWith("#EXT-X-MAP:")) {
+                    playlist.map = trimmed.substring("#EXT-X-MAP:".length());
+                } else if (trimmed.startsWith("#EXT-X-BYTERANGE:")) {
+                    String[] range = trimmed.substring("#EXT-X-BYTERANGE:".length()).split("@");
+                    length = Long.parseLong(range[0]);
+                    offset = range.length > 1 ? Long.parseLong(range[1]) : -1;
+                    ranged = true;
+                } else if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                    if (ranged) {
+                        // A range without an offset continues where the previous one in the file ended
+                        long start = offset >= 0 ? offset : ends.getOrDefault(trimmed, 0L);
+                        playlist.segments.add(new Segment(trimmed, start, length));
+                        ends.put(trimmed, start + length);
+                    } else {
+                        playlist.segments.add(new Segment(trimmed, 0, -1));
                     }
-                });
+                    ranged = false;
+                }
+            }
+            return playlist;
+        }
 
+        static Segment mapSegment(String map) {
+            Matcher uri = URI.matcher(map);
+            if (!uri.find()) {
+                throw new IllegalStateException("EXT-X-MAP without URI: " + map);
+            }
+            Matcher range = BYTERANGE.matcher(map);
+            if (!range.find()) {
+                return new Segment(uri.group(1), 0, -1);
+            }
+            long offset = range.group(2) != null ? Long.parseLong(range.group(2)) : 0;
+            return new Segment(uri.group(1), offset, Long.parseLong(range.group(1)));
+        }
     }
 
-    private void generateMasterPlaylist(String videoId, List<String> qualityLevels) throws Exception {
-        StringBuilder masterPlaylist = new StringBuilder();
-        masterPlaylist.append("#EXTM3U\n");
-        masterPlaylist.append("#EXT-X-VERSION:3\n\n");
+    /**
+     * Watches ffmpeg's "Opening '...' for writing" log lines. The HLS muxer opens
+     * segment N+1 only after closing segment N, so each open hands the previous
+     * segment to the uploader. Runs on the stderr reader thread and never blocks
+     * it; a segment the tracker misses is picked up when the rendition is
+     * published, so the outcome does not depend on it. Uploaded segments stay on
+     * disk until the I-frame playlist has been built from them.
+     */
+    static class ClosedSegmentTracker implements Consumer<String> {
+        private static final Pattern OPENING = Pattern.compile("Opening '(.+)' for writing");
+
+        private final Path hlsDir;
+        private final SegmentUploader.Batch batch;
+        private Path current;
+
+        ClosedSegmentTracker(Path hlsDir, SegmentUploader.Batch batch) {
+            this.hlsDir = hlsDir;
+            this.batch = batch;
+        }
 
-        for (String quality : qualityLevels) {
-            String trimmedQuality = quality.trim();
-            String objectName = videoId + "-" + trimmedQuality + ".mp4";
+        @Override
+        public void accept(String line) {
+            Matcher matcher = OPENING.matcher(line);
+            if (!matcher.find()) {
+                return;
+            }
 
-            if (!minioService.fileExists(transcodedBucket, objectName)) {
-                continue;
+            Path opened = hlsDir.resolve(Path.of(matcher.group(1)).getFileName());
+            String fileName = opened.getFileName().toString();
+            // Playlist rewrites and the fMP4 init file are not media segments
+            if (!fileName.startsWith("segment") || segmentContentType(fileName) == null) {
+                return;
             }
 
-            int bandwidth = getBandwidthForQuality(trimmedQuality);
-            String resolution = getResolutionForQuality(trimmedQuality);
+            if (current != null && !current.equals(opened)) {
+                batch.submit(current, segmentContentType(current.getFileName().toString()), false);
+            }
+            current = opened;
+        }
+    }
 
-            masterPlaylist.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(bandwidth)
-                    .append(",RESOLUTION=").append(resolution).append("\n");
-            masterPlaylist.append(trimmedQuality).append("/playlist.m3u8\n\n");
+    public static String segmentContentType(String fileName) {
+        if (fileName.endsWith(".ts")) {
+            return "video/mp2t";
+        }
+        if (fileName.endsWith(".m4s")) {
+            return "video/iso.segment";
+        }
+        if (fileName.endsWith(".mp4")) {
+            return "video/mp4";
         }
+        return null;
+    }
 
+    private void generateMasterPlaylist(String videoId, List<TranscodeJob> renditions) throws Exception {
         String masterObjectName = videoId + "/hls/master.m3u8";
-        byte[] masterContent = masterPlaylist.toString().getBytes();
+        Map<String, Long> iframeBandwidths = new HashMap<>();
+        for (TranscodeJob rendition : renditions) {
+            String iframeObjectName = videoId + "/hls/" + rendition.getQuality() + "/" + IFRAME_PLAYLIST;
+            if (minioService.fileExists(transcodedBucket, iframeObjectName)) {
+                String iframePlaylist = new String(minioService.downloadFileAsBytes(transcodedBucket, iframeObjectName));
+                iframeBandwidths.put(rendition.getQuality(), IFramePlaylist.peakBandwidth(iframePlaylist));
+            }
+        }
+        byte[] masterContent = buildMasterPlaylist(videoId, renditions, false, iframeBandwidths).getBytes();
 
         minioService.uploadFile(transcodedBucket, masterObjectName, masterContent,
                 "application/vnd.apple.mpegurl");
@@ -171,6 +509,89 @@ public class HLSService {
         System.out.println("[HLSService] Master playlist generated");
     }
 
+    /**
+     * @param justInTime       renditions are served by {@link JitPackager}: all fMP4 and no
+     *                         stored playlists to check for
+     * @param iframeBandwidths peak bandwidth of each rendition's I-frame playlist, by quality;
+     *                         renditions without one get no I-frame stream
+     */
+    public String buildMasterPlaylist(String videoId, List<TranscodeJob> renditions, boolean justInTime,
+            Map<String, Long> iframeBandwidths) throws Exception {
+        boolean fragmentedMp4 = justInTime || renditions.stream()
+                .anyMatch(rendition -> CodecLadder.usesFragmentedMp4(rendition.getQuality()));
+
+        StringBuilder iframeStreams = new StringBuilder();
+
+        StringBuilder masterPlaylist = new StringBuilder();
+        masterPlaylist.append("#EXTM3U\n");
+        // EXT-X-MAP in fMP4 media playlists requires version 7 clients; byte ranges and I-frame streams need 4
+        masterPlaylist.append("#EXT-X-VERSION:").append(fragmentedMp4 ? 7 : 4).append("\n");
+        // Segments start on forced keyframes shared by all renditions
+        masterPlaylist.append("#EXT-X-INDEPENDENT-SEGMENTS\n\n");
+
+        for (TranscodeJob rendition : renditions) {
+            String quality = rendition.getQuality();
+            if (!justInTime && !minioService.fileExists(transcodedBucket, playlistObjectName(videoId, quality))) {
+                continue;
+            }
+
+            String rung = CodecLadder.rungOf(quality);
+
+            masterPlaylist.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(variantBandwidth(quality));
+            if (rendition.getOutputBitrate() != null) {
+                masterPlaylist.append(",AVERAGE-BANDWIDTH=").append(rendition.getOutputBitrate());
+            }
+            masterPlaylist.append(",RESOLUTION=").append(getResolutionForQuality(rung));
+            // Lets clients skip variants they cannot decode instead of failing on them
+            if (rendition.getCodecs() != null) {
+                masterPlaylist.append(",CODECS=\"").append(rendition.getCodecs()).append("\"");
+            }
+            masterPlaylist.append("\n");
+            masterPlaylist.append(quality).append("/playlist.m3u8\n\n");
+
+            Long iframeBandwidth = iframeBandwidths.get(quality);
+            if (iframeBandwidth != null) {
+                iframeStreams.append("#EXT-X-I-FRAME-STREAM-INF:BANDWIDTH=").append(iframeBandwidth)
+                        .append(",RESOLUTION=").append(getResolutionForQuality(rung));
+                if (rendition.getCodecs() != null) {
+                    // I-frame streams carry no audio
+                    iframeStreams.append(",CODECS=\"").append(rendition.getCodecs().split(",")[0]).append("\"");
+                }
+                iframeStreams.append(",URI=\"").append(quality).append("/").append(IFRAME_PLAYLIST).append("\"\n");
+            }
+        }
+
+        // Trick-play streams for seeking and scrubbing
+        masterPlaylist.append(iframeStreams);
+        return masterPlaylist.toString();
+    }
+
+    /**
+     * Peak bandwidth advertised for a rendition: the rung's ladder bitrate scaled by its codec's efficiency.
+     */
+    public int variantBandwidth(String quality) {
+        return (int) Math.round(getBandwidthForQuality(CodecLadder.rungOf(quality))
+                * codecLadder.bitrateFactor(CodecLadder.codecOf(quality)));
+    }
+
+    /**
+     * Completed renditions ordered by rung (configured ladder order), then H.264 before other codecs.
+     */
+    public List<TranscodeJob> completedRenditions(String videoId) {
+        List<String> ladder = Arrays.stream(qualities.split(",")).map(String::trim).toList();
+        return transcodeJobRepository.findByVideoId(videoId).stream()
+                .filter(job -> job.getStatus() == TranscodeStatus.COMPLETED)
+                .sorted(Comparator
+                        .comparingInt((TranscodeJob job) -> ladder.indexOf(CodecLadder.rungOf(job.getQuality())))
+                        .thenComparing(job -> !CodecLadder.H264.equals(CodecLadder.codecOf(job.getQuality())))
+                        .thenComparing(TranscodeJob::getQuality))
+                .toList();
+    }
+
+    private String playlistObjectName(String videoId, String quality) {
+        return videoId + "/hls/" + quality + "/playlist.m3u8";
+    }
+
     private int getBandwidthForQuality(String quality) {
         return switch (quality) {
             case "360p" -> 500000;
@@ -181,7 +602,7 @@ public class HLSService {
         };
     }
 
-    private String getResolutionForQuality(String quality) {
+    public String getResolutionForQuality(String quality) {
         return switch (quality) {
             case "360p" -> "640x360";
             case "480p" -> "854x480";
@@ -191,20 +612,6 @@ public class HLSService {
         };
     }
 
-    private String readProcessError(Process process) {
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(process.getErrorStream()))) {
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line).append("\n");
-            }
-            return sb.toString();
-        } catch (IOException e) {
-            return "Could not read error stream";
-        }
-    }
-
     private void deleteDirectory(Path directory) throws IOException {
         if (Files.exists(directory)) {
             Files.walk(directory)
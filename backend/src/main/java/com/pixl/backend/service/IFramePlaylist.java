@@ -0,0 +1,82 @@
+package com.pixl.backend.service;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * EXT-X-I-FRAMES-ONLY playlists, shared by ahead-of-time packaging and
+ * {@link JitPackager}. Every entry is the byte range of one keyframe.
+ */
+final class IFramePlaylist {
+
+    private IFramePlaylist() {
+    }
+
+    static final class Entry {
+        final String map;
+        final String uri;
+        final long offset;
+        final long length;
+        final double durationSeconds;
+
+        /**
+         * @param map EXT-X-MAP attributes the keyframe needs to be decoded on its
+         *            own (TS tables or the fMP4 init section), or null
+         */
+        Entry(String map, String uri, long offset, long length, double durationSeconds) {
+            this.map = map;
+            this.uri = uri;
+            this.offset = offset;
+            this.length = length;
+            this.durationSeconds = durationSeconds;
+        }
+    }
+
+    /**
+     * @param version EXT-X-MAP in I-frame playlists needs 5, fMP4 media needs 7
+     */
+    static String build(List<Entry> entries, int version) {
+        double maxDuration = 0;
+        String map = null;
+        StringBuilder body = new StringBuilder();
+        for (Entry entry : entries) {
+            maxDuration = Math.max(maxDuration, entry.durationSeconds);
+            // Segmented TS renditions repeat their tables in every file, so the map changes with the file
+            if (entry.map != null && !entry.map.equals(map)) {
+                map = entry.map;
+                body.append("#EXT-X-MAP:").append(map).append("\n");
+            }
+            body.append(String.format(Locale.ROOT, "#EXTINF:%.3f,\n", entry.durationSeconds));
+            body.append("#EXT-X-BYTERANGE:").append(entry.length).append("@").append(entry.offset).append("\n");
+            body.append(entry.uri).append("\n");
+        }
+
+        StringBuilder playlist = new StringBuilder();
+        playlist.append("#EXTM3U\n");
+        playlist.append("#EXT-X-VERSION:").append(version).append("\n");
+        playlist.append("#EXT-X-TARGETDURATION:").append((long) Math.ceil(maxDuration)).append("\n");
+        playlist.append("#EXT-X-MEDIA-SEQUENCE:0\n");
+        playlist.append("#EXT-X-PLAYLIST-TYPE:VOD\n");
+        playlist.append("#EXT-X-I-FRAMES-ONLY\n");
+        playlist.append(body);
+        playlist.append("#EXT-X-ENDLIST\n");
+        return playlist.toString();
+    }
+
+    /**
+     * Peak bitrate of an I-frame playlist: the largest keyframe range over its duration.
+     */
+    static long peakBandwidth(String playlist) {
+        double peak = 0;
+        double duration = 0;
+        for (String line : playlist.split("\n")) {
+            if (line.startsWith("#EXTINF:")) {
+                duration = Double.parseDouble(line.substring("#EXTINF:".length(), line.indexOf(',')));
+            } else if (line.startsWith("#EXT-X-BYTERANGE:") && duration > 0) {
+                long length = Long.parseLong(line.substring("#EXT-X-BYTERANGE:".length(), line.indexOf('@')));
+                peak = Math.max(peak, length * 8 / duration);
+            }
+        }
+        return Math.round(peak);
+    }
+}
@@ -0,0 +1,295 @@
+package com.pixl.backend.service;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pixl.backend.dto.Mp4Index;
+import com.pixl.backend.model.TranscodeJob;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+
+/**
+ * Just-in-time packaging. Renditions are stored once, as fragmented MP4, and
+ * HLS and DASH manifests are generated on request from a small byte index of
+ * each rendition: segments are byte ranges of the stored file, so nothing is
+ * re-muxed or duplicated per protocol.
+ *
+ * The index is built when a rendition is transcoded (or lazily from the stored
+ * object), persisted next to it as JSON, and cached in memory.
+ */
+@Service
+public class JitPackager {
+    public static final String MEDIA_FILE = "media.mp4";
+
+    private final MinioService minioService;
+    private final HLSService hlsService;
+    private final Mp4FragmentIndexer indexer;
+    private final Tracer tracer;
+    private final PlaylistCache playlistCache;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Mp4Index> indexCache;
+
+    @Value("${minio.bucket.videos-transcoded}")
+    private String transcodedBucket;
+
+    @Value("${app.hls.packaging-mode}")
+    private String packagingMode;
+
+    public JitPackager(MinioService minioService, HLSService hlsService, Mp4FragmentIndexer indexer, Tracer tracer,
+            PlaylistCache playlistCache, @Value("${app.jit.index-cache-size}") int indexCacheSize) {
+        this.minioService = minioService;
+        this.hlsService = hlsService;
+        this.indexer = indexer;
+        this.tracer = tracer;
+        this.playlistCache = playlistCache;
+        this.indexCache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Mp4Index> eldest) {
+                return size() > indexCacheSize;
+            }
+        });
+    }
+
+    public boolean isEnabled() {
+        return HLSService.JIT.equals(packagingMode);
+    }
+
+    public static String renditionObjectName(String videoId, String quality) {
+        return videoId + "-" + quality + ".mp4";
+    }
+
+    /**
+     * Indexes a freshly transcoded rendition from its local file, saving the
+     * packaging stage a download of the whole rendition.
+     */
+    public void storeIndex(String videoId, String quality, Path renditionFile) throws Exception {
+        Mp4Index index;
+        try (InputStream stream = Files.newInputStream(renditionFile)) {
+            index = indexer.index(stream);
+        }
+        saveIndex(videoId, quality, index);
+    }
+
+    /**
+     * Packaging stage in JIT mode: makes sure every completed rendition has an
+     * index, so the first playback request never pays for building one.
+     */
+    public void indexRenditions(String videoId) {
+        Span span = tracer.spanBuilder("jit-index-renditions").startSpan();
+
+        try (Scope scope = span.makeCurrent()) {
+            span.setAttribute("video.id", videoId);
+
+            List<TranscodeJob> renditions = hlsService.completedRenditions(videoId);
+            span.setAttribute("rendition.count", renditions.size());
+            if (renditions.isEmpty()) {
+                throw new IllegalStateException("No completed renditions to package");
+            }
+
+            for (TranscodeJob rendition : renditions) {
+                getIndex(videoId, rendition.getQuality());
+            }
+            // Manifests generated before the last rendition was marked complete
+            playlistCache.invalidate(videoId);
+
+            System.out.println("[JitPackager] Indexed " + renditions.size() + " renditions for " + videoId);
+        } catch (Exception e) {
+            span.recordException(e);
+            span.setStatus(StatusCode.ERROR, e.getMessage());
+            throw new RuntimeException("JIT packaging failed for " + videoId + ": " + e.getMessage(), e);
+        } finally {
+            span.end();
+        }
+    }
+
+    public Mp4Index getIndex(String videoId, String quality) throws Exception {
+        String key = videoId + "/" + quality;
+        Mp4Index cached = indexCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        String indexObjectName = indexObjectName(videoId, quality);
+        if (minioService.fileExists(transcodedBucket, indexObjectName)) {
+            Mp4Index index = objectMapper.readValue(
+                    minioService.downloadFileAsBytes(transcodedBucket, indexObjectName), Mp4Index.class);
+            indexCache.put(key, index);
+            return index;
+        }
+
+        // Renditions transcoded before indexing existed: one sequential read of the stored file
+        if (!isEnabled()) {
+            throw new IllegalStateException("No index for " + key + " and JIT packaging is disabled");
+        }
+        Mp4Index index;
+        try (InputStream stream = minioService.downloadFile(transcodedBucket, renditionObjectName(videoId, quality))) {
+            index = indexer.index(stream);
+        }
+        saveIndex(videoId, quality, index);
+        return index;
+    }
+
+    public void evict(String videoId) {
+        synchronized (indexCache) {
+            indexCache.keySet().removeIf(key -> key.startsWith(videoId + "/"));
+        }
+    }
+
+    /**
+     * fMP4 media playlist addressing the stored rendition by byte range.
+     */
+    public String mediaPlaylist(String videoId, String quality) throws Exception {
+        Mp4Index index = getIndex(videoId, quality);
+
+        StringBuilder playlist = new StringBuilder();
+        playlist.append("#EXTM3U\n");
+        playlist.append("#EXT-X-VERSION:7\n");
+        playlist.append("#EXT-X-TARGETDURATION:").append((long) Math.ceil(index.getMaxSegmentSeconds())).append("\n");
+        playlist.append("#EXT-X-MEDIA-SEQUENCE:0\n");
+        playlist.append("#EXT-X-PLAYLIST-TYPE:VOD\n");
+        playlist.append("#EXT-X-INDEPENDENT-SEGMENTS\n");
+        playlist.append("#EXT-X-MAP:URI=\"").append(MEDIA_FILE).append("\",BYTERANGE=\"")
+                .append(index.getInitLength()).append("@0\"\n");
+
+        for (Mp4Index.Segment segment : index.getSegments()) {
+            playlist.append(String.format(Locale.ROOT, "#EXTINF:%.3f,\n", segment.getDurationSeconds()));
+            playlist.append("#EXT-X-BYTERANGE:").append(segment.getLength())
+                    .append("@").append(segment.getOffset()).append("\n");
+            playlist.append(MEDIA_FILE).append("\n");
+        }
+        playlist.append("#EXT-X-ENDLIST\n");
+        return playlist.toString();
+    }
+
+    /**
+     * EXT-X-I-FRAMES-ONLY playlist over the stored rendition. Fragments start on
+     * keyframes, so each segment's entry is its first fragment's moof through
+     * its first sample, lasting as long as the segment.
+     */
+    public String iframePlaylist(String videoId, String quality) throws Exception {
+        Mp4Index index = getIndex(videoId, quality);
+        String map = "URI=\"" + MEDIA_FILE + "\",BYTERANGE=\"" + index.getInitLength() + "@0\"";
+
+        List<IFramePlaylist.Entry> entries = new ArrayList<>();
+        for (Mp4Index.Segment segment : index.getSegments()) {
+            if (segment.getKeyframeLength() <= 0) {
+                throw new IllegalStateException("Index for " + videoId + "/" + quality + " has no keyframe ranges");
+            }
+            entries.add(new IFramePlaylist.Entry(map, MEDIA_FILE, segment.getOffset(), segment.getKeyframeLength(),
+                    segment.getDurationSeconds()));
+        }
+        return IFramePlaylist.build(entries, 7);
+    }
+
+    public String masterPlaylist(String videoId) throws Exception {
+        List<TranscodeJob> renditions = hlsService.completedRenditions(videoId);
+        Map<String, Long> iframeBandwidths = new HashMap<>();
+        for (TranscodeJob rendition : renditions) {
+            try {
+                iframeBandwidths.put(rendition.getQuality(),
+                        IFramePlaylist.peakBandwidth(iframePlaylist(videoId, rendition.getQuality())));
+            } catch (IllegalStateException e) {
+                // Indexed before keyframe ranges were recorded: the rendition plays, just without trick play
+                System.out.println("[JitPackager] No I-frame stream for " + videoId + "/" + rendition.getQuality()
+                        + ": " + e.getMessage());
+            }
+        }
+        return hlsService.buildMasterPlaylist(videoId, renditions, true, iframeBandwidths);
+    }
+
+    /**
+     * Static DASH manifest over the same files: one adaptation set per codec, so
+     * players only switch between renditions they can decode seamlessly.
+     */
+    public String dashManifest(String videoId) throws Exception {
+        Map<String, List<TranscodeJob>> byCodec = hlsService.completedRenditions(videoId).stream()
+                .collect(Collectors.groupingBy(job -> CodecLadder.codecOf(job.getQuality()),
+                        LinkedHashMap::new, Collectors.toList()));
+        if (byCodec.isEmpty()) {
+            throw new IllegalStateException("No completed renditions for " + videoId);
+        }
+
+        double duration = 0;
+        double maxSegment = 0;
+        StringBuilder sets = new StringBuilder();
+        int setId = 0;
+
+        for (List<TranscodeJob> renditions : byCodec.values()) {
+            sets.append("    <AdaptationSet id=\"").append(setId++)
+                    .append("\" contentType=\"video\" mimeType=\"video/mp4\" segmentAlignment=\"true\" startWithSAP=\"1\">\n");
+
+            for (TranscodeJob rendition : renditions) {
+                String quality = rendition.getQuality();
+                Mp4Index index = getIndex(videoId, quality);
+                duration = Math.max(duration, index.getDurationSeconds());
+                maxSegment = Math.max(maxSegment, index.getMaxSegmentSeconds());
+
+                String[] resolution = hlsService.getResolutionForQuality(CodecLadder.rungOf(quality)).split("x");
+                sets.append("      <Representation id=\"").append(quality)
+                        .append("\" bandwidth=\"").append(hlsService.variantBandwidth(quality))
+                        .append("\" width=\"").append(resolution[0])
+                        .append("\" height=\"").append(resolution[1]).append("\"");
+                if (rendition.getCodecs() != null) {
+                    sets.append(" codecs=\"").append(rendition.getCodecs()).append("\"");
+                }
+                sets.append(">\n");
+                sets.append("        <BaseURL>").append(quality).append("/").append(MEDIA_FILE).append("</BaseURL>\n");
+                sets.append("        <SegmentList timescale=\"1000\">\n");
+                sets.append("          <Initialization range=\"0-").append(index.getInitLength() - 1).append("\"/>\n");
+                sets.append("          <SegmentTimeline>\n");
+                for (Mp4Index.Segment segment : index.getSegments()) {
+                    sets.append("            <S t=\"").append(Math.round(segment.getStartSeconds() * 1000))
+                            .append("\" d=\"").append(Math.round(segment.getDurationSeconds() * 1000)).append("\"/>\n");
+                }
+                sets.append("          </SegmentTimeline>\n");
+                for (Mp4Index.Segment segment : index.getSegments()) {
+                    sets.append("          <SegmentURL mediaRange=\"").append(segment.getOffset()).append("-")
+                            .append(segment.getOffset() + segment.getLength() - 1).append("\"/>\n");
+                }
+                sets.append("        </SegmentList>\n");
+                sets.append("      </Representation>\n");
+            }
+            sets.append("    </AdaptationSet>\n");
+        }
+
+        StringBuilder mpd = new StringBuilder();
+        mpd.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        mpd.append("<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\" profiles=\"urn:mpeg:dash:profile:isoff-main:2011\"")
+                .append(" type=\"static\"")
+                .append(String.format(Locale.ROOT, " mediaPresentationDuration=\"PT%.3fS\"", duration))
+                .append(String.format(Locale.ROOT, " minBufferTime=\"PT%.1fS\">\n", maxSegment));
+        mpd.append("  <Period id=\"0\" start=\"PT0S\">\n");
+        mpd.append(sets);
+        mpd.append("  </Period>\n");
+        mpd.append("</MPD>\n");
+        return mpd.toString();
+    }
+
+    private void saveIndex(String videoId, String quality, Mp4Index index) throws Exception {
+        minioService.uploadFile(transcodedBucket, indexObjectName(videoId, quality),
+                objectMapper.writeValueAsBytes(index), "application/json");
+        indexCache.put(videoId + "/" + quality, index);
+        // A new rendition changes the generated master playlist and DASH manifest
+        playlistCache.invalidate(videoId);
+    }
+
+    private String indexObjectName(String videoId, String quality) {
+        return videoId + "/jit/" + quality + ".idx.json";
+    }
+}
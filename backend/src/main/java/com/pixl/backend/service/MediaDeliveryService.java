@@ -0,0 +1,251 @@
+package com.pixl.backend.service;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Source of media bytes for the streaming endpoints. Reads of transcoded media
+ * (segments, and byte ranges of single-file and JIT renditions) go through two
+ * cache tiers, the in-process {@link SegmentCache} and then the local
+ * {@link DiskSegmentCache}; everything else streams from MinIO. Bytes loaded
+ * from MinIO into memory are written through to disk in the background.
+ *
+ * Concurrent misses for the same key are coalesced: the first request loads
+ * the bytes into the cache and the others wait for it and read the cached
+ * copy, so a burst of viewers on a new video costs MinIO one GET per segment.
+ */
+@Service
+public class MediaDeliveryService {
+
+    private final MinioService minioService;
+    private final SegmentCache segmentCache;
+    private final DiskSegmentCache diskCache;
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> inFlightLoads = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor diskWriteExecutor;
+    private final Counter coalescedCounter;
+
+    @Value("${minio.bucket.videos-transcoded}")
+    private String transcodedBucket;
+
+    @Value("${app.delivery.coalesce-timeout-ms}")
+    private long coalesceTimeoutMs;
+
+    public MediaDeliveryService(MinioService minioService, SegmentCache segmentCache, DiskSegmentCache diskCache,
+            MeterRegistry meterRegistry, @Value("${app.cache.disk.write-threads}") int diskWriteThreads) {
+        this.minioService = minioService;
+        this.segmentCache = segmentCache;
+        this.diskCache = diskCache;
+        this.coalescedCounter = meterRegistry.counter("delivery.coalesced.requests");
+
+        AtomicInteger threadCount = new AtomicInteger();
+        // Write-through is best effort: when disk falls behind, entries are simply not persisted
+        this.diskWriteExecutor = new ThreadPoolExecutor(diskWriteThreads, diskWriteThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(256), r -> {
+                    Thread thread = new Thread(r, "disk-cache-write-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        diskWriteExecutor.shutdownNow();
+    }
+
+    /**
+     * Opens length bytes of an object starting at offset. The caller closes the
+     * stream of the returned media.
+     *
+     * @param stat metadata of the whole object, to tell full reads from ranges
+     *             and to address the disk tier by content
+     */
+    public Media open(String bucket, String objectName, long offset, long length, ObjectStatCache.ObjectStat stat)
+            throws Exception {
+        Media cached = openCached(bucket, objectName, offset, length, stat);
+        if (cached != null) {
+            return cached;
+        }
+        if (!isCacheable(bucket, length)) {
+            return Media.of(openOrigin(bucket, objectName, offset, length, stat.getSize()));
+        }
+
+        String key = cacheKey(bucket, objectName, offset, length, stat.getSize());
+        String contentKey = DiskSegmentCache.contentKey(stat.getEtag(), offset, length);
+
+        CompletableFuture<Void> load = new CompletableFuture<>();
+        CompletableFuture<Void> leader = inFlightLoads.putIfAbsent(key, load);
+        if (leader != null) {
+            return Media.of(awaitLoad(leader, key, bucket, objectName, offset, length, stat.getSize()));
+        }
+
+        try {
+            InputStream stored = loadIntoCache(key, contentKey, bucket, objectName, offset, length, stat.getSize());
+            return Media.of(stored != null ? stored : openOrigin(bucket, objectName, offset, length, stat.getSize()));
+        } finally {
+            inFlightLoads.remove(key, load);
+            load.complete(null);
+        }
+    }
+
+    /**
+     * Opens the range from the memory or disk tier, or returns null on a miss
+     * without going to MinIO. Never blocks on the network.
+     */
+    public Media openCached(String bucket, String objectName, long offset, long length,
+            ObjectStatCache.ObjectStat stat) {
+        if (!transcodedBucket.equals(bucket)) {
+            return null;
+        }
+
+        InputStream cached = segmentCache.get(cacheKey(bucket, objectName, offset, length, stat.getSize()));
+        if (cached != null) {
+            return Media.of(cached);
+        }
+
+        Path file = diskCache.get(DiskSegmentCache.contentKey(stat.getEtag(), offset, length));
+        return file != null ? Media.of(file, length) : null;
+    }
+
+    /**
+     * Whether a miss on this range is loaded into the cache tiers, rather than
+     * streamed straight from MinIO.
+     */
+    public boolean isCacheable(String bucket, long length) {
+        return transcodedBucket.equals(bucket) && segmentCache.accepts(length);
+    }
+
+    /**
+     * Loads a range into the cache tiers ahead of demand without serving it.
+     * Returns false if it is not cacheable or was not admitted.
+     */
+    public boolean preload(String bucket, String objectName, long offset, long length,
+            ObjectStatCache.ObjectStat stat) throws Exception {
+        if (!isCacheable(bucket, length)) {
+            return false;
+        }
+
+        String key = cacheKey(bucket, objectName, offset, length, stat.getSize());
+        String contentKey = DiskSegmentCache.contentKey(stat.getEtag(), offset, length);
+        CompletableFuture<Void> load = new CompletableFuture<>();
+        if (segmentCache.contains(key) || diskCache.contains(contentKey)
+                || inFlightLoads.putIfAbsent(key, load) != null) {
+            return true;
+        }
+
+        try (InputStream stored = loadIntoCache(key, contentKey, bucket, objectName, offset, length,
+                stat.getSize())) {
+            return stored != null;
+        } finally {
+            inFlightLoads.remove(key, load);
+            load.complete(null);
+        }
+    }
+
+    private InputStream loadIntoCache(String key, String contentKey, String bucket, String objectName,
+            long offset, long length, long totalSize) throws Exception {
+        InputStream stored = segmentCache.put(key, length,
+                () -> openOrigin(bucket, objectName, offset, length, totalSize));
+        if (stored != null && diskCache.isEnabled()) {
+            diskWriteExecutor.execute(() -> writeThrough(key, contentKey, length));
+        }
+        return stored;
+    }
+
+    private void writeThrough(String key, String contentKey, long length) {
+        try (InputStream cached = segmentCache.peek(key)) {
+            if (cached != null) {
+                diskCache.store(contentKey, cached, length);
+            }
+        } catch (Exception e) {
+            System.err.println("[MediaDeliveryService] Disk cache write failed for " + key + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Waits for another request's load of the same key, then reads the cached copy.
+     * Falls back to the origin if that load failed, was not admitted, or is too slow.
+     */
+    private InputStream awaitLoad(CompletableFuture<Void> leader, String key, String bucket, String objectName,
+            long offset, long length, long totalSize) throws Exception {
+        coalescedCounter.increment();
+        try {
+            leader.get(coalesceTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return openOrigin(bucket, objectName, offset, length, totalSize);
+        }
+
+        InputStream cached = segmentCache.get(key);
+        return cached != null ? cached : openOrigin(bucket, objectName, offset, length, totalSize);
+    }
+
+    /**
+     * Drops in-memory cached media of a video (its renditions and HLS objects
+     * share the id prefix). Disk entries are content-addressed and age out.
+     */
+    public void evict(String videoId) {
+        segmentCache.invalidate(transcodedBucket + "/" + videoId);
+    }
+
+    private InputStream openOrigin(String bucket, String objectName, long offset, long length, long totalSize)
+            throws Exception {
+        if (offset == 0 && length == totalSize) {
+            return minioService.downloadFile(bucket, objectName);
+        }
+        return minioService.downloadFileRange(bucket, objectName, offset, length);
+    }
+
+    public static String cacheKey(String bucket, String objectName, long offset, long length, long totalSize) {
+        String key = bucket + "/" + objectName;
+        return offset == 0 && length == totalSize ? key : key + "@" + offset + "+" + length;
+    }
+
+    /**
+     * Bytes to send: a stream, or a whole local file that can be sent without
+     * copying through user space.
+     */
+    public static class Media {
+        private final InputStream stream;
+        private final Path file;
+        private final long length;
+
+        private Media(InputStream stream, Path file, long length) {
+            this.stream = stream;
+            this.file = file;
+            this.length = length;
+        }
+
+        static Media of(InputStream stream) {
+            return new Media(stream, null, -1);
+        }
+
+        static Media of(Path file, long length) {
+            return new Media(null, file, length);
+        }
+
+        public InputStream getStream() {
+            return stream;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public long getLength() {
+            return length;
+        }
+    }
+}
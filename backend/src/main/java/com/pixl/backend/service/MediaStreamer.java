@@ -0,0 +1,116 @@
+package com.pixl.backend.service;
+
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Copies object storage streams to HTTP responses through a pool of fixed-size
+ * buffers, so serving a segment allocates nothing proportional to its size.
+ * The pool only bounds how many buffers are retained: when it is empty a
+ * request allocates its own buffer instead of waiting.
+ *
+ * Media cached on local disk skips the copy entirely: Tomcat's sendfile hands
+ * the file to the kernel once the request completes, and where sendfile is not
+ * available the file is transferred channel to channel.
+ */
+@Component
+public class MediaStreamer {
+
+    private final BlockingQueue<byte[]> buffers;
+    private final int bufferSize;
+    private final Counter bytesStreamed;
+    private final Counter bufferAllocations;
+    private final Counter sendfileCounter;
+
+    public MediaStreamer(MeterRegistry meterRegistry,
+            @Value("${app.delivery.buffer-size}") int bufferSize,
+            @Value("${app.delivery.buffer-pool-size}") int poolSize) {
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(poolSize);
+        this.bytesStreamed = meterRegistry.counter("delivery.bytes.streamed");
+        this.bufferAllocations = meterRegistry.counter("delivery.buffer.allocations");
+        this.sendfileCounter = meterRegistry.counter("delivery.sendfile.responses");
+    }
+
+    /**
+     * Response body for media from {@link MediaDeliveryService#open}. Returns
+     * null when the file is handed to Tomcat's sendfile, in which case the
+     * response must be completed without a body.
+     */
+    public StreamingResponseBody send(HttpServletRequest request, MediaDeliveryService.Media media) {
+        if (media.getFile() == null) {
+            return stream(media.getStream());
+        }
+        if (Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"))) {
+            request.setAttribute("org.apache.tomcat.sendfile.filename", media.getFile().toAbsolutePath().toString());
+            request.setAttribute("org.apache.tomcat.sendfile.start", 0L);
+            request.setAttribute("org.apache.tomcat.sendfile.end", media.getLength());
+            sendfileCounter.increment();
+            bytesStreamed.increment(media.getLength());
+            return null;
+        }
+        return stream(media.getFile());
+    }
+
+    /**
+     * Response body that transfers a whole file, letting the JDK use the
+     * cheapest copy the platform offers.
+     */
+    public StreamingResponseBody stream(Path file) {
+        return output -> {
+            try (FileChannel channel = FileChannel.open(file)) {
+                WritableByteChannel target = Channels.newChannel(output);
+                long position = 0;
+                long size = channel.size();
+                while (position < size) {
+                    position += channel.transferTo(position, size - position, target);
+                }
+                bytesStreamed.increment(size);
+                output.flush();
+            }
+        };
+    }
+
+    /**
+     * Response body that drains source into the response and closes it. The
+     * stream is opened by the caller, so a missing object still maps to an error
+     * status before the response is committed.
+     */
+    public StreamingResponseBody stream(InputStream source) {
+        return output -> {
+            byte[] buffer = acquire();
+            try (InputStream in = source) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    output.write(buffer, 0, read);
+                    bytesStreamed.increment(read);
+                }
+                output.flush();
+            } finally {
+                buffers.offer(buffer);
+            }
+        };
+    }
+
+    private byte[] acquire() {
+        byte[] buffer = buffers.poll();
+        if (buffer == null) {
+            bufferAllocations.increment();
+            buffer = new byte[bufferSize];
+        }
+        return buffer;
+    }
+}
@@ -4,15 +4,22 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import io.minio.BucketExistsArgs;
+import io.minio.CopyObjectArgs;
+import io.minio.CopySource;
 import io.minio.GetObjectArgs;
+import io.minio.GetObjectResponse;
 import io.minio.GetPresignedObjectUrlArgs;
 import io.minio.ListObjectsArgs;
 import io.minio.MakeBucketArgs;
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
 import io.minio.PutObjectArgs;
 import io.minio.RemoveObjectArgs;
@@ -31,14 +38,19 @@ import io.opentelemetry.context.Scope;
 @Service
 public class MinioService {
     private final MinioClient minioClient;
+    private final MinioClient presignClient;
+    private final MinioAsyncClient minioAsyncClient;
 
     private final Tracer tracer;
     private final Counter minioUploadCounter;
     private final Counter minioDownloadCounter;
     private final Counter minioDeleteCounter;
 
-    public MinioService(MinioClient minioClient, Tracer tracer, MeterRegistry meterRegistry) {
+    public MinioService(MinioClient minioClient, @Qualifier("presignClient") MinioClient presignClient,
+            MinioAsyncClient minioAsyncClient, Tracer tracer, MeterRegistry meterRegistry) {
         this.minioClient = minioClient;
+        this.presignClient = presignClient;
+        this.minioAsyncClient = minioAsyncClient;
         this.tracer = tracer;
         this.minioUploadCounter = meterRegistry.counter("minio.upload.total");
         this.minioDownloadCounter = meterRegistry.counter("minio.download.total");
@@ -139,6 +151,37 @@ public class MinioService {
         }
     }
 
+    /* Download length bytes starting at offset */
+    public InputStream downloadFileRange(String bucketName, String objectName, long offset, long length) throws Exception {
+        Span span = tracer.spanBuilder("minio-download-range").startSpan();
+
+        try (Scope scope = span.makeCurrent()) {
+            span.setAttribute("bucket", bucketName);
+            span.setAttribute("object", objectName);
+            span.setAttribute("range.offset", offset);
+            span.setAttribute("range.length", length);
+
+            InputStream stream = minioClient.getObject(
+                    GetObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(objectName)
+                            .offset(offset)
+                            .length(length)
+                            .build());
+
+            minioDownloadCounter.increment();
+            span.addEvent("File range downloaded from MinIO");
+
+            return stream;
+        } catch (Exception e) {
+            span.recordException(e);
+            span.setStatus(StatusCode.ERROR, e.getMessage());
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
     /* Dowload ByteArray */
     public byte[] downloadFileAsBytes(String bucketName, String objectName) throws Exception {
         try (InputStream stream = downloadFile(bucketName, objectName)) {
@@ -146,6 +189,37 @@ public class MinioService {
         }
     }
 
+    /* Server-side copy within a bucket; nothing passes through this process */
+    public void copyFile(String bucketName, String sourceObjectName, String targetObjectName) throws Exception {
+        Span span = tracer.spanBuilder("minio-copy").startSpan();
+
+        try (Scope scope = span.makeCurrent()) {
+            span.setAttribute("bucket", bucketName);
+            span.setAttribute("source", sourceObjectName);
+            span.setAttribute("object", targetObjectName);
+
+            minioClient.copyObject(
+                    CopyObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(targetObjectName)
+                            .source(CopySource.builder()
+                                    .bucket(bucketName)
+                                    .object(sourceObjectName)
+                                    .build())
+                            .build());
+
+            minioUploadCounter.increment();
+            span.addEvent("File copied in MinIO");
+
+        } catch (Exception e) {
+            span.recordException(e);
+            span.setStatus(StatusCode.ERROR, e.getMessage());
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
     public void deleteFile(String bucketName, String objectName) throws Exception {
         Span span = tracer.spanBuilder("minio-delete").startSpan();
 
@@ -194,6 +268,61 @@ public class MinioService {
         }
     }
 
+    /**
+     * Range GET that does not block the caller: the future completes, on the HTTP
+     * client's thread, once the response headers have arrived. Reading the
+     * returned stream may still block on the network.
+     */
+    public CompletableFuture<GetObjectResponse> downloadFileRangeAsync(String bucketName, String objectName, long offset,
+            long length) throws Exception {
+        Span span = tracer.spanBuilder("minio-download-range-async").startSpan();
+        span.setAttribute("bucket", bucketName);
+        span.setAttribute("object", objectName);
+        span.setAttribute("range.offset", offset);
+        span.setAttribute("range.length", length);
+
+        try {
+            return minioAsyncClient.getObject(
+                    GetObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(objectName)
+                            .offset(offset)
+                            .length(length)
+                            .build())
+                    .whenComplete((stream, e) -> {
+                        if (e != null) {
+                            span.recordException(e);
+                            span.setStatus(StatusCode.ERROR, e.getMessage());
+                        } else {
+                            minioDownloadCounter.increment();
+                        }
+                        span.end();
+                    });
+        } catch (Exception e) {
+            span.recordException(e);
+            span.setStatus(StatusCode.ERROR, e.getMessage());
+            span.end();
+            throw e;
+        }
+    }
+
+    public CompletableFuture<StatObjectResponse> statFileAsync(String bucketName, String objectName) throws Exception {
+        return minioAsyncClient.statObject(
+                StatObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(objectName)
+                        .build());
+    }
+
+    /* Object metadata (size, ETag, last modified); throws if the object is missing */
+    public StatObjectResponse statFile(String bucketName, String objectName) throws Exception {
+        return minioClient.statObject(
+                StatObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(objectName)
+                        .build());
+    }
+
     public long getFileSize(String bucketName, String objectName) {
         try {
             StatObjectResponse stat = minioClient.statObject(
@@ -235,6 +364,23 @@ public class MinioService {
                         .build());
     }
 
+    /**
+     * Presigned GET for clients, signed for the public endpoint.
+     *
+     * @param responseParams S3 response overrides such as response-content-disposition
+     */
+    public String getPresignedUrl(String bucketName, String objectName, int expirySeconds,
+            Map<String, String> responseParams) throws Exception {
+        return presignClient.getPresignedObjectUrl(
+                GetPresignedObjectUrlArgs.builder()
+                        .bucket(bucketName)
+                        .object(objectName)
+                        .method(io.minio.http.Method.GET)
+                        .expiry(expirySeconds)
+                        .extraQueryParams(responseParams)
+                        .build());
+    }
+
     public void uploadOriginalVideo(String objectName, InputStream inputStream, long size) throws Exception {
         uploadFile(videosOriginalBucket, objectName, inputStream, size, "video/mp4");
     }
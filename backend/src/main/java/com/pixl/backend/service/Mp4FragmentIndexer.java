@@ -0,0 +1,447 @@
+package com.pixl.backend.service;
+
+import org.springframework.stereotype.Component;
+
+import com.pixl.backend.dto.Mp4Index;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds an {@link Mp4Index} from a fragmented MP4 in one sequential pass. Only
+ * box headers, moov and moof are read; mdat payloads are skipped, so indexing a
+ * rendition streamed from object storage costs one GET and almost no memory.
+ *
+ * Fragments are timed by the video track's tfdt and trun sample durations and
+ * grouped into segments on the {@link SegmentPolicy} boundaries. Each fragment
+ * starts on a keyframe, so its moof through its first video sample is the
+ * byte range an I-frame playlist needs.
+ */
+@Component
+public class Mp4FragmentIndexer {
+
+    // Largest moov/moof we are willing to buffer; fragmented files keep both small
+    private static final int MAX_METADATA_BOX = 32 * 1024 * 1024;
+
+    private final SegmentPolicy segmentPolicy;
+
+    public Mp4FragmentIndexer(SegmentPolicy segmentPolicy) {
+        this.segmentPolicy = segmentPolicy;
+    }
+
+    public Mp4Index index(InputStream input) throws IOException {
+        Parsed parsed = parse(input);
+        return toIndex(parsed, groupIntoSegments(parsed.fragments, parsed.timescale));
+    }
+
+    /**
+     * Like {@link #index} but with one entry per fragment, for media that was
+     * already cut into segments by someone else (ffmpeg's HLS muxer).
+     */
+    public Mp4Index indexFragments(InputStream input) throws IOException {
+        Parsed parsed = parse(input);
+        List<Mp4Index.Segment> segments = new ArrayList<>();
+        for (Fragment fragment : parsed.fragments) {
+            segments.add(segmentOf(fragment, parsed.timescale));
+        }
+        return toIndex(parsed, segments);
+    }
+
+    private Mp4Index toIndex(Parsed parsed, List<Mp4Index.Segment> segments) {
+        Mp4Index index = new Mp4Index();
+        index.setInitLength(parsed.initLength);
+        index.setFileSize(parsed.fileSize);
+        index.setSegments(segments);
+        return index;
+    }
+
+    private Parsed parse(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        Track video = null;
+        Map<Integer, long[]> trexDefaults = new HashMap<>();
+        List<Fragment> fragments = new ArrayList<>();
+        long initLength = -1;
+        long position = 0;
+        Fragment pending = null;
+
+        while (true) {
+            long boxStart = position;
+            long size;
+            String type;
+            try {
+                size = Integer.toUnsignedLong(in.readInt());
+            } catch (EOFException e) {
+                break;
+            }
+            type = readType(in);
+            int headerLength = 8;
+            if (size == 1) {
+                size = in.readLong();
+                headerLength = 16;
+            }
+            boolean toEnd = size == 0;
+            long payloadLength = toEnd ? -1 : size - headerLength;
+            position += headerLength;
+
+            switch (type) {
+                case "moov" -> {
+                    byte[] moov = readPayload(in, payloadLength, type);
+                    video = parseMoov(ByteBuffer.wrap(moov), trexDefaults);
+                    if (video == null) {
+                        throw new IOException("No video track in moov");
+                    }
+                    if (!trexDefaults.containsKey(-1)) {
+                        throw new IOException("MP4 is not fragmented (no mvex in moov)");
+                    }
+                    position += payloadLength;
+                    initLength = position;
+                }
+                case "moof" -> {
+                    if (video == null) {
+                        throw new IOException("moof before moov");
+                    }
+                    byte[] moof = readPayload(in, payloadLength, type);
+                    pending = parseMoof(ByteBuffer.wrap(moof), video, trexDefaults, boxStart);
+                    pending.offset = boxStart;
+                    position += payloadLength;
+                }
+                default -> {
+                    if ("mdat".equals(type) && pending == null) {
+                        // Fail before skipping it: a progressive MP4 would otherwise be read to the end
+                        throw new IOException("MP4 is not fragmented (mdat without moof)");
+                    }
+                    if (toEnd) {
+                        long skipped = skipToEnd(in);
+                        position += skipped;
+                    } else {
+                        in.skipNBytes(payloadLength);
+                        position += payloadLength;
+                    }
+                    if ("mdat".equals(type)) {
+                        pending.end = position;
+                        fragments.add(pending);
+                        pending = null;
+                    }
+                }
+            }
+            if (toEnd) {
+                break;
+            }
+        }
+
+        if (initLength < 0 || fragments.isEmpty()) {
+            throw new IOException("No init section or fragments found");
+        }
+
+        Parsed parsed = new Parsed();
+        parsed.initLength = initLength;
+        parsed.fileSize = position;
+        parsed.fragments = fragments;
+        parsed.timescale = video.timescale;
+        return parsed;
+    }
+
+    private static Mp4Index.Segment segmentOf(Fragment fragment, long timescale) {
+        Mp4Index.Segment segment = new Mp4Index.Segment(fragment.offset, fragment.end - fragment.offset,
+                (double) fragment.baseDecodeTime / timescale, (double) fragment.duration / timescale);
+        segment.setKeyframeLength(fragment.keyframeLength());
+        return segment;
+    }
+
+    private List<Mp4Index.Segment> groupIntoSegments(List<Fragment> fragments, long timescale) {
+        List<Mp4Index.Segment> segments = new ArrayList<>();
+        Mp4Index.Segment current = null;
+        int currentIndex = -1;
+
+        for (Fragment fragment : fragments) {
+            double start = (double) fragment.baseDecodeTime / timescale;
+            double duration = (double) fragment.duration / timescale;
+            int segmentIndex = segmentPolicy.segmentIndexAt(start);
+
+            // Fragments are contiguous in the file, so a segment is one byte range
+            if (current == null || segmentIndex != currentIndex) {
+                current = new Mp4Index.Segment(fragment.offset, 0, start, 0);
+                current.setKeyframeLength(fragment.keyframeLength());
+                segments.add(current);
+                currentIndex = segmentIndex;
+            }
+            current.setLength(fragment.end - current.getOffset());
+            current.setDurationSeconds(current.getDurationSeconds() + duration);
+        }
+        return segments;
+    }
+
+    /**
+     * Returns the video track, and fills trexDefaults with per-track default
+     * sample {duration, size}. Key -1 marks that mvex was present.
+     */
+    private Track parseMoov(ByteBuffer moov, Map<Integer, long[]> trexDefaults) {
+        Track video = null;
+        for (Box box : children(moov)) {
+            if ("trak".equals(box.type)) {
+                Track track = parseTrak(box.payload);
+                if (track != null && track.video && video == null) {
+                    video = track;
+                }
+            } else if ("mvex".equals(box.type)) {
+                trexDefaults.put(-1, new long[2]);
+                for (Box trex : children(box.payload)) {
+                    if ("trex".equals(trex.type)) {
+                        ByteBuffer b = trex.payload;
+                        b.getInt(); // version + flags
+                        int trackId = b.getInt();
+                        b.getInt(); // default_sample_description_index
+                        long duration = Integer.toUnsignedLong(b.getInt());
+                        long size = Integer.toUnsignedLong(b.getInt());
+                        trexDefaults.put(trackId, new long[] { duration, size });
+                    }
+                }
+            }
+        }
+        return video;
+    }
+
+    private Track parseTrak(ByteBuffer trak) {
+        Track track = new Track();
+        for (Box box : children(trak)) {
+            if ("tkhd".equals(box.type)) {
+                ByteBuffer b = box.payload;
+                int version = b.get();
+                b.position(b.position() + 3 + (version == 1 ? 16 : 8));
+                track.id = b.getInt();
+            } else if ("mdia".equals(box.type)) {
+                for (Box mdia : children(box.payload)) {
+                    ByteBuffer b = mdia.payload;
+                    if ("mdhd".equals(mdia.type)) {
+                        int version = b.get();
+                        b.position(b.position() + 3 + (version == 1 ? 16 : 8));
+                        track.timescale = Integer.toUnsignedLong(b.getInt());
+                    } else if ("hdlr".equals(mdia.type)) {
+                        b.position(b.position() + 8); // version/flags, pre_defined
+                        track.video = "vide".equals(readType(b));
+                    }
+                }
+            }
+        }
+        return track.timescale > 0 ? track : null;
+    }
+
+    /**
+     * @param moofStart file offset of the moof, which sample data offsets are
+     *                  relative to unless tfhd gives an explicit base
+     */
+    private Fragment parseMoof(ByteBuffer moof, Track video, Map<Integer, long[]> trexDefaults, long moofStart)
+            throws IOException {
+        for (Box traf : children(moof)) {
+            if (!"traf".equals(traf.type)) {
+                continue;
+            }
+
+            int trackId = -1;
+            long defaultDuration = 0;
+            long defaultSize = 0;
+            long baseOffset = moofStart;
+            Long baseDecodeTime = null;
+            long duration = 0;
+            long keyframeEnd = -1;
+            long moofRelativeEnd = -1;
+
+            for (Box box : children(traf.payload)) {
+                ByteBuffer b = box.payload;
+                switch (box.type) {
+                    case "tfhd" -> {
+                        int flags = b.getInt() & 0xFFFFFF;
+                        trackId = b.getInt();
+                        long[] defaults = trexDefaults.getOrDefault(trackId, new long[2]);
+                        defaultDuration = defaults[0];
+                        defaultSize = defaults[1];
+                        if ((flags & 0x1) != 0) baseOffset = b.getLong();  // base_data_offset
+                        if ((flags & 0x2) != 0) b.getInt();   // sample_description_index
+                        if ((flags & 0x8) != 0) defaultDuration = Integer.toUnsignedLong(b.getInt());
+                        if ((flags & 0x10) != 0) defaultSize = Integer.toUnsignedLong(b.getInt());
+                    }
+                    case "tfdt" -> {
+                        int version = b.get();
+                        b.position(b.position() + 3);
+                        baseDecodeTime = version == 1 ? b.getLong() : Integer.toUnsignedLong(b.getInt());
+                    }
+                    case "trun" -> {
+                        Trun trun = parseTrun(b, defaultDuration, defaultSize);
+                        duration += trun.duration;
+                        // The first run starts with the fragment's keyframe
+                        if (keyframeEnd < 0 && trun.dataOffset >= 0 && trun.firstSampleSize > 0) {
+                            keyframeEnd = baseOffset + trun.dataOffset + trun.firstSampleSize;
+                            moofRelativeEnd = moofStart + trun.dataOffset + trun.firstSampleSize;
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+
+            if (trackId == video.id) {
+                if (baseDecodeTime == null) {
+                    throw new IOException("Video traf without tfdt");
+                }
+                Fragment fragment = new Fragment();
+                fragment.baseDecodeTime = baseDecodeTime;
+                fragment.duration = duration;
+                fragment.keyframeEnd = keyframeEnd;
+                fragment.moofRelativeEnd = moofRelativeEnd;
+                return fragment;
+            }
+        }
+        throw new IOException("moof without a video track fragment");
+    }
+
+    /**
+     * Total sample duration of a trun, its data offset (-1 if absent) and the
+     * size of its first sample.
+     */
+    private Trun parseTrun(ByteBuffer b, long defaultDuration, long defaultSize) {
+        Trun trun = new Trun();
+        int flags = b.getInt() & 0xFFFFFF;
+        long sampleCount = Integer.toUnsignedLong(b.getInt());
+        trun.dataOffset = (flags & 0x1) != 0 ? b.getInt() : -1;
+        if ((flags & 0x4) != 0) b.getInt();   // first_sample_flags
+
+        boolean hasDuration = (flags & 0x100) != 0;
+        boolean hasSize = (flags & 0x200) != 0;
+        int fieldsAfterSize = Integer.bitCount(flags & 0xC00);   // flags, composition offset
+        trun.firstSampleSize = defaultSize;
+        if (!hasDuration && !hasSize) {
+            trun.duration = sampleCount * defaultDuration;
+            return trun;
+        }
+
+        for (long i = 0; i < sampleCount; i++) {
+            trun.duration += hasDuration ? Integer.toUnsignedLong(b.getInt()) : defaultDuration;
+            if (hasSize) {
+                long size = Integer.toUnsignedLong(b.getInt());
+                if (i == 0) {
+                    trun.firstSampleSize = size;
+                }
+            }
+            b.position(b.position() + 4 * fieldsAfterSize);
+        }
+        return trun;
+    }
+
+    private static List<Box> children(ByteBuffer parent) {
+        List<Box> boxes = new ArrayList<>();
+        ByteBuffer b = parent.slice();
+        while (b.remaining() >= 8) {
+            int start = b.position();
+            long size = Integer.toUnsignedLong(b.getInt());
+            String type = readType(b);
+            int header = 8;
+            if (size == 1) {
+                size = b.getLong();
+                header = 16;
+            } else if (size == 0) {
+                size = b.limit() - start;
+            }
+            if (size < header || start + size > b.limit()) {
+                break;
+            }
+            ByteBuffer payload = b.duplicate();
+            payload.position(start + header).limit((int) (start + size));
+            boxes.add(new Box(type, payload.slice()));
+            b.position((int) (start + size));
+        }
+        return boxes;
+    }
+
+    private static String readType(ByteBuffer b) {
+        byte[] type = new byte[4];
+        b.get(type);
+        return new String(type, StandardCharsets.ISO_8859_1);
+    }
+
+    private static String readType(DataInputStream in) throws IOException {
+        byte[] type = new byte[4];
+        in.readFully(type);
+        return new String(type, StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] readPayload(DataInputStream in, long length, String type) throws IOException {
+        if (length < 0 || length > MAX_METADATA_BOX) {
+            throw new IOException("Unsupported " + type + " box size: " + length);
+        }
+        byte[] payload = new byte[(int) length];
+        in.readFully(payload);
+        return payload;
+    }
+
+    private static long skipToEnd(InputStream in) throws IOException {
+        long skipped = 0;
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    private static class Box {
+        final String type;
+        final ByteBuffer payload;
+
+        Box(String type, ByteBuffer payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+    }
+
+    private static class Track {
+        int id;
+        long timescale;
+        boolean video;
+    }
+
+    private static class Trun {
+        long duration;
+        long dataOffset;
+        long firstSampleSize;
+    }
+
+    private static class Fragment {
+        long offset;
+        long end;
+        long baseDecodeTime;
+        long duration;
+        long keyframeEnd;       // -1 if the trun did not say where the first sample is
+        long moofRelativeEnd;   // the same, ignoring a tfhd base offset
+
+        /**
+         * Bytes from the moof through the keyframe; the whole fragment if the
+         * sample position is unknown or does not fall inside it. A tfhd base
+         * offset is relative to the file the muxer wrote, which is not this
+         * stream when segments are read back to back.
+         */
+        long keyframeLength() {
+            if (keyframeEnd > offset && keyframeEnd <= end) {
+                return keyframeEnd - offset;
+            }
+            if (moofRelativeEnd > offset && moofRelativeEnd <= end) {
+                return moofRelativeEnd - offset;
+            }
+            return end - offset;
+        }
+    }
+
+    private static class Parsed {
+        long initLength;
+        long fileSize;
+        List<Fragment> fragments;
+        long timescale;
+    }
+}
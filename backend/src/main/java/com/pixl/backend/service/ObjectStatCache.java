@@ -0,0 +1,118 @@
+package com.pixl.backend.service;
+
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.minio.StatObjectResponse;
+
+/**
+ * Remembers size, ETag and last-modified time of recently served objects, so
+ * conditional requests (If-None-Match / If-Modified-Since) from players and
+ * browsers revalidating their caches are answered without a MinIO round trip.
+ * Served media is written once, so a short TTL is enough to bound staleness
+ * for the few objects that are ever rewritten (thumbnails, re-transcodes).
+ */
+@Component
+public class ObjectStatCache {
+
+    private final MinioService minioService;
+    private final Map<String, ObjectStat> stats;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    @Value("${app.delivery.stat-cache-ttl-seconds}")
+    private long ttlSeconds;
+
+    public ObjectStatCache(MinioService minioService, MeterRegistry meterRegistry,
+            @Value("${app.delivery.stat-cache-size}") int maxEntries) {
+        this.minioService = minioService;
+        this.hitCounter = meterRegistry.counter("delivery.stat.cache", "result", "hit");
+        this.missCounter = meterRegistry.counter("delivery.stat.cache", "result", "miss");
+        this.stats = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ObjectStat> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    public ObjectStat get(String bucket, String objectName) throws Exception {
+        ObjectStat cached = fresh(bucket + "/" + objectName);
+        if (cached != null) {
+            return cached;
+        }
+
+        StatObjectResponse response = minioService.statFile(bucket, objectName);
+        return store(bucket + "/" + objectName, response);
+    }
+
+    /**
+     * Non-blocking variant for the reactive delivery path.
+     */
+    public CompletableFuture<ObjectStat> getAsync(String bucket, String objectName) throws Exception {
+        String key = bucket + "/" + objectName;
+        ObjectStat cached = fresh(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return minioService.statFileAsync(bucket, objectName).thenApply(response -> store(key, response));
+    }
+
+    private ObjectStat fresh(String key) {
+        ObjectStat cached = stats.get(key);
+        if (cached != null && System.nanoTime() - cached.loadedAtNanos < ttlSeconds * 1_000_000_000L) {
+            hitCounter.increment();
+            return cached;
+        }
+        missCounter.increment();
+        return null;
+    }
+
+    private ObjectStat store(String key, StatObjectResponse response) {
+        ObjectStat stat = new ObjectStat(response.size(), response.etag(), response.lastModified());
+        stats.put(key, stat);
+        return stat;
+    }
+
+    /**
+     * Drops every cached entry whose object name starts with the prefix, in any bucket.
+     */
+    public void invalidate(String objectPrefix) {
+        synchronized (stats) {
+            stats.keySet().removeIf(key -> key.substring(key.indexOf('/') + 1).startsWith(objectPrefix));
+        }
+    }
+
+    public static class ObjectStat {
+        private final long size;
+        private final String etag;
+        private final ZonedDateTime lastModified;
+        private final long loadedAtNanos = System.nanoTime();
+
+        public ObjectStat(long size, String etag, ZonedDateTime lastModified) {
+            this.size = size;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public ZonedDateTime getLastModified() {
+            return lastModified;
+        }
+    }
+}
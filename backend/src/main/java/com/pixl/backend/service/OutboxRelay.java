@@ -0,0 +1,181 @@
+package com.pixl.backend.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pixl.backend.dto.TranscodeMessage;
+import com.pixl.backend.model.OutboxMessage;
+import com.pixl.backend.repository.OutboxMessageRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+
+/**
+ * Publishes rows from the transactional outbox to RabbitMQ. Each batch is sent on
+ * one channel and confirmed with a single waitForConfirmsOrDie, then marked sent.
+ * Delivery is at-least-once: a crash between confirm and markSent republishes the
+ * batch, which the worker's idempotency guard absorbs.
+ *
+ * Rows whose payload cannot be read are marked dead before the batch is sent and
+ * are no longer fetched, so one corrupt row cannot hold up the rows behind it;
+ * only broker failures leave a batch to be retried.
+ */
+@Service
+public class OutboxRelay {
+
+    // Length of the last_error column
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final RabbitTemplate rabbitTemplate;
+    private final Tracer tracer;
+    private final ObjectMapper objectMapper;
+    private final Counter publishedCounter;
+    private final Counter failedCounter;
+    private final Counter deadCounter;
+
+    @Value("${app.outbox.batch-size}")
+    private int batchSize;
+
+    @Value("${app.outbox.confirm-timeout-ms}")
+    private long confirmTimeoutMs;
+
+    @Value("${app.outbox.retention-hours}")
+    private long retentionHours;
+
+    public OutboxRelay(OutboxMessageRepository outboxMessageRepository, RabbitTemplate rabbitTemplate,
+            Tracer tracer, MeterRegistry meterRegistry) {
+        this.outboxMessageRepository = outboxMessageRepository;
+        this.rabbitTemplate = rabbitTemplate;
+        this.tracer = tracer;
+        this.objectMapper = new ObjectMapper();
+        this.publishedCounter = meterRegistry.counter("outbox.published");
+        this.failedCounter = meterRegistry.counter("outbox.publish.failed");
+        this.deadCounter = meterRegistry.counter("outbox.dead");
+        meterRegistry.gauge("outbox.pending", outboxMessageRepository,
+                OutboxMessageRepository::countBySentAtIsNullAndDeadAtIsNull);
+    }
+
+    public String serialize(TranscodeMessage message) {
+        try {
+            return objectMapper.writeValueAsString(message);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to serialize outbox payload", e);
+        }
+    }
+
+    /**
+     * Safety net for rows whose post-commit relay did not run (crash, broker down).
+     */
+    @Scheduled(fixedDelayString = "${app.outbox.relay-interval-ms}")
+    public void scheduledRelay() {
+        relay();
+    }
+
+    @Scheduled(fixedDelay = 3600000)
+    public void purgeSent() {
+        int deleted = outboxMessageRepository.deleteSentBefore(LocalDateTime.now().minusHours(retentionHours));
+        if (deleted > 0) {
+            System.out.println("[OutboxRelay] Purged " + deleted + " sent outbox rows");
+        }
+    }
+
+    /**
+     * Drains unsent rows batch by batch until the outbox is empty or a batch fails
+     * to publish.
+     */
+    public synchronized void relay() {
+        List<OutboxMessage> rows;
+        while (!(rows = outboxMessageRepository.findBySentAtIsNullAndDeadAtIsNullOrderByCreatedAtAsc(
+                PageRequest.of(0, batchSize))).isEmpty()) {
+            if (!publishBatch(rows)) {
+                return;
+            }
+        }
+    }
+
+    private boolean publishBatch(List<OutboxMessage> rows) {
+        // Parsed up front: a corrupt row is set aside instead of failing the whole batch
+        List<OutboxMessage> batch = new ArrayList<>(rows.size());
+        List<TranscodeMessage> messages = new ArrayList<>(rows.size());
+        for (OutboxMessage row : rows) {
+            try {
+                messages.add(deserialize(row));
+                batch.add(row);
+            } catch (Exception e) {
+                outboxMessageRepository.markDead(row.getId(), errorText(e), LocalDateTime.now());
+                deadCounter.increment();
+                System.err.println("[OutboxRelay] Marked outbox row " + row.getId() + " dead: " + e.getMessage());
+            }
+        }
+        if (batch.isEmpty()) {
+            return true;
+        }
+
+        Span span = tracer.spanBuilder("outbox-relay-batch").startSpan();
+        List<String> ids = batch.stream().map(OutboxMessage::getId).toList();
+
+        try (Scope scope = span.makeCurrent()) {
+            span.setAttribute("batch.size", batch.size());
+
+            rabbitTemplate.invoke(operations -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    operations.convertAndSend(batch.get(i).getRoutingKey(), messages.get(i));
+                }
+                operations.waitForConfirmsOrDie(confirmTimeoutMs);
+                return null;
+            });
+
+            outboxMessageRepository.markSent(ids, LocalDateTime.now());
+            publishedCounter.increment(batch.size());
+            span.addEvent("Batch confirmed by broker");
+
+            System.out.println("[OutboxRelay] Published " + batch.size() + " outbox messages");
+            return true;
+        } catch (Exception e) {
+            span.recordException(e);
+            span.setStatus(StatusCode.ERROR, e.getMessage());
+            failedCounter.increment(batch.size());
+            outboxMessageRepository.markFailed(ids, errorText(e));
+
+            System.err.println("[OutboxRelay] Failed to publish outbox batch: " + e.getMessage());
+            return false;
+        } finally {
+            span.end();
+        }
+    }
+
+    private TranscodeMessage deserialize(OutboxMessage row) {
+        TranscodeMessage message;
+        try {
+            message = objectMapper.readValue(row.getPayload(), TranscodeMessage.class);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Corrupt outbox payload: " + e.getMessage(), e);
+        }
+        if (row.getRoutingKey() == null || row.getRoutingKey().isBlank()) {
+            throw new IllegalArgumentException("Outbox row has no routing key");
+        }
+        if (message == null || message.getJobId() == null || message.getVideoId() == null
+                || message.getQuality() == null) {
+            throw new IllegalArgumentException("Outbox payload is missing jobId, videoId or quality");
+        }
+        return message;
+    }
+
+    private static String errorText(Exception e) {
+        String error = String.valueOf(e.getMessage());
+        return error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+}
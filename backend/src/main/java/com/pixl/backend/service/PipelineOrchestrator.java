@@ -0,0 +1,438 @@
+package com.pixl.backend.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.pixl.backend.model.PipelineStage;
+import com.pixl.backend.model.StageStatus;
+import com.pixl.backend.model.VideoStatus;
+import com.pixl.backend.repository.PipelineStageRepository;
+import com.pixl.backend.repository.VideoRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Drives post-upload processing as a small DAG persisted in pipeline_stages:
+ *
+ * <pre>
+ * probe -> { thumbnail, transcode:&lt;quality&gt;... } -> package -> publish
+ * </pre>
+ *
+ * Extra codec renditions (see {@link CodecLadder}) are added to a finished
+ * pipeline later by {@link #addRenditions}, which reopens package and publish.
+ *
+ * Whenever a stage completes, every pending stage whose dependencies are done is
+ * claimed and dispatched, so independent stages run in parallel. Transcodes go to
+ * RabbitMQ; everything else, probe included, runs on the pipeline pool. The thumbnail branch is
+ * off the critical path: publish does not wait for it and its failure is not fatal.
+ *
+ * In-process stages hold a lease renewed while they run. If the process dies
+ * mid-stage, the sweeper finds the expired lease and puts the stage back to
+ * PENDING (or FAILED once out of attempts), so the video does not stay
+ * PROCESSING forever. Transcode stages are recovered through their job's lease.
+ */
+@Service
+public class PipelineOrchestrator {
+
+    public static final String PROBE = "probe";
+    public static final String THUMBNAIL = "thumbnail";
+    public static final String PACKAGE = "package";
+    public static final String PUBLISH = "publish";
+    public static final String TRANSCODE_PREFIX = "transcode:";
+
+    @FunctionalInterface
+    public interface StageTask {
+        void run() throws Exception;
+    }
+
+    private final PipelineStageRepository stageRepository;
+    private final VideoRepository videoRepository;
+    private final TranscodeService transcodeService;
+    private final ThumbnailService thumbnailService;
+    private final VideoProbeService videoProbeService;
+    private final HLSService hlsService;
+    private final JitPackager jitPackager;
+    private final ProgressNotificationService progressNotificationService;
+    private final Tracer tracer;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService stageExecutor;
+    private final Counter leaseExpiredCounter;
+
+    private final ScheduledExecutorService heartbeatScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "pipeline-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${app.transcode.qualities}")
+    private String qualities;
+
+    @Value("${app.pipeline.stage-lease-seconds}")
+    private long leaseSeconds;
+
+    @Value("${app.pipeline.heartbeat-interval-seconds}")
+    private long heartbeatIntervalSeconds;
+
+    @Value("${app.pipeline.stage-max-attempts}")
+    private int maxAttempts;
+
+    public PipelineOrchestrator(PipelineStageRepository stageRepository,
+            VideoRepository videoRepository,
+            TranscodeService transcodeService,
+            ThumbnailService thumbnailService,
+            VideoProbeService videoProbeService,
+            HLSService hlsService,
+            JitPackager jitPackager,
+            ProgressNotificationService progressNotificationService,
+            Tracer tracer,
+            MeterRegistry meterRegistry,
+            @Value("${app.pipeline.executor-threads}") int executorThreads) {
+        this.stageRepository = stageRepository;
+        this.videoRepository = videoRepository;
+        this.transcodeService = transcodeService;
+        this.thumbnailService = thumbnailService;
+        this.videoProbeService = videoProbeService;
+        this.hlsService = hlsService;
+        this.jitPackager = jitPackager;
+        this.progressNotificationService = progressNotificationService;
+        this.tracer = tracer;
+        this.meterRegistry = meterRegistry;
+        this.leaseExpiredCounter = meterRegistry.counter("pipeline.stage.lease.expired");
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.stageExecutor = Executors.newFixedThreadPool(executorThreads, r -> {
+            Thread thread = new Thread(r, "pipeline-stage-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stageExecutor.shutdown();
+        heartbeatScheduler.shutdownNow();
+    }
+
+    public static String transcodeStage(String quality) {
+        return TRANSCODE_PREFIX + quality;
+    }
+
+    /**
+     * Creates the stage graph for a video, replacing any previous run, and
+     * dispatches its root stage.
+     */
+    public void startPipeline(String videoId) {
+        stageRepository.deleteByVideoId(videoId);
+
+        List<PipelineStage> stages = new ArrayList<>();
+        stages.add(new PipelineStage(videoId, PROBE));
+        stages.add(new PipelineStage(videoId, THUMBNAIL));
+        for (String quality : qualityLevels()) {
+            stages.add(new PipelineStage(videoId, transcodeStage(quality)));
+        }
+        stages.add(new PipelineStage(videoId, PACKAGE));
+        stages.add(new PipelineStage(videoId, PUBLISH));
+
+        stageRepository.saveAll(stages);
+        System.out.println("[PipelineOrchestrator] Pipeline created for video " + videoId + " with " + stages.size() + " stages");
+        dispatchReady(videoId);
+    }
+
+    /**
+     * Adds transcode stages for extra renditions to a finished pipeline and reopens
+     * package and publish behind them. The video stays READY on its existing
+     * renditions while the new ones encode.
+     */
+    public void addRenditions(String videoId, List<String> renditions) {
+        List<PipelineStage> stages = new ArrayList<>();
+        for (String rendition : renditions) {
+            if (stageRepository.findByVideoIdAndName(videoId, transcodeStage(rendition)).isEmpty()) {
+                stages.add(new PipelineStage(videoId, transcodeStage(rendition)));
+            }
+        }
+        if (stages.isEmpty()) {
+            return;
+        }
+        stageRepository.saveAll(stages);
+
+        for (String name : List.of(PACKAGE, PUBLISH)) {
+            stageRepository.findByVideoIdAndName(videoId, name).ifPresent(stage -> {
+                stage.setStatus(StageStatus.PENDING);
+                stage.setStartedAt(null);
+                stage.setLeaseExpiresAt(null);
+                stage.setCompletedAt(null);
+                stage.setErrorMessage(null);
+                stageRepository.save(stage);
+            });
+        }
+
+        System.out.println("[PipelineOrchestrator] Added " + stages.size() + " renditions for video " + videoId);
+        dispatchReady(videoId);
+    }
+
+    public void completeStage(String videoId, String name) {
+        if (finish(videoId, name, StageStatus.COMPLETED, null)) {
+            dispatchReady(videoId);
+        }
+    }
+
+    public void failStage(String videoId, String name, String error) {
+        if (finish(videoId, name, StageStatus.FAILED, error)) {
+            stageFailed(videoId, name, error);
+        }
+    }
+
+    /**
+     * Recovers in-process stages whose lease expired because the process running
+     * them died. Also runs at startup, picking up what the previous process left.
+     */
+    @Scheduled(fixedDelayString = "${app.pipeline.stage-sweep-interval-ms}")
+    public void sweepExpiredStages() {
+        LocalDateTime now = LocalDateTime.now();
+        for (PipelineStage stage : stageRepository.findByStatusAndLeaseExpiresAtBefore(StageStatus.RUNNING, now)) {
+            try {
+                recover(stage, now);
+            } catch (Exception e) {
+                System.err.println("[PipelineOrchestrator] Failed to recover stage " + stage.getName()
+                        + " for video " + stage.getVideoId() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void recover(PipelineStage stage, LocalDateTime now) {
+        String videoId = stage.getVideoId();
+        String name = stage.getName();
+        leaseExpiredCounter.increment();
+        System.out.println("[PipelineOrchestrator] Lease expired for stage " + name + " of video " + videoId
+                + " (attempt " + stage.getAttempts() + ")");
+
+        // Conditional updates: another instance's sweeper may have handled it already
+        if (stage.getAttempts() != null && stage.getAttempts() >= maxAttempts) {
+            String error = "Lease expired after " + maxAttempts + " attempts";
+            if (stageRepository.failExpired(stage.getId(), now, error) == 1) {
+                stageFailed(videoId, name, error);
+            }
+            return;
+        }
+        if (stageRepository.requeueExpired(stage.getId(), now) == 1) {
+            dispatchReady(videoId);
+        }
+    }
+
+    private void stageFailed(String videoId, String name, String error) {
+        if (isOptional(name)) {
+            // Dependents treat a failed optional stage as done
+            dispatchReady(videoId);
+            return;
+        }
+
+        videoRepository.findById(videoId).ifPresent(video -> {
+            video.setStatus(VideoStatus.FAILED);
+            videoRepository.save(video);
+        });
+        progressNotificationService.sendError(videoId, name + " failed: " + error);
+        System.out.println("❌ Pipeline stage " + name + " failed for video: " + videoId);
+    }
+
+    public List<PipelineStage> getStages(String videoId) {
+        return stageRepository.findByVideoIdOrderByCreatedAtAsc(videoId);
+    }
+
+    private boolean finish(String videoId, String name, StageStatus status, String error) {
+        PipelineStage stage = stageRepository.findByVideoIdAndName(videoId, name).orElse(null);
+        if (stage == null) {
+            return false;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime startedAt = stage.getStartedAt() != null ? stage.getStartedAt() : now;
+        Duration duration = Duration.between(startedAt, now);
+
+        // Compare-and-set from RUNNING: a stage the sweeper requeued or failed is not finished twice
+        if (stageRepository.finish(stage.getId(), status, now, duration.toMillis(), error) == 0) {
+            System.out.println("[PipelineOrchestrator] Stage " + name + " for video " + videoId
+                    + " is no longer running, ignoring " + status);
+            return false;
+        }
+
+        Timer.builder("pipeline.stage.duration")
+                .tag("stage", name)
+                .tag("status", status.name())
+                .register(meterRegistry)
+                .record(duration);
+
+        System.out.println("[PipelineOrchestrator] Stage " + name + " " + status + " for video " + videoId
+                + " in " + duration.toMillis() + " ms");
+        return true;
+    }
+
+    private void dispatchReady(String videoId) {
+        List<PipelineStage> stages = stageRepository.findByVideoIdOrderByCreatedAtAsc(videoId);
+
+        Map<String, StageStatus> statusByName = new HashMap<>();
+        for (PipelineStage stage : stages) {
+            statusByName.put(stage.getName(), stage.getStatus());
+        }
+
+        List<String> readyQualities = new ArrayList<>();
+        for (PipelineStage stage : stages) {
+            String name = stage.getName();
+            if (stage.getStatus() != StageStatus.PENDING) {
+                continue;
+            }
+
+            boolean ready = dependencies(name, statusByName.keySet()).stream()
+                    .allMatch(dependency -> statusByName.get(dependency) == StageStatus.COMPLETED
+                            || (statusByName.get(dependency) == StageStatus.FAILED && isOptional(dependency)));
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime leaseExpiresAt = name.startsWith(TRANSCODE_PREFIX) ? null : now.plusSeconds(leaseSeconds);
+            if (!ready || stageRepository.claim(videoId, name, now, leaseExpiresAt) == 0) {
+                continue;
+            }
+
+            if (name.startsWith(TRANSCODE_PREFIX)) {
+                readyQualities.add(name.substring(TRANSCODE_PREFIX.length()));
+            } else {
+                dispatch(videoId, name);
+            }
+        }
+
+        // Renditions are queued together so the jobs are created in one batch
+        if (!readyQualities.isEmpty()) {
+            try {
+                transcodeService.queueTranscodeJobs(videoId, readyQualities);
+            } catch (Exception e) {
+                for (String quality : readyQualities) {
+                    failStage(videoId, transcodeStage(quality), e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Optional stages may fail without failing the video: the thumbnail, and extra
+     * codec renditions, which package skips if they did not complete.
+     */
+    private boolean isOptional(String name) {
+        return THUMBNAIL.equals(name) || (name.startsWith(TRANSCODE_PREFIX)
+                && !CodecLadder.H264.equals(CodecLadder.codecOf(name.substring(TRANSCODE_PREFIX.length()))));
+    }
+
+    private List<String> dependencies(String name, Iterable<String> allStages) {
+        List<String> dependencies = new ArrayList<>();
+        switch (name) {
+            case PROBE -> {
+            }
+            case PACKAGE -> {
+                for (String stage : allStages) {
+                    if (stage.startsWith(TRANSCODE_PREFIX)) {
+                        dependencies.add(stage);
+                    }
+                }
+            }
+            case PUBLISH -> dependencies.add(PACKAGE);
+            default -> dependencies.add(PROBE); // thumbnail and transcode stages
+        }
+        return dependencies;
+    }
+
+    private void dispatch(String videoId, String name) {
+        StageTask task = switch (name) {
+            case PROBE -> () -> videoProbeService.probe(videoId);
+            case THUMBNAIL -> () -> thumbnailService.generateThumbnail(videoId);
+            case PACKAGE -> () -> {
+                progressNotificationService.sendHLSGenerationStarted(videoId);
+                if (jitPackager.isEnabled()) {
+                    jitPackager.indexRenditions(videoId);
+                } else {
+                    hlsService.generateHLS(videoId);
+                }
+            };
+            case PUBLISH -> () -> publish(videoId);
+            default -> throw new IllegalArgumentException("Unknown stage: " + name);
+        };
+
+        stageExecutor.execute(() -> {
+            Span span = tracer.spanBuilder("pipeline-stage").startSpan();
+            ScheduledFuture<?> heartbeat = startHeartbeat(videoId, name);
+            try (Scope scope = span.makeCurrent()) {
+                span.setAttribute("video.id", videoId);
+                span.setAttribute("stage", name);
+                task.run();
+                completeStage(videoId, name);
+            } catch (Exception e) {
+                span.recordException(e);
+                span.setStatus(StatusCode.ERROR, e.getMessage());
+                failStage(videoId, name, e.getMessage());
+            } finally {
+                heartbeat.cancel(false);
+                span.end();
+            }
+        });
+    }
+
+    private ScheduledFuture<?> startHeartbeat(String videoId, String name) {
+        String stageId = stageRepository.findByVideoIdAndName(videoId, name).map(PipelineStage::getId).orElse(null);
+        return heartbeatScheduler.scheduleAtFixedRate(() -> {
+            try {
+                if (stageId == null
+                        || stageRepository.extendLease(stageId, LocalDateTime.now().plusSeconds(leaseSeconds)) == 0) {
+                    System.err.println("[PipelineOrchestrator] Lost lease on stage " + name + " for video " + videoId);
+                }
+            } catch (Exception e) {
+                System.err.println("[PipelineOrchestrator] Heartbeat failed for stage " + name + " of video "
+                        + videoId + ": " + e.getMessage());
+            }
+        }, heartbeatIntervalSeconds, heartbeatIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private void publish(String videoId) {
+        boolean alreadyReady = videoRepository.findById(videoId).map(video -> {
+            boolean ready = video.getStatus() == VideoStatus.READY;
+            video.setStatus(VideoStatus.READY);
+            videoRepository.save(video);
+            return ready;
+        }).orElse(false);
+        progressNotificationService.sendHLSGenerationComplete(videoId);
+
+        // Re-publishing after added renditions is not part of the upload critical path
+        if (alreadyReady) {
+            return;
+        }
+
+        stageRepository.findByVideoIdAndName(videoId, PROBE).ifPresent(probe -> {
+            Duration criticalPath = Duration.between(probe.getCreatedAt(), LocalDateTime.now());
+            Timer.builder("pipeline.critical_path.duration")
+                    .description("Time from upload completion to READY")
+                    .register(meterRegistry)
+                    .record(criticalPath);
+            System.out.println("✅ Video " + videoId + " READY, critical path " + criticalPath.toMillis() + " ms");
+        });
+    }
+
+    private List<String> qualityLevels() {
+        return Arrays.stream(qualities.split(",")).map(String::trim).toList();
+    }
+}
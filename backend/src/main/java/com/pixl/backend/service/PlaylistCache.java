@@ -0,0 +1,149 @@
+package com.pixl.backend.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Serialized HLS playlists and DASH manifests, kept in memory with a strong
+ * ETag and a precompressed gzip body, so a playlist request is answered
+ * without touching MinIO, rebuilding a JIT manifest or compressing per request.
+ *
+ * VOD playlists do not change once written; entries are dropped when a video
+ * is repackaged (HLSService / JitPackager) or deleted.
+ */
+@Component
+public class PlaylistCache {
+
+    private final Map<String, CachedPlaylist> playlists;
+    // Bumped on every invalidation, so a load that raced one is not cached
+    private final AtomicLong generation = new AtomicLong();
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public PlaylistCache(MeterRegistry meterRegistry,
+            @Value("${app.delivery.playlist-cache-size}") int maxEntries) {
+        this.hitCounter = meterRegistry.counter("delivery.playlist.cache", "result", "hit");
+        this.missCounter = meterRegistry.counter("delivery.playlist.cache", "result", "miss");
+        this.playlists = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPlaylist> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /**
+     * @param name the playlist's path below the video's stream root, e.g. "720p/playlist.m3u8"
+     */
+    public CachedPlaylist get(String videoId, String name, Loader loader) throws Exception {
+        String key = videoId + "/" + name;
+        CachedPlaylist cached = playlists.get(key);
+        if (cached != null) {
+            hitCounter.increment();
+            return cached;
+        }
+
+        missCounter.increment();
+        long loadGeneration = generation.get();
+        CachedPlaylist playlist = CachedPlaylist.of(loader.load());
+        synchronized (playlists) {
+            if (generation.get() == loadGeneration) {
+                playlists.put(key, playlist);
+            }
+        }
+        return playlist;
+    }
+
+    public void invalidate(String videoId) {
+        synchronized (playlists) {
+            generation.incrementAndGet();
+            playlists.keySet().removeIf(key -> key.startsWith(videoId + "/"));
+        }
+    }
+
+    /**
+     * Whether an Accept-Encoding header admits gzip (present and not q=0).
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+        String load() throws Exception;
+    }
+
+    public static class CachedPlaylist {
+        private final byte[] body;
+        private final byte[] gzipBody;
+        private final String etag;
+
+        private CachedPlaylist(byte[] body, byte[] gzipBody, String etag) {
+            this.body = body;
+            this.gzipBody = gzipBody;
+            this.etag = etag;
+        }
+
+        static CachedPlaylist of(String content) throws Exception {
+            byte[] body = content.getBytes(StandardCharsets.UTF_8);
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(body);
+            byte[] gzipBody = gzip(body);
+            return new CachedPlaylist(body, gzipBody.length < body.length ? gzipBody : null,
+                    HexFormat.of().formatHex(hash, 0, 16));
+        }
+
+        private static byte[] gzip(byte[] body) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(body);
+            }
+            return out.toByteArray();
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * Gzip encoded body, or null when compressing does not make it smaller.
+         */
+        public byte[] getGzipBody() {
+            return gzipBody;
+        }
+
+        /**
+         * Strong ETag of the identity body. Each content coding is a distinct
+         * representation, so the gzip body's ETag carries a suffix.
+         */
+        public String getEtag() {
+            return "\"" + etag + "\"";
+        }
+
+        public String getGzipEtag() {
+            return "\"" + etag + "-gzip\"";
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.pixl.backend.service;
+
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Playlists and manifests as served to players, shared by the servlet and
+ * reactive stream endpoints. Videos packaged ahead of time keep their stored
+ * playlists; in JIT mode others are packaged on request by {@link JitPackager}.
+ * Results are cached in {@link PlaylistCache}.
+ */
+@Service
+public class PlaylistService {
+    public static final String HLS_CONTENT_TYPE = "application/vnd.apple.mpegurl";
+    public static final String DASH_CONTENT_TYPE = "application/dash+xml";
+
+    private final MinioService minioService;
+    private final JitPackager jitPackager;
+    private final PlaylistCache playlistCache;
+    private final PresignedUrlService presignedUrlService;
+
+    @Value("${minio.bucket.videos-transcoded}")
+    private String transcodedBucket;
+
+    public PlaylistService(MinioService minioService, JitPackager jitPackager, PlaylistCache playlistCache,
+            PresignedUrlService presignedUrlService) {
+        this.minioService = minioService;
+        this.jitPackager = jitPackager;
+        this.playlistCache = playlistCache;
+        this.presignedUrlService = presignedUrlService;
+    }
+
+    public PlaylistCache.CachedPlaylist master(String videoId) throws Exception {
+        return playlistCache.get(videoId, "master.m3u8", () -> {
+            String objectName = videoId + "/hls/master.m3u8";
+            return storedOrJit(objectName, () -> jitPackager.masterPlaylist(videoId));
+        });
+    }
+
+    public PlaylistCache.CachedPlaylist media(String videoId, String quality) throws Exception {
+        String name = quality + "/playlist.m3u8";
+        PlaylistCache.CachedPlaylist playlist = playlistCache.get(videoId, name, () -> {
+            String objectName = videoId + "/hls/" + name;
+            return storedOrJit(objectName, () -> jitPackager.mediaPlaylist(videoId, quality));
+        });
+        return signed(videoId, quality, name, playlist);
+    }
+
+    public PlaylistCache.CachedPlaylist iframes(String videoId, String quality) throws Exception {
+        String name = quality + "/" + HLSService.IFRAME_PLAYLIST;
+        PlaylistCache.CachedPlaylist playlist = playlistCache.get(videoId, name, () -> {
+            String objectName = videoId + "/hls/" + name;
+            return storedOrJit(objectName, () -> jitPackager.iframePlaylist(videoId, quality));
+        });
+        return signed(videoId, quality, name, playlist);
+    }
+
+    public PlaylistCache.CachedPlaylist dashManifest(String videoId) throws Exception {
+        return playlistCache.get(videoId, "manifest.mpd",
+                () -> jitOnly("manifest.mpd", () -> jitPackager.dashManifest(videoId)));
+    }
+
+    private String storedOrJit(String objectName, PlaylistCache.Loader jit) throws Exception {
+        if (minioService.fileExists(transcodedBucket, objectName)) {
+            return new String(minioService.downloadFileAsBytes(transcodedBucket, objectName));
+        }
+        return jitOnly(objectName, jit);
+    }
+
+    /**
+     * Only JIT mode generates manifests: elsewhere a missing playlist means the
+     * video was never packaged, and indexing it would read the whole rendition.
+     */
+    private String jitOnly(String name, PlaylistCache.Loader jit) throws Exception {
+        if (!jitPackager.isEnabled()) {
+            throw new IllegalStateException("No stored " + name + " and JIT packaging is disabled");
+        }
+        return jit.load();
+    }
+
+    /**
+     * Cache-Control for media and I-frame playlists. Playlists listing presigned
+     * URLs are kept out of shared caches.
+     */
+    public String mediaCacheControl() {
+        return presignedUrlService.signsPlaylists() ? "private, max-age=3600" : "max-age=3600";
+    }
+
+    /**
+     * In presigned delivery mode, the playlist with its segment URIs rewritten to
+     * presigned URLs, cached per signing epoch.
+     */
+    private PlaylistCache.CachedPlaylist signed(String videoId, String quality, String name,
+            PlaylistCache.CachedPlaylist playlist) throws Exception {
+        if (!presignedUrlService.signsPlaylists()) {
+            return playlist;
+        }
+        return playlistCache.get(videoId, name + "@" + presignedUrlService.playlistEpoch(),
+                () -> presignedUrlService.signMediaPlaylist(videoId, quality,
+                        new String(playlist.getBody(), StandardCharsets.UTF_8)));
+    }
+}
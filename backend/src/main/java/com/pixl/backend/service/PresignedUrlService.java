@@ -0,0 +1,156 @@
+package com.pixl.backend.service;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Presigned MinIO URLs for delivering media bytes straight from object storage
+ * instead of through the API tier.
+ *
+ * Modes (app.delivery.mode):
+ * - proxy: the API streams every byte (default)
+ * - redirect: media endpoints answer 302 to a short-lived presigned URL
+ * - presigned: as redirect, and media playlists are rewritten so segment URIs
+ *   are presigned, sparing players the redirect round trip per segment
+ *
+ * Signing is an HMAC per URL, so signed URLs are cached and reused while they
+ * have at least half their lifetime left.
+ */
+@Service
+public class PresignedUrlService {
+    public static final String PROXY = "proxy";
+    public static final String REDIRECT = "redirect";
+    public static final String PRESIGNED = "presigned";
+
+    private final MinioService minioService;
+    private final Map<String, SignedUrl> urls;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    @Value("${app.delivery.mode}")
+    private String mode;
+
+    @Value("${app.delivery.redirect-expiry-seconds}")
+    private int redirectExpirySeconds;
+
+    // Players read a VOD playlist once, so its URLs must outlive the longest playback session
+    @Value("${app.delivery.playlist-expiry-seconds}")
+    private int playlistExpirySeconds;
+
+    @Value("${minio.bucket.videos-transcoded}")
+    private String transcodedBucket;
+
+    public PresignedUrlService(MinioService minioService, MeterRegistry meterRegistry,
+            @Value("${app.delivery.presign-cache-size}") int maxEntries) {
+        this.minioService = minioService;
+        this.hitCounter = meterRegistry.counter("delivery.presign.cache", "result", "hit");
+        this.missCounter = meterRegistry.counter("delivery.presign.cache", "result", "miss");
+        this.urls = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SignedUrl> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    public boolean redirectsMedia() {
+        return REDIRECT.equals(mode) || PRESIGNED.equals(mode);
+    }
+
+    public boolean signsPlaylists() {
+        return PRESIGNED.equals(mode);
+    }
+
+    /**
+     * Redirect target for a media request.
+     *
+     * @param contentDisposition Content-Disposition for MinIO to send, or null
+     */
+    public URI redirectUri(String bucket, String objectName, String contentDisposition) throws Exception {
+        Map<String, String> params = contentDisposition == null
+                ? Map.of()
+                : Map.of("response-content-disposition", contentDisposition);
+        return URI.create(url(bucket, objectName, redirectExpirySeconds, params));
+    }
+
+    /**
+     * Signed playlists are regenerated every quarter of the URL lifetime. The
+     * epoch goes into the playlist's cache key; with signed URLs reused only in
+     * the first half of their lifetime, a served playlist's URLs always have at
+     * least a quarter of it left.
+     */
+    public long playlistEpoch() {
+        return System.currentTimeMillis() / 1000 / Math.max(1, playlistExpirySeconds / 4);
+    }
+
+    /**
+     * Rewrites the segment and initialization section URIs of a media or I-frame
+     * playlist to presigned URLs of the objects they are served from.
+     */
+    public String signMediaPlaylist(String videoId, String quality, String playlist) throws Exception {
+        StringBuilder signed = new StringBuilder(playlist.length() * 3);
+        for (String line : playlist.split("\n", -1)) {
+            String trimmed = line.trim();
+            int uriAttribute = trimmed.startsWith("#EXT-X-MAP:") ? trimmed.indexOf("URI=\"") : -1;
+            if (uriAttribute >= 0) {
+                int start = uriAttribute + "URI=\"".length();
+                int end = trimmed.indexOf('"', start);
+                signed.append(trimmed, 0, start)
+                        .append(signedSegmentUrl(videoId, quality, trimmed.substring(start, end)))
+                        .append(trimmed.substring(end));
+            } else if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                signed.append(signedSegmentUrl(videoId, quality, trimmed));
+            } else {
+                signed.append(line);
+            }
+            signed.append("\n");
+        }
+        signed.setLength(signed.length() - 1);
+        return signed.toString();
+    }
+
+    private String signedSegmentUrl(String videoId, String quality, String uri) throws Exception {
+        if (uri.contains("://")) {
+            return uri;
+        }
+        // Same mapping as the stream endpoints: media.mp4 is the JIT rendition, anything else an HLS object
+        String objectName = JitPackager.MEDIA_FILE.equals(uri)
+                ? JitPackager.renditionObjectName(videoId, quality)
+                : videoId + "/hls/" + quality + "/" + uri;
+        return url(transcodedBucket, objectName, playlistExpirySeconds, Map.of());
+    }
+
+    private String url(String bucket, String objectName, int expirySeconds, Map<String, String> params)
+            throws Exception {
+        String key = bucket + "/" + objectName + "|" + expirySeconds + "|" + params;
+        long now = System.currentTimeMillis();
+        SignedUrl cached = urls.get(key);
+        if (cached != null && cached.expiresAtMillis - now >= expirySeconds * 500L) {
+            hitCounter.increment();
+            return cached.url;
+        }
+
+        missCounter.increment();
+        String url = minioService.getPresignedUrl(bucket, objectName, expirySeconds, params);
+        urls.put(key, new SignedUrl(url, now + expirySeconds * 1000L));
+        return url;
+    }
+
+    private static class SignedUrl {
+        final String url;
+        final long expiresAtMillis;
+
+        SignedUrl(String url, long expiresAtMillis) {
+            this.url = url;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+}
@@ -0,0 +1,519 @@
+package com.pixl.backend.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * In-process cache for hot media bytes, bounded by a byte budget.
+ *
+ * Storage is off-heap: direct ByteBuffer slabs carved into fixed-size pages,
+ * allocated lazily up to the budget and recycled on eviction, so cached
+ * segments neither count against the heap nor churn the garbage collector.
+ *
+ * Eviction follows W-TinyLFU: new entries land in a small LRU window, and an
+ * entry leaving the window only displaces the main region's LRU victim if a
+ * frequency sketch says it has been requested more often. Loads in flight
+ * hold their pages outside both regions and join the window once filled, so
+ * concurrent loads never crowd each other out of it. One-hit wonders
+ * (a single viewer of an unpopular video) therefore cannot flush segments
+ * that thousands of viewers are requesting.
+ *
+ * Readers hold a reference to the entry they stream from; its pages return to
+ * the free list only once it is evicted and the last reader is done. Region
+ * accounting drops an evicted entry right away, so while slow readers pin
+ * evicted entries, admission also checks that enough pages are physically free.
+ */
+@Component
+public class SegmentCache {
+
+    private static final double WINDOW_FRACTION = 0.01;
+    private static final int SLAB_BYTES = 64 * 1024 * 1024;
+
+    private final boolean enabled;
+    private final int pageSize;
+    private final int pagesPerSlab;
+    private final int totalPages;
+    private final int maxEntryPages;
+    private final int windowMaxPages;
+    private final int mainMaxPages;
+
+    private final ByteBuffer[] slabs;
+    private final int[] freePages;
+    private int freeCount;
+    private int nextFreshPage;
+
+    private final LinkedHashMap<String, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Entry> main = new LinkedHashMap<>(16, 0.75f, true);
+    private int windowPages;
+    private int mainPages;
+    private int reservedPages;
+    private final FrequencySketch sketch;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+    private final Counter rejectionCounter;
+    private volatile long lastFullAt;
+
+    public SegmentCache(MeterRegistry meterRegistry,
+            @Value("${app.cache.segment.enabled}") boolean enabled,
+            @Value("${app.cache.segment.max-bytes}") long maxBytes,
+            @Value("${app.cache.segment.page-size}") int pageSize,
+            @Value("${app.cache.segment.max-entry-bytes}") long maxEntryBytes) {
+        if (pageSize <= 0 || SLAB_BYTES % pageSize != 0) {
+            throw new IllegalStateException("Segment cache page size must divide " + SLAB_BYTES + ": " + pageSize);
+        }
+        this.enabled = enabled;
+        this.pageSize = pageSize;
+        this.pagesPerSlab = SLAB_BYTES / pageSize;
+        this.totalPages = (int) Math.min(Integer.MAX_VALUE, maxBytes / pageSize);
+        this.maxEntryPages = (int) Math.min(totalPages, pagesFor(maxEntryBytes));
+        this.windowMaxPages = Math.min(totalPages, Math.max((int) (totalPages * WINDOW_FRACTION), maxEntryPages));
+        this.mainMaxPages = totalPages - windowMaxPages;
+
+        this.slabs = new ByteBuffer[(totalPages + pagesPerSlab - 1) / pagesPerSlab];
+        this.freePages = new int[totalPages];
+        this.sketch = new FrequencySketch(Math.max(1024, totalPages));
+
+        this.hitCounter = meterRegistry.counter("segment.cache.requests", "result", "hit");
+        this.missCounter = meterRegistry.counter("segment.cache.requests", "result", "miss");
+        this.evictionCounter = meterRegistry.counter("segment.cache.evictions");
+        this.rejectionCounter = meterRegistry.counter("segment.cache.admission.rejections");
+        Gauge.builder("segment.cache.bytes", this, cache -> cache.usedPages() * (double) cache.pageSize)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("segment.cache.capacity", this, cache -> cache.totalPages * (double) cache.pageSize)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("segment.cache.entries", this, SegmentCache::entryCount)
+                .register(meterRegistry);
+        Gauge.builder("segment.cache.hit.ratio", this, cache -> {
+            double hits = cache.hitCounter.count();
+            double total = hits + cache.missCounter.count();
+            return total == 0 ? 0 : hits / total;
+        }).register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled && totalPages > 0;
+    }
+
+    /**
+     * Whether an object of this size may be cached at all.
+     */
+    public boolean accepts(long length) {
+        return isEnabled() && length > 0 && pagesFor(length) <= maxEntryPages;
+    }
+
+    /**
+     * Opens a cached entry, or returns null on a miss. The stream must be closed.
+     */
+    public InputStream get(String key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        synchronized (this) {
+            sketch.increment(key);
+            Entry entry = window.get(key);
+            if (entry == null) {
+                entry = main.get(key);
+            }
+            if (entry == null) {
+                missCounter.increment();
+                return null;
+            }
+            hitCounter.increment();
+            entry.refs++;
+            return new EntryStream(entry);
+        }
+    }
+
+    /**
+     * Like {@link #get} but for internal reads (write-through to disk): does not
+     * count as a request or raise the key's frequency.
+     */
+    public synchronized InputStream peek(String key) {
+        Entry entry = window.get(key);
+        if (entry == null) {
+            entry = main.get(key);
+        }
+        if (entry == null) {
+            return null;
+        }
+        entry.refs++;
+        return new EntryStream(entry);
+    }
+
+    public synchronized boolean contains(String key) {
+        return window.containsKey(key) || main.containsKey(key);
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+        InputStream open() throws Exception;
+    }
+
+    /**
+     * Reserves space, copies length bytes from the loader's stream into the cache
+     * and returns a stream over the cached copy. Returns null without calling the
+     * loader if the entry does not fit right now; the caller then serves from the
+     * origin directly.
+     */
+    public InputStream put(String key, long length, Loader loader) throws Exception {
+        if (!accepts(length)) {
+            return null;
+        }
+
+        Entry entry;
+        synchronized (this) {
+            if (contains(key)) {
+                // Not a request of its own: the caller's get already counted the miss
+                return peek(key);
+            }
+            int needed = pagesFor(length);
+            if (!makeWindowRoom(needed) || !reclaimPages(needed)) {
+                rejectionCounter.increment();
+                lastFullAt = System.currentTimeMillis();
+                return null;
+            }
+            entry = new Entry(key, allocatePages(needed), (int) length);
+            reservedPages += needed;
+        }
+
+        // Network read happens outside the lock; the reserved pages are private until published
+        try (InputStream source = loader.open()) {
+            fill(entry, source);
+        } catch (Exception e) {
+            synchronized (this) {
+                reservedPages -= entry.pages.length;
+                releasePages(entry.pages);
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            reservedPages -= entry.pages.length;
+            if (contains(key)) {
+                // Another request cached the same key meanwhile; keep theirs
+                releasePages(entry.pages);
+                return peek(key);
+            }
+            entry.refs++;
+            window.put(key, entry);
+            windowPages += entry.pages.length;
+            makeWindowRoom(0);
+            return new EntryStream(entry);
+        }
+    }
+
+    /**
+     * When a put was last turned away because in-flight loads and readers held
+     * the space it needed, or 0 if never.
+     */
+    public long getLastFullAt() {
+        return lastFullAt;
+    }
+
+    public synchronized void invalidate(String keyPrefix) {
+        for (LinkedHashMap<String, Entry> region : List.of(window, main)) {
+            Iterator<Map.Entry<String, Entry>> it = region.entrySet().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next().getValue();
+                if (entry.key.startsWith(keyPrefix)) {
+                    it.remove();
+                    if (region == window) {
+                        windowPages -= entry.pages.length;
+                    } else {
+                        mainPages -= entry.pages.length;
+                    }
+                    remove(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Demotes window entries into the main region until needed pages fit in the
+     * window. Only filled entries count against it, and no entry is larger than
+     * the window, so this fails only if needed itself exceeds the window.
+     */
+    private boolean makeWindowRoom(int needed) {
+        while (windowPages + needed > windowMaxPages) {
+            Iterator<Entry> eldest = window.values().iterator();
+            if (!eldest.hasNext()) {
+                return false;
+            }
+            Entry candidate = eldest.next();
+            eldest.remove();
+            windowPages -= candidate.pages.length;
+            admitToMain(candidate);
+        }
+        return true;
+    }
+
+    /**
+     * TinyLFU admission: the candidate replaces main-region victims only while it
+     * is more frequently requested than each of them.
+     */
+    private void admitToMain(Entry candidate) {
+        int candidateFrequency = sketch.frequency(candidate.key);
+        while (mainPages + candidate.pages.length > mainMaxPages) {
+            Iterator<Entry> eldest = main.values().iterator();
+            Entry victim = eldest.hasNext() ? eldest.next() : null;
+            if (victim == null || sketch.frequency(victim.key) >= candidateFrequency) {
+                rejectionCounter.increment();
+                remove(candidate);
+                return;
+            }
+            eldest.remove();
+            mainPages -= victim.pages.length;
+            evictionCounter.increment();
+            remove(victim);
+        }
+        main.put(candidate.key, candidate);
+        mainPages += candidate.pages.length;
+    }
+
+    /**
+     * Evicted entries still being read keep their pages, so the regions can be
+     * within budget while every page is in use. Evicts unread main-region
+     * entries, least recently used first, until needed pages are physically
+     * free; returns false if pinned entries alone leave too few.
+     */
+    private boolean reclaimPages(int needed) {
+        Iterator<Entry> eldest = main.values().iterator();
+        while (availablePages() < needed && eldest.hasNext()) {
+            Entry victim = eldest.next();
+            if (victim.refs == 0) {
+                eldest.remove();
+                mainPages -= victim.pages.length;
+                evictionCounter.increment();
+                remove(victim);
+            }
+        }
+        return availablePages() >= needed;
+    }
+
+    private int availablePages() {
+        return freeCount + (totalPages - nextFreshPage);
+    }
+
+    private void remove(Entry entry) {
+        entry.removed = true;
+        if (entry.refs == 0) {
+            releasePages(entry.pages);
+        }
+    }
+
+    private synchronized void release(Entry entry) {
+        entry.refs--;
+        if (entry.removed && entry.refs == 0) {
+            releasePages(entry.pages);
+        }
+    }
+
+    private int[] allocatePages(int count) {
+        if (availablePages() < count) {
+            throw new IllegalStateException("Segment cache has " + availablePages() + " free pages, needs " + count);
+        }
+        int[] pages = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (freeCount > 0) {
+                pages[i] = freePages[--freeCount];
+            } else {
+                int page = nextFreshPage++;
+                int slab = page / pagesPerSlab;
+                if (slabs[slab] == null) {
+                    int slabPages = Math.min(pagesPerSlab, totalPages - slab * pagesPerSlab);
+                    slabs[slab] = ByteBuffer.allocateDirect(slabPages * pageSize);
+                }
+                pages[i] = page;
+            }
+        }
+        return pages;
+    }
+
+    private void releasePages(int[] pages) {
+        if (pages.length > 0 && pages[0] < 0) {
+            return;
+        }
+        for (int page : pages) {
+            freePages[freeCount++] = page;
+        }
+        pages[0] = -1;   // Guards against a double release
+    }
+
+    private void fill(Entry entry, InputStream source) throws IOException {
+        byte[] chunk = new byte[pageSize];
+        int remaining = entry.length;
+        for (int page : entry.pages) {
+            int toRead = Math.min(pageSize, remaining);
+            int read = source.readNBytes(chunk, 0, toRead);
+            if (read < toRead) {
+                throw new IOException("Source ended after " + (entry.length - remaining + read)
+                        + " of " + entry.length + " bytes");
+            }
+            pageBuffer(page).put(chunk, 0, toRead);
+            remaining -= toRead;
+        }
+    }
+
+    private ByteBuffer pageBuffer(int page) {
+        ByteBuffer buffer = slabs[page / pagesPerSlab].duplicate();
+        int offset = (page % pagesPerSlab) * pageSize;
+        buffer.position(offset).limit(offset + pageSize);
+        return buffer;
+    }
+
+    private int pagesFor(long length) {
+        return (int) Math.min(Integer.MAX_VALUE, (length + pageSize - 1) / pageSize);
+    }
+
+    private synchronized int usedPages() {
+        return windowPages + mainPages + reservedPages;
+    }
+
+    private synchronized int entryCount() {
+        return window.size() + main.size();
+    }
+
+    private static class Entry {
+        final String key;
+        final int[] pages;
+        final int length;
+        int refs;
+        boolean removed;
+
+        Entry(String key, int[] pages, int length) {
+            this.key = key;
+            this.pages = pages;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Reads an entry's pages in order. Pages cannot be recycled while the stream
+     * is open, so reads need no lock.
+     */
+    private class EntryStream extends InputStream {
+        private final Entry entry;
+        private final int[] pages;
+        private int position;
+        private boolean closed;
+
+        EntryStream(Entry entry) {
+            this.entry = entry;
+            this.pages = entry.pages.clone();
+        }
+
+        @Override
+        public int read() {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (position >= entry.length) {
+                return -1;
+            }
+            int pageOffset = position % pageSize;
+            int count = Math.min(length, Math.min(pageSize - pageOffset, entry.length - position));
+            ByteBuffer page = pageBuffer(pages[position / pageSize]);
+            page.position(page.position() + pageOffset);
+            page.get(buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return entry.length - position;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(entry);
+            }
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters over four rows. Counts are halved every
+     * 10 x width increments so popularity from hours ago fades out.
+     */
+    private static class FrequencySketch {
+        private static final int[] SEEDS = { 0x97cb3127, 0x84f0ea63, 0xd1b54a33, 0x2c1b3c6d };
+        private static final int MAX_COUNT = 15;
+
+        private final byte[][] rows;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int expectedEntries) {
+            int width = Integer.highestOneBit(Math.max(expectedEntries - 1, 1)) << 1;
+            this.rows = new byte[SEEDS.length][width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * width;
+        }
+
+        void increment(String key) {
+            int hash = spread(key.hashCode());
+            for (int i = 0; i < rows.length; i++) {
+                int index = index(hash, i);
+                if (rows[i][index] < MAX_COUNT) {
+                    rows[i][index]++;
+                }
+            }
+            if (++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(String key) {
+            int hash = spread(key.hashCode());
+            int min = MAX_COUNT;
+            for (int i = 0; i < rows.length; i++) {
+                min = Math.min(min, rows[i][index(hash, i)]);
+            }
+            return min;
+        }
+
+        private void reset() {
+            for (byte[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+
+        private int index(int hash, int row) {
+            int h = hash * SEEDS[row];
+            h ^= h >>> 16;
+            return h & mask;
+        }
+
+        private static int spread(int hash) {
+            hash ^= hash >>> 17;
+            hash *= 0xed5ad4bb;
+            hash ^= hash >>> 11;
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.pixl.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Segment boundaries shared by encoding and packaging. Every rung is encoded
+ * with forced keyframes at exactly these timestamps and the HLS muxer cuts on
+ * them, so segment N covers the same media time in every rendition and players
+ * can switch at any boundary.
+ *
+ * <pre>
+ * 0 | first | first + target | first + 2 * target | ...
+ * </pre>
+ *
+ * A short first segment lets playback start before a full target duration has
+ * been fetched. Only just-in-time packaging gets one: it groups fragments into
+ * segments itself, while ffmpeg's HLS muxer ignores -hls_init_time for a VOD
+ * list (it only applies once the list is trimmed) and cuts at the first
+ * keyframe past each multiple of -hls_time. With the boundaries on those
+ * multiples, every rung is cut on the same forced keyframes whatever other
+ * keyframes it has.
+ */
+@Component
+public class SegmentPolicy {
+
+    private final double targetSeconds;
+    private final double firstSegmentSeconds;
+
+    @Value("${app.hls.keyframe-tolerance-seconds}")
+    private double keyframeToleranceSeconds;
+
+    public SegmentPolicy(@Value("${app.hls.segment-seconds}") double targetSeconds,
+            @Value("${app.hls.first-segment-seconds}") double firstSegmentSeconds,
+            @Value("${app.hls.packaging-mode}") String packagingMode) {
+        if (targetSeconds <= 0 || firstSegmentSeconds <= 0 || firstSegmentSeconds > targetSeconds) {
+            throw new IllegalStateException("Invalid HLS segment policy: target=" + targetSeconds
+                    + "s, first=" + firstSegmentSeconds + "s");
+        }
+        this.targetSeconds = targetSeconds;
+        this.firstSegmentSeconds = HLSService.JIT.equals(packagingMode) ? firstSegmentSeconds : targetSeconds;
+    }
+
+    public double getTargetSeconds() {
+        return targetSeconds;
+    }
+
+    public double getFirstSegmentSeconds() {
+        return firstSegmentSeconds;
+    }
+
+    /**
+     * Value for ffmpeg's -force_key_frames: n_forced counts keyframes already
+     * forced, so the next one is due at boundary number n_forced.
+     */
+    public String forceKeyFramesExpression() {
+        return String.format("expr:gte(t,if(eq(n_forced,0),0,%s+(n_forced-1)*%s))",
+                format(firstSegmentSeconds), format(targetSeconds));
+    }
+
+    /**
+     * Muxer arguments that cut segments on the policy's boundaries (multiples of
+     * the target when ffmpeg packages).
+     */
+    public List<String> hlsTimingArgs() {
+        return List.of("-hls_time", format(targetSeconds));
+    }
+
+    /**
+     * Whether a source's own keyframes sit on every boundary up to the end of the
+     * video, which is what stream-copying it as a rung requires.
+     *
+     * @param keyframeTimes keyframes of the whole video stream
+     */
+    public boolean isAligned(List<Double> keyframeTimes, Integer durationSeconds) {
+        if (keyframeTimes == null || keyframeTimes.isEmpty()) {
+            return false;
+        }
+        // A boundary past the last keyframe but before the end is a missing keyframe, not an unscanned one
+        double end = durationSeconds != null ? durationSeconds : keyframeTimes.get(keyframeTimes.size() - 1);
+        for (double boundary = firstSegmentSeconds; boundary < end; boundary += targetSeconds) {
+            if (!hasKeyframeNear(keyframeTimes, boundary)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Index of the segment a media timestamp falls in; timestamps within the
+     * keyframe tolerance before a boundary count as on it.
+     */
+    public int segmentIndexAt(double seconds) {
+        if (seconds < firstSegmentSeconds - keyframeToleranceSeconds) {
+            return 0;
+        }
+        return 1 + (int) Math.floor((seconds - firstSegmentSeconds + keyframeToleranceSeconds) / targetSeconds);
+    }
+
+    private boolean hasKeyframeNear(List<Double> keyframeTimes, double boundary) {
+        for (double time : keyframeTimes) {
+            if (Math.abs(time - boundary) <= keyframeToleranceSeconds) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String format(double seconds) {
+        return seconds == Math.rint(seconds) ? String.valueOf((long) seconds) : String.valueOf(seconds);
+    }
+}
@@ -0,0 +1,426 @@
+package com.pixl.backend.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.pixl.backend.dto.Mp4Index;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Prefetches the segments a player will ask for next. HLS playback is
+ * sequential, so a request for segment N of a rendition is followed by N+1,
+ * N+2, ...; loading those into the {@link SegmentCache} in the background keeps
+ * steady-state time-to-first-byte below a MinIO round trip.
+ *
+ * Segment order comes from the stored media playlist (segmented and single-file
+ * packaging) or the rendition's byte index (JIT packaging).
+ *
+ * The depth adapts additively: it grows while prefetched segments are being
+ * requested and shrinks while they go unused (viewers seeking or leaving).
+ * Outcomes are counted per time window; a prefetched segment not requested
+ * within a window counts as unused. The depth is halved, and prefetching
+ * paused, while the segment cache is turning loads away for lack of space.
+ */
+@Component
+public class SegmentPrefetcher {
+
+    // Fewer outcomes than this in a window leave the depth alone
+    private static final int MIN_WINDOW_OUTCOMES = 20;
+    private static final int PLAYLIST_CACHE_SIZE = 1000;
+    private static final int TRACKED_PREFETCHES = 10000;
+
+    private final MinioService minioService;
+    private final ObjectStatCache objectStatCache;
+    private final MediaDeliveryService mediaDeliveryService;
+    private final JitPackager jitPackager;
+    private final SegmentCache segmentCache;
+    private final ThreadPoolExecutor prefetchExecutor;
+    private final Map<String, List<SegmentRef>> playlistCache;
+    private final Map<String, Long> prefetchedKeys;   // key -> when it was scheduled
+    private final AtomicInteger depth;
+    private final Counter prefetchCounter;
+    private final Counter usedCounter;
+    private final Counter wastedCounter;
+    private final Counter pressureCounter;
+
+    private int usedInWindow;
+    private int wastedInWindow;
+
+    @Value("${app.prefetch.enabled}")
+    private boolean enabled;
+
+    @Value("${app.prefetch.min-depth}")
+    private int minDepth;
+
+    @Value("${app.prefetch.max-depth}")
+    private int maxDepth;
+
+    @Value("${app.prefetch.outcome-window-ms}")
+    private long outcomeWindowMs;
+
+    @Value("${app.prefetch.pressure-backoff-ms}")
+    private long pressureBackoffMs;
+
+    @Value("${minio.bucket.videos-transcoded}")
+    private String transcodedBucket;
+
+    public SegmentPrefetcher(MinioService minioService, ObjectStatCache objectStatCache,
+            MediaDeliveryService mediaDeliveryService, JitPackager jitPackager, SegmentCache segmentCache,
+            MeterRegistry meterRegistry,
+            @Value("${app.prefetch.initial-depth}") int initialDepth,
+            @Value("${app.prefetch.threads}") int threads,
+            @Value("${app.prefetch.queue-size}") int queueSize) {
+        this.minioService = minioService;
+        this.objectStatCache = objectStatCache;
+        this.mediaDeliveryService = mediaDeliveryService;
+        this.jitPackager = jitPackager;
+        this.segmentCache = segmentCache;
+        this.depth = new AtomicInteger(initialDepth);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        // Bounded queue, and work beyond it is dropped: prefetching is best effort
+        this.prefetchExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    Thread thread = new Thread(r, "segment-prefetch-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, this::dropped);
+
+        this.playlistCache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<SegmentRef>> eldest) {
+                return size() > PLAYLIST_CACHE_SIZE;
+            }
+        });
+        this.prefetchedKeys = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                if (size() > TRACKED_PREFETCHES) {
+                    recordOutcome(false);
+                    return true;
+                }
+                return false;
+            }
+        });
+
+        this.prefetchCounter = meterRegistry.counter("segment.prefetch.requests");
+        this.usedCounter = meterRegistry.counter("segment.prefetch.outcome", "result", "used");
+        this.wastedCounter = meterRegistry.counter("segment.prefetch.outcome", "result", "unused");
+        this.pressureCounter = meterRegistry.counter("segment.prefetch.memory.pressure");
+        Gauge.builder("segment.prefetch.depth", depth, AtomicInteger::get).register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    /**
+     * Called after a segment request is served. Records whether it was one we
+     * prefetched and schedules the following segments of the same rendition.
+     *
+     * @param range the request's Range header, or null for a whole-object request
+     */
+    public void onSegmentRequest(String videoId, String quality, String objectName, String range) {
+        if (!enabled) {
+            return;
+        }
+        long offset = rangeStart(range);
+        if (offset < 0) {
+            return;
+        }
+
+        try {
+            prefetchExecutor.execute(() -> schedule(videoId, quality, objectName, offset));
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    private void schedule(String videoId, String quality, String objectName, long offset) {
+        try {
+            List<SegmentRef> segments = segmentsOf(videoId, quality);
+            int current = indexOf(segments, objectName, offset);
+            if (current < 0) {
+                return;
+            }
+
+            SegmentRef requested = segments.get(current);
+            if (prefetchedKeys.remove(keyOf(requested)) != null) {
+                recordOutcome(true);
+            }
+
+            if (underCachePressure()) {
+                pressureCounter.increment();
+                depth.updateAndGet(d -> Math.max(minDepth, d / 2));
+                return;
+            }
+
+            int last = Math.min(segments.size() - 1, current + depth.get());
+            for (int i = current + 1; i <= last; i++) {
+                SegmentRef next = segments.get(i);
+                String key = keyOf(next);
+                if (prefetchedKeys.containsKey(key)) {
+                    continue;
+                }
+                prefetchedKeys.put(key, System.currentTimeMillis());
+                prefetchExecutor.execute(new Preload(next));
+            }
+        } catch (Exception e) {
+            System.err.println("[SegmentPrefetcher] Could not schedule prefetch for " + videoId + "/" + quality
+                    + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * A preload dropped by the full queue never ran, so it is neither used nor wasted.
+     */
+    private void dropped(Runnable task, ThreadPoolExecutor executor) {
+        if (task instanceof Preload preload) {
+            prefetchedKeys.remove(keyOf(preload.segment));
+        }
+    }
+
+    private void preload(SegmentRef segment) {
+        try {
+            ObjectStatCache.ObjectStat stat = objectStatCache.get(transcodedBucket, segment.objectName);
+            long length = segment.length >= 0 ? segment.length : stat.getSize();
+            if (mediaDeliveryService.preload(transcodedBucket, segment.objectName, segment.offset, length, stat)) {
+                prefetchCounter.increment();
+            } else {
+                prefetchedKeys.remove(keyOf(segment));
+            }
+        } catch (Exception e) {
+            prefetchedKeys.remove(keyOf(segment));
+            System.err.println("[SegmentPrefetcher] Prefetch of " + segment.objectName + " failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads the first count entries of a rendition (its initialization section
+     * counts as one) into the cache on the caller's thread, stopping before
+     * byteBudget would be exceeded. Returns the bytes the entries occupy.
+     */
+    public long warm(String videoId, String quality, int count, long byteBudget) throws Exception {
+        List<SegmentRef> segments = segmentsOf(videoId, quality);
+        long used = 0;
+        for (SegmentRef segment : segments.subList(0, Math.min(count, segments.size()))) {
+            ObjectStatCache.ObjectStat stat = objectStatCache.get(transcodedBucket, segment.objectName);
+            long length = segment.length >= 0 ? segment.length : stat.getSize();
+            if (used + length > byteBudget) {
+                break;
+            }
+            if (mediaDeliveryService.preload(transcodedBucket, segment.objectName, segment.offset, length, stat)) {
+                used += length;
+            }
+        }
+        return used;
+    }
+
+    private synchronized void recordOutcome(boolean used) {
+        if (used) {
+            usedCounter.increment();
+            usedInWindow++;
+        } else {
+            wastedCounter.increment();
+            wastedInWindow++;
+        }
+    }
+
+    /**
+     * Closes an outcome window: prefetches still unrequested after a full window
+     * count as unused, then the depth moves up or down by one on the window's
+     * hit rate.
+     */
+    @Scheduled(fixedDelayString = "${app.prefetch.outcome-window-ms}")
+    public void closeOutcomeWindow() {
+        if (!enabled) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - outcomeWindowMs;
+        synchronized (prefetchedKeys) {
+            Iterator<Long> scheduledAt = prefetchedKeys.values().iterator();
+            while (scheduledAt.hasNext()) {
+                if (scheduledAt.next() >= cutoff) {
+                    break;   // Insertion order, so the rest are newer
+                }
+                scheduledAt.remove();
+                recordOutcome(false);
+            }
+        }
+
+        synchronized (this) {
+            int outcomes = usedInWindow + wastedInWindow;
+            if (outcomes >= MIN_WINDOW_OUTCOMES) {
+                double hitRate = (double) usedInWindow / outcomes;
+                if (hitRate >= 0.8) {
+                    depth.updateAndGet(d -> Math.min(maxDepth, d + 1));
+                } else if (hitRate < 0.5) {
+                    depth.updateAndGet(d -> Math.max(minDepth, d - 1));
+                }
+            }
+            usedInWindow = 0;
+            wastedInWindow = 0;
+        }
+    }
+
+    /**
+     * Prefetched bytes go to the off-heap segment cache; once it turns loads
+     * away, prefetching would only compete with the loads viewers are waiting on.
+     */
+    private boolean underCachePressure() {
+        return System.currentTimeMillis() - segmentCache.getLastFullAt() < pressureBackoffMs;
+    }
+
+    private List<SegmentRef> segmentsOf(String videoId, String quality) throws Exception {
+        String key = videoId + "/" + quality;
+        List<SegmentRef> cached = playlistCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        List<SegmentRef> segments;
+        String playlistObjectName = videoId + "/hls/" + quality + "/playlist.m3u8";
+        if (minioService.fileExists(transcodedBucket, playlistObjectName)) {
+            segments = parsePlaylist(videoId + "/hls/" + quality + "/",
+                    new String(minioService.downloadFileAsBytes(transcodedBucket, playlistObjectName)));
+        } else {
+            Mp4Index index = jitPackager.getIndex(videoId, quality);
+            String objectName = JitPackager.renditionObjectName(videoId, quality);
+            segments = new ArrayList<>();
+            segments.add(new SegmentRef(objectName, 0, index.getInitLength()));
+            for (Mp4Index.Segment segment : index.getSegments()) {
+                segments.add(new SegmentRef(objectName, segment.getOffset(), segment.getLength()));
+            }
+        }
+
+        playlistCache.put(key, segments);
+        return segments;
+    }
+
+    /**
+     * Initialization section (if any) and media segments of a VOD playlist in
+     * order, with their byte ranges when the playlist uses byte ranges.
+     */
+    private List<SegmentRef> parsePlaylist(String objectPrefix, String playlist) {
+        List<SegmentRef> segments = new ArrayList<>();
+        long rangeLength = -1;
+        long rangeOffset = 0;
+        long nextOffset = 0;
+
+        for (String rawLine : playlist.split("\n")) {
+            String line = rawLine.trim();
+            if (line.startsWith("#EXT-X-MAP:")) {
+                String uri = attribute(line, "URI");
+                String byteRange = attribute(line, "BYTERANGE");
+                if (uri != null) {
+                    int at = byteRange == null ? -1 : byteRange.indexOf('@');
+                    segments.add(byteRange == null
+                            ? new SegmentRef(objectPrefix + uri, 0, -1)
+                            : new SegmentRef(objectPrefix + uri, at < 0 ? 0 : Long.parseLong(byteRange.substring(at + 1)),
+                                    Long.parseLong(at < 0 ? byteRange : byteRange.substring(0, at))));
+                }
+            } else if (line.startsWith("#EXT-X-BYTERANGE:")) {
+                String spec = line.substring("#EXT-X-BYTERANGE:".length());
+                int at = spec.indexOf('@');
+                rangeLength = Long.parseLong(at < 0 ? spec : spec.substring(0, at));
+                // Without an offset the range continues from the previous one
+                rangeOffset = at < 0 ? nextOffset : Long.parseLong(spec.substring(at + 1));
+            } else if (!line.isEmpty() && !line.startsWith("#")) {
+                segments.add(new SegmentRef(objectPrefix + line, rangeLength >= 0 ? rangeOffset : 0, rangeLength));
+                nextOffset = rangeLength >= 0 ? rangeOffset + rangeLength : 0;
+                rangeLength = -1;
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Value of a quoted attribute of a playlist tag, or null if absent.
+     */
+    private static String attribute(String tag, String name) {
+        int start = tag.indexOf(name + "=\"");
+        if (start < 0) {
+            return null;
+        }
+        start += name.length() + 2;
+        int end = tag.indexOf('"', start);
+        return end < 0 ? null : tag.substring(start, end);
+    }
+
+    private int indexOf(List<SegmentRef> segments, String objectName, long offset) {
+        for (int i = 0; i < segments.size(); i++) {
+            SegmentRef segment = segments.get(i);
+            if (segment.objectName.equals(objectName) && segment.offset == offset) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String keyOf(SegmentRef segment) {
+        return segment.objectName + "@" + segment.offset;
+    }
+
+    /**
+     * Start offset of a "bytes=start-..." range, 0 for no range, -1 if it cannot
+     * be matched to a segment (suffix or multi-range).
+     */
+    private static long rangeStart(String range) {
+        if (range == null || !range.startsWith("bytes=")) {
+            return 0;
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash <= 0 || spec.contains(",")) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(spec.substring(0, dash).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private class Preload implements Runnable {
+        final SegmentRef segment;
+
+        Preload(SegmentRef segment) {
+            this.segment = segment;
+        }
+
+        @Override
+        public void run() {
+            preload(segment);
+        }
+    }
+
+    private static class SegmentRef {
+        final String objectName;
+        final long offset;
+        final long length;   // -1 for the whole object
+
+        SegmentRef(String objectName, long offset, long length) {
+            this.objectName = objectName;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.pixl.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Uploads HLS segment files to object storage on a bounded pool, retrying each
+ * segment independently. A {@link Batch} collects the segments of one rendition
+ * so the caller can publish its playlist only once every segment is stored.
+ * Segments may be submitted while ffmpeg is still writing later ones. Submitting
+ * never blocks: a batch queues segments and starts at most its in-flight limit
+ * of uploads at a time, so one rendition cannot take over the shared pool.
+ */
+@Component
+public class SegmentUploader {
+
+    private final MinioService minioService;
+    private final ExecutorService uploadExecutor;
+    private final Counter retryCounter;
+    private final DistributionSummary throughputSummary;
+
+    @Value("${app.hls.upload-max-attempts}")
+    private int maxAttempts;
+
+    @Value("${app.hls.upload-retry-backoff-ms}")
+    private long retryBackoffMs;
+
+    public SegmentUploader(MinioService minioService, MeterRegistry meterRegistry,
+            @Value("${app.hls.upload-concurrency}") int concurrency) {
+        this.minioService = minioService;
+        this.retryCounter = meterRegistry.counter("hls.segment.upload.retries");
+        this.throughputSummary = DistributionSummary.builder("hls.rendition.upload.throughput")
+                .baseUnit("bytes_per_second")
+                .register(meterRegistry);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.uploadExecutor = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread thread = new Thread(r, "segment-upload-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        uploadExecutor.shutdownNow();
+    }
+
+    public Batch newBatch(String bucket, String objectPrefix, int maxInFlight) {
+        return new Batch(bucket, objectPrefix, maxInFlight);
+    }
+
+    public class Batch {
+        private final String bucket;
+        private final String objectPrefix;
+        private final int maxInFlight;
+        private final List<Future<?>> uploads = new CopyOnWriteArrayList<>();
+        // Guarded by this: file names started or queued, segments awaiting a free upload slot
+        private final Set<String> submitted = new HashSet<>();
+        private final ArrayDeque<Segment> queued = new ArrayDeque<>();
+        private int inFlight;
+        private final AtomicLong bytes = new AtomicLong();
+        private final long startNanos = System.nanoTime();
+
+        private Batch(String bucket, String objectPrefix, int maxInFlight) {
+            this.bucket = bucket;
+            this.objectPrefix = objectPrefix;
+            this.maxInFlight = maxInFlight;
+        }
+
+        /**
+         * Queues a segment file for upload under objectPrefix + its file name and
+         * returns without waiting; the upload starts once the batch is below its
+         * in-flight limit. Files already submitted are ignored.
+         *
+         * @param deleteAfterUpload remove the local file once it is stored
+         */
+        public synchronized void submit(Path file, String contentType, boolean deleteAfterUpload) {
+            String fileName = file.getFileName().toString();
+            if (submitted.contains(fileName) || queued.stream().anyMatch(segment -> segment.fileName.equals(fileName))) {
+                return;
+            }
+            queued.addLast(new Segment(file, fileName, contentType, deleteAfterUpload));
+            dispatch();
+        }
+
+        private synchronized void dispatch() {
+            while (inFlight < maxInFlight && !queued.isEmpty()) {
+                Segment segment = queued.removeFirst();
+                inFlight++;
+                submitted.add(segment.fileName);
+                try {
+                    uploads.add(uploadExecutor.submit(() -> {
+                        try {
+                            upload(segment.file, objectPrefix + segment.fileName, segment.contentType);
+                            if (segment.deleteAfterUpload) {
+                                Files.deleteIfExists(segment.file);
+                            }
+                            return null;
+                        } finally {
+                            finished();
+                        }
+                    }));
+                } catch (RejectedExecutionException e) {
+                    uploads.add(CompletableFuture.failedFuture(e));
+                    inFlight--;
+                }
+            }
+            notifyAll();
+        }
+
+        private synchronized void finished() {
+            inFlight--;
+            dispatch();
+        }
+
+        /**
+         * Waits for every submitted segment, queued ones included. Throws with the
+         * first failure after all uploads have settled, so no upload is still
+         * running when the caller cleans up.
+         */
+        public void await() throws Exception {
+            synchronized (this) {
+                while (!queued.isEmpty()) {
+                    wait();
+                }
+            }
+            Exception failure = settle();
+            if (failure != null) {
+                throw failure;
+            }
+
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+            if (elapsed.toMillis() > 0) {
+                throughputSummary.record(bytes.get() * 1000.0 / elapsed.toMillis());
+            }
+        }
+
+        /**
+         * Drops segments not yet started, waits for the uploads that are running
+         * and returns the first failure, or null.
+         */
+        public Exception settle() throws InterruptedException {
+            synchronized (this) {
+                queued.clear();
+                notifyAll();
+            }
+            Exception failure = null;
+            for (Future<?> upload : uploads) {
+                try {
+                    upload.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof Exception cause ? cause : e;
+                    }
+                }
+            }
+            return failure;
+        }
+
+        public int getSegmentCount() {
+            return uploads.size();
+        }
+
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        private void upload(Path file, String objectName, String contentType) throws Exception {
+            long size = Files.size(file);
+            for (int attempt = 1; ; attempt++) {
+                try (InputStream stream = Files.newInputStream(file)) {
+                    minioService.uploadFile(bucket, objectName, stream, size, contentType);
+                    bytes.addAndGet(size);
+                    return;
+                } catch (Exception e) {
+                    if (attempt >= maxAttempts) {
+                        throw new RuntimeException("Failed to upload segment " + objectName
+                                + " after " + attempt + " attempts: " + e.getMessage(), e);
+                    }
+                    retryCounter.increment();
+                    Thread.sleep(retryBackoffMs * attempt);
+                }
+            }
+        }
+    }
+
+    private static class Segment {
+        final Path file;
+        final String fileName;
+        final String contentType;
+        final boolean deleteAfterUpload;
+
+        Segment(Path file, String fileName, String contentType, boolean deleteAfterUpload) {
+            this.file = file;
+            this.fileName = fileName;
+            this.contentType = contentType;
+            this.deleteAfterUpload = deleteAfterUpload;
+        }
+    }
+}
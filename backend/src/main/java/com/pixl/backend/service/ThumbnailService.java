@@ -1,11 +1,11 @@
 package com.pixl.backend.service;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -23,6 +23,7 @@ public class ThumbnailService {
     private final MinioService minioService;
     private final VideoRepository videoRepository;
     private final Tracer tracer;
+    private final FfmpegRunner ffmpegRunner;
 
     @Value("${minio.bucket.videos-original}")
     private String originalBucket;
@@ -30,10 +31,15 @@ public class ThumbnailService {
     @Value("${minio.bucket.thumbnails}")
     private String thumbnailsBucket;
 
-    public ThumbnailService(MinioService minioService, VideoRepository videoRepository, Tracer tracer) {
+    @Value("${app.ffmpeg.thumbnail-timeout-seconds}")
+    private long thumbnailTimeoutSeconds;
+
+    public ThumbnailService(MinioService minioService, VideoRepository videoRepository, Tracer tracer,
+            FfmpegRunner ffmpegRunner) {
         this.minioService = minioService;
         this.videoRepository = videoRepository;
         this.tracer = tracer;
+        this.ffmpegRunner = ffmpegRunner;
     }
 
     public void generateThumbnail(String videoId) throws Exception {
@@ -65,7 +71,7 @@ public class ThumbnailService {
             try (Scope extractScope = extractSpan.makeCurrent()) {
                 thumbnailPath = Files.createTempFile("thumb-", ".jpg");
 
-                ProcessBuilder processBuilder = new ProcessBuilder(
+                List<String> command = List.of(
                         "ffmpeg",
                         "-i", inputPath.toString(),
                         "-ss", "00:00:02",
@@ -77,12 +83,11 @@ public class ThumbnailService {
 
                 extractSpan.addEvent("FFmpeg thumbnail extraction started");
 
-                Process process = processBuilder.start();
-                int exitCode = process.waitFor();
+                FfmpegRunner.Result result = ffmpegRunner.run("thumbnail", command,
+                        Duration.ofSeconds(thumbnailTimeoutSeconds), null);
 
-                if (exitCode != 0) {
-                    String error = readProcessError(process);
-                    throw new RuntimeException("FFmpeg thumbnail failed: " + error);
+                if (!result.isSuccess()) {
+                    throw new RuntimeException("FFmpeg thumbnail failed: " + result.describeFailure());
                 }
 
                 long thumbSize = Files.size(thumbnailPath);
@@ -99,7 +104,7 @@ public class ThumbnailService {
             Span spriteSpan = tracer.spanBuilder("generate-thumbnail-sprite").startSpan();
             Path spritePath = Files.createTempFile("sprite-", ".jpg");
             try (Scope spriteScope = spriteSpan.makeCurrent()) {
-                ProcessBuilder spriteBuilder = new ProcessBuilder(
+                List<String> spriteCommand = List.of(
                         "ffmpeg",
                         "-y",
                         "-i", inputPath.toString(),
@@ -108,12 +113,11 @@ public class ThumbnailService {
                         spritePath.toString());
 
                 spriteSpan.addEvent("FFmpeg thumbnail sprite generation started");
-                Process spriteProcess = spriteBuilder.start();
-                int spriteExitCode = spriteProcess.waitFor();
+                FfmpegRunner.Result spriteResult = ffmpegRunner.run("sprite", spriteCommand,
+                        Duration.ofSeconds(thumbnailTimeoutSeconds), null);
 
-                if (spriteExitCode != 0) {
-                    String error = readProcessError(spriteProcess);
-                    throw new RuntimeException("FFmpeg thumbnail sprite generation failed: " + error);
+                if (!spriteResult.isSuccess()) {
+                    throw new RuntimeException("FFmpeg thumbnail sprite generation failed: " + spriteResult.describeFailure());
                 }
                 spriteSpan.addEvent("Thumbnail sprite generated");
             } finally {
@@ -180,20 +184,6 @@ public class ThumbnailService {
         }
     }
 
-    private String readProcessError(Process process) {
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(process.getErrorStream()))) {
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line).append("\n");
-            }
-            return sb.toString();
-        } catch (IOException e) {
-            return "Could not read error stream";
-        }
-    }
-
     private Path generateVtt(
             String videoId,
             int durationSeconds,
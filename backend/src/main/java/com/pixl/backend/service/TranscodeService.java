@@ -7,19 +7,25 @@ import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.StatusCode;
 import io.opentelemetry.api.trace.Tracer;
 import io.opentelemetry.context.Scope;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.pixl.backend.dto.TranscodeMessage;
+import com.pixl.backend.model.OutboxMessage;
 import com.pixl.backend.model.TranscodeJob;
 import com.pixl.backend.model.TranscodeStatus;
 import com.pixl.backend.model.Video;
 import com.pixl.backend.model.VideoStatus;
+import com.pixl.backend.repository.OutboxMessageRepository;
 import com.pixl.backend.repository.TranscodeJobRepository;
 import com.pixl.backend.repository.VideoRepository;
 
-import java.util.Arrays;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.List;
 
 
@@ -27,70 +33,72 @@ import java.util.List;
 public class TranscodeService {
     private final TranscodeJobRepository transcodeJobRepository;
     private final VideoRepository videoRepository;
-    private final RabbitTemplate rabbitTemplate;
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final OutboxRelay outboxRelay;
     private final Tracer tracer;
     private final Counter jobQueuedCounter;
+    private final Counter jobRequeuedCounter;
     private final ProgressNotificationService progressNotificationService;
+    private final EncodeProfiles encodeProfiles;
 
     @Value("${app.transcode.queue}")
     private String transcodeQueue;
     
-    @Value("${app.transcode.qualities}")
-    private String qualities;
-
-    public TranscodeService(TranscodeJobRepository transcodeJobRepository, VideoRepository videoRepository, RabbitTemplate rabbitTemplate, Tracer tracer, MeterRegistry meterRegistry, ProgressNotificationService progressNotificationService) {
+    public TranscodeService(TranscodeJobRepository transcodeJobRepository, VideoRepository videoRepository, OutboxMessageRepository outboxMessageRepository, OutboxRelay outboxRelay, Tracer tracer, MeterRegistry meterRegistry, ProgressNotificationService progressNotificationService, EncodeProfiles encodeProfiles) {
         this.transcodeJobRepository = transcodeJobRepository;
         this.videoRepository = videoRepository;
-        this.rabbitTemplate = rabbitTemplate;
+        this.outboxMessageRepository = outboxMessageRepository;
+        this.outboxRelay = outboxRelay;
         this.tracer = tracer;
         this.jobQueuedCounter = meterRegistry.counter("transcode.job.queued");
+        this.jobRequeuedCounter = meterRegistry.counter("transcode.job.requeued");
         this.progressNotificationService = progressNotificationService;
+        this.encodeProfiles = encodeProfiles;
     }
 
-    public void queueTranscodeJobs(String videoId){
+    /**
+     * Creates all jobs and their outbox rows in one transaction; the relay publishes
+     * them after commit, so a broker outage can no longer leave QUEUED jobs unpublished.
+     */
+    @Transactional
+    public void queueTranscodeJobs(String videoId, List<String> qualityLevels){
         Span span = tracer.spanBuilder("TranscodeService.queueTranscodeJobs").startSpan();
         try (Scope scope = span.makeCurrent()) {
             span.setAttribute("video.id", videoId);
             Video video = videoRepository.findById(videoId).orElseThrow(() -> new RuntimeException("Video not found"));
 
-            video.setStatus(VideoStatus.PROCESSING);
-            videoRepository.save(video);
+            // Extra renditions for an already published video must not take it offline
+            if (video.getStatus() != VideoStatus.READY) {
+                video.setStatus(VideoStatus.PROCESSING);
+                videoRepository.save(video);
+            }
 
-            List<String> qualityLevels = Arrays.asList(qualities.split(","));
             span.setAttribute("quality.count", qualityLevels.size());
-            progressNotificationService.sendTranscodeQueued(videoId);
-
-            for(String quality: qualityLevels){
-                Span jobSpan = tracer.spanBuilder("TranscodeService.createTranscodeJob").startSpan();
-                try(Scope jobscope = jobSpan.makeCurrent()){
-                    jobSpan.setAttribute("quality", quality);
-
-                    TranscodeJob job = new TranscodeJob(videoId, quality.trim());
-                    job = transcodeJobRepository.save(job);
 
-                    TranscodeMessage message = new TranscodeMessage(
-                        job.getId(),
-                        videoId,
-                        quality.trim(),
-                        video.getFilePath()
-                    );
+            String lane = encodeProfiles.laneAt(LocalTime.now());
+            span.setAttribute("lane", lane);
 
-                    message.setTraceId(Span.current().getSpanContext().getTraceId());
-                    message.setSpanId(Span.current().getSpanContext().getSpanId());
-
-                    rabbitTemplate.convertAndSend(transcodeQueue, message);
+            List<TranscodeJob> jobs = new ArrayList<>();
+            for (String quality : qualityLevels) {
+                TranscodeJob job = new TranscodeJob(videoId, quality.trim());
+                job.setLane(lane);
+                job.setEncodeProfile(encodeProfiles.resolve(job.getQuality(), lane));
+                jobs.add(job);
+            }
+            jobs = transcodeJobRepository.saveAll(jobs);
 
-                    jobQueuedCounter.increment();
-                    jobSpan.addEvent("Job queued to RabbitMQ");
+            List<OutboxMessage> outbox = new ArrayList<>();
+            for (TranscodeJob job : jobs) {
+                outbox.add(toOutboxMessage(job, video.getFilePath()));
+            }
+            outboxMessageRepository.saveAll(outbox);
 
-                    System.out.println("[TranscodeService] Queued transcode job: " + job.getId() + " (" + quality + ")");
+            jobQueuedCounter.increment(jobs.size());
+            span.addEvent("Transcode jobs written to outbox");
 
-                } finally {
-                    jobSpan.end();
-                }
-            }
+            afterCommit(() -> progressNotificationService.sendTranscodeQueued(videoId));
 
-            span.addEvent("All transcode jobs queued");
+            System.out.println("[TranscodeService] Queued " + jobs.size() + " transcode jobs for video: " + videoId);
 
         } catch ( Exception e) {
 
@@ -105,6 +113,71 @@ public class TranscodeService {
         }
     }
 
+    /**
+     * Returns a job whose lease expired to QUEUED and writes its outbox row in the
+     * same transaction. Does nothing if another sweeper got there first.
+     */
+    @Transactional
+    public boolean requeueExpiredJob(TranscodeJob job, LocalDateTime now) {
+        Span span = tracer.spanBuilder("TranscodeService.requeueExpiredJob").startSpan();
+        try (Scope scope = span.makeCurrent()) {
+            span.setAttribute("job.id", job.getId());
+            span.setAttribute("video.id", job.getVideoId());
+            span.setAttribute("quality", job.getQuality());
+
+            if (transcodeJobRepository.requeueExpired(job.getId(), now) == 0) {
+                return false;
+            }
+
+            Video video = videoRepository.findById(job.getVideoId())
+                    .orElseThrow(() -> new RuntimeException("Video not found"));
+
+            outboxMessageRepository.save(toOutboxMessage(job, video.getFilePath()));
+            jobRequeuedCounter.increment();
+            span.addEvent("Job requeued through outbox");
+
+            afterCommit(() -> progressNotificationService.sendTranscodeQueued(job.getVideoId()));
+
+            System.out.println("[TranscodeService] Requeued transcode job: " + job.getId() + " (" + job.getQuality() + ")");
+            return true;
+        } catch (Exception e) {
+            span.recordException(e);
+            span.setStatus(StatusCode.ERROR, e.getMessage());
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
+    private OutboxMessage toOutboxMessage(TranscodeJob job, String inputPath) {
+        TranscodeMessage message = new TranscodeMessage(
+            job.getId(),
+            job.getVideoId(),
+            job.getQuality(),
+            inputPath
+        );
+        message.setEncodeProfile(job.getEncodeProfile());
+
+        message.setTraceId(Span.current().getSpanContext().getTraceId());
+        message.setSpanId(Span.current().getSpanContext().getSpanId());
+
+        return new OutboxMessage(transcodeQueue, outboxRelay.serialize(message));
+    }
+
+    private void afterCommit(Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    outboxRelay.relay();
+                    action.run();
+                } catch (Exception e) {
+                    // Rows stay in the outbox and the scheduled relay retries them
+                    System.err.println("[TranscodeService] Post-commit relay failed: " + e.getMessage());
+                }
+            }
+        });
+    }
 
     public List<TranscodeJob> getJobsForVideo(String videoId) {
         return transcodeJobRepository.findByVideoId(videoId);
@@ -0,0 +1,101 @@
+package com.pixl.backend.service;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.pixl.backend.model.Video;
+import com.pixl.backend.repository.VideoRepository;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.api.trace.Tracer;
+
+/**
+ * The probe stage of the processing pipeline: reads the uploaded original's
+ * metadata and runs the complexity pre-pass that picks encode parameters.
+ * Runs on the pipeline pool, so the sampled encodes never hold up the upload
+ * request.
+ */
+@Service
+public class VideoProbeService {
+    private final MinioService minioService;
+    private final VideoRepository videoRepository;
+    private final FFProbeService ffProbeService;
+    private final ComplexityAnalysisService complexityAnalysisService;
+    private final Tracer tracer;
+
+    @Value("${minio.bucket.videos-original}")
+    private String originalBucket;
+
+    public VideoProbeService(MinioService minioService, VideoRepository videoRepository,
+            FFProbeService ffProbeService, ComplexityAnalysisService complexityAnalysisService, Tracer tracer) {
+        this.minioService = minioService;
+        this.videoRepository = videoRepository;
+        this.ffProbeService = ffProbeService;
+        this.complexityAnalysisService = complexityAnalysisService;
+        this.tracer = tracer;
+    }
+
+    /**
+     * Metadata is best effort: a video that cannot be probed still transcodes,
+     * just without a duration or complexity score.
+     */
+    public void probe(String videoId) {
+        Span probeSpan = tracer.spanBuilder("ffprobe-metadata-extraction").startSpan();
+        Path tempVideoPath = null;
+        try (Scope probeScope = probeSpan.makeCurrent()) {
+            Video video = videoRepository.findById(videoId)
+                    .orElseThrow(() -> new RuntimeException("Video not found"));
+
+            tempVideoPath = Files.createTempFile("video-metadata-", ".mp4");
+            try (InputStream stream = minioService.downloadFile(originalBucket, video.getFilePath())) {
+                Files.copy(stream, tempVideoPath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            FFProbeService.VideoMetadata metadata = ffProbeService.extractMetadata(tempVideoPath);
+            probeSpan.setAttribute("video.duration.seconds", metadata.getDurationSeconds());
+            probeSpan.setAttribute("video.width", metadata.getWidth());
+            probeSpan.setAttribute("video.height", metadata.getHeight());
+            probeSpan.addEvent("FFProbe metadata extraction completed" + metadata.toString());
+
+            video.setDurationSeconds(metadata.getDurationSeconds());
+            if (video.getComplexityScore() == null) {
+                video.setComplexityScore(analyzeComplexity(tempVideoPath, metadata.getDurationSeconds()));
+            }
+            videoRepository.save(video);
+        } catch (Exception e) {
+            probeSpan.recordException(e);
+            System.err.println("⚠️  Failed to extract video metadata: " + e.getMessage());
+        } finally {
+            deleteQuietly(tempVideoPath);
+            probeSpan.end();
+        }
+    }
+
+    /**
+     * Analysis is an optimisation only; without a score the ladder uses its defaults.
+     */
+    private Double analyzeComplexity(Path videoPath, Integer durationSeconds) {
+        try {
+            return complexityAnalysisService.analyze(videoPath, durationSeconds);
+        } catch (Exception e) {
+            System.err.println("⚠️  Complexity analysis failed, using default encode settings: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (Exception e) {
+            System.err.println("[VideoProbeService] Could not delete " + path + ": " + e.getMessage());
+        }
+    }
+}
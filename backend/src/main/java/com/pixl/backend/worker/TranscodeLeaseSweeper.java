@@ -0,0 +1,79 @@
+package com.pixl.backend.worker;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.pixl.backend.model.TranscodeJob;
+import com.pixl.backend.model.TranscodeStatus;
+import com.pixl.backend.repository.TranscodeJobRepository;
+import com.pixl.backend.service.PipelineOrchestrator;
+import com.pixl.backend.service.ProgressNotificationService;
+import com.pixl.backend.service.TranscodeService;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Recovers transcode jobs whose worker stopped heartbeating. Jobs under the retry
+ * limit go back to QUEUED and are republished; the rest are marked FAILED.
+ */
+@Component
+public class TranscodeLeaseSweeper {
+
+    private final TranscodeJobRepository transcodeJobRepository;
+    private final PipelineOrchestrator pipelineOrchestrator;
+    private final TranscodeService transcodeService;
+    private final ProgressNotificationService progressNotificationService;
+    private final Counter leaseExpiredCounter;
+
+    @Value("${app.transcode.max-retries}")
+    private int maxRetries;
+
+    public TranscodeLeaseSweeper(TranscodeJobRepository transcodeJobRepository,
+            PipelineOrchestrator pipelineOrchestrator,
+            TranscodeService transcodeService,
+            ProgressNotificationService progressNotificationService,
+            MeterRegistry meterRegistry) {
+        this.transcodeJobRepository = transcodeJobRepository;
+        this.pipelineOrchestrator = pipelineOrchestrator;
+        this.transcodeService = transcodeService;
+        this.progressNotificationService = progressNotificationService;
+        this.leaseExpiredCounter = meterRegistry.counter("transcode.lease.expired");
+    }
+
+    @Scheduled(fixedDelayString = "${app.transcode.lease-sweep-interval-ms}")
+    public void sweepExpiredLeases() {
+        LocalDateTime now = LocalDateTime.now();
+        List<TranscodeJob> expired = transcodeJobRepository
+                .findByStatusAndLeaseExpiresAtBefore(TranscodeStatus.PROCESSING, now);
+
+        for (TranscodeJob job : expired) {
+            try {
+                recover(job, now);
+            } catch (Exception e) {
+                System.err.println("[TranscodeLeaseSweeper] Failed to recover job " + job.getId() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void recover(TranscodeJob job, LocalDateTime now) {
+        leaseExpiredCounter.increment();
+        System.out.println("[TranscodeLeaseSweeper] Lease expired for job " + job.getId()
+                + " (" + job.getQuality() + ") held by worker " + job.getWorkerId());
+
+        if (job.getRetryCount() >= maxRetries) {
+            // Conditional update: another sweeper instance may have handled it already
+            if (transcodeJobRepository.failExpired(job.getId(), now, "Lease expired after " + maxRetries + " retries") == 1) {
+                progressNotificationService.sendTranscodeFailed(job.getVideoId(), job.getQuality(), "worker lease expired");
+                pipelineOrchestrator.failStage(job.getVideoId(),
+                        PipelineOrchestrator.transcodeStage(job.getQuality()), "worker lease expired");
+            }
+            return;
+        }
+
+        transcodeService.requeueExpiredJob(job, now);
+    }
+}
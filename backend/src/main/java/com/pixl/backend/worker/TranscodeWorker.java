@@ -11,28 +11,35 @@ import io.opentelemetry.api.trace.TraceState;
 import io.opentelemetry.api.trace.Tracer;
 import io.opentelemetry.context.Context;
 import io.opentelemetry.context.Scope;
+import jakarta.annotation.PreDestroy;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 
+import com.rabbitmq.client.Channel;
+
 import com.pixl.backend.dto.TranscodeMessage;
 import com.pixl.backend.model.TranscodeJob;
-import com.pixl.backend.model.TranscodeStatus;
-import com.pixl.backend.model.Video;
-import com.pixl.backend.model.VideoStatus;
 import com.pixl.backend.repository.TranscodeJobRepository;
 import com.pixl.backend.repository.VideoRepository;
+import com.pixl.backend.service.FFProbeService;
 import com.pixl.backend.service.FFmpegService;
-import com.pixl.backend.service.HLSService;
+import com.pixl.backend.service.JitPackager;
 import com.pixl.backend.service.MinioService;
+import com.pixl.backend.service.PipelineOrchestrator;
 import com.pixl.backend.service.ProgressNotificationService;
 
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
-import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class TranscodeWorker {
@@ -41,12 +48,16 @@ public class TranscodeWorker {
     private final VideoRepository videoRepository;
     private final MinioService minioService;
     private final FFmpegService ffmpegService;
+    private final FFProbeService ffProbeService;
     private final Tracer tracer;
     private final Timer transcodeTimer;
     private final Counter transcodeSuccessCounter;
     private final Counter transcodeFailureCounter;
-    private final HLSService hlsService;
+    private final Counter duplicateDeliveryCounter;
+    private final PipelineOrchestrator pipelineOrchestrator;
     private final ProgressNotificationService progressNotificationService;
+    private final MeterRegistry meterRegistry;
+    private final JitPackager jitPackager;
 
     @Value("${minio.bucket.videos-original}")
     private String originalBucket;
@@ -54,32 +65,60 @@ public class TranscodeWorker {
     @Value("${minio.bucket.videos-transcoded}")
     private String transcodedBucket;
 
+    @Value("${app.transcode.lease-seconds}")
+    private long leaseSeconds;
+
+    @Value("${app.transcode.heartbeat-interval-seconds}")
+    private long heartbeatIntervalSeconds;
+
     private final String workerId = UUID.randomUUID().toString();
 
+    private final ScheduledExecutorService heartbeatScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "transcode-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     public TranscodeWorker(TranscodeJobRepository transcodeJobRepository,
             VideoRepository videoRepository,
             MinioService minioService,
             FFmpegService ffmpegService,
+            FFProbeService ffProbeService,
             Tracer tracer,
             MeterRegistry meterRegistry,
-            HLSService hlsService,
-            ProgressNotificationService progressNotificationService) {
+            PipelineOrchestrator pipelineOrchestrator,
+            ProgressNotificationService progressNotificationService,
+            JitPackager jitPackager) {
         this.transcodeJobRepository = transcodeJobRepository;
         this.videoRepository = videoRepository;
         this.minioService = minioService;
         this.ffmpegService = ffmpegService;
+        this.ffProbeService = ffProbeService;
         this.tracer = tracer;
         this.transcodeTimer = meterRegistry.timer("transcode.duration");
         this.transcodeSuccessCounter = meterRegistry.counter("transcode.success");
         this.transcodeFailureCounter = meterRegistry.counter("transcode.failure");
-        this.hlsService = hlsService;
+        this.duplicateDeliveryCounter = meterRegistry.counter("transcode.duplicate.delivery");
+        this.pipelineOrchestrator = pipelineOrchestrator;
         this.progressNotificationService = progressNotificationService;
+        this.meterRegistry = meterRegistry;
+        this.jitPackager = jitPackager;
 
         System.out.println("🤖 Transcode Worker started: " + workerId);
     }
 
+    @PreDestroy
+    public void shutdown() {
+        heartbeatScheduler.shutdownNow();
+    }
+
+    /**
+     * Messages are acked manually once the job reached a terminal state, so a
+     * worker dying mid-encode leaves the message unacked and RabbitMQ redelivers it.
+     */
     @RabbitListener(queues = "${app.transcode.queue}", concurrency = "2")
-    public void processTranscodeJob(TranscodeMessage message) {
+    public void processTranscodeJob(TranscodeMessage message, Channel channel,
+            @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) {
         SpanContext parentSpanContext = SpanContext.createFromRemoteParent(
                 message.getTraceId(),
                 message.getSpanId(),
@@ -101,6 +140,11 @@ public class TranscodeWorker {
             System.out.println("[TranscodeWorker] Processing transcode job: " + message.getJobId() +
                     " (" + message.getQuality() + ")");
 
+            if (!claimJob(message.getJobId())) {
+                span.addEvent("Duplicate delivery acknowledged");
+                return;
+            }
+
             transcodeTimer.record(() -> {
                 try {
                     executeTranscode(message, span);
@@ -115,17 +159,78 @@ public class TranscodeWorker {
             handleTranscodeFailure(message.getJobId(), e);
         } finally {
             span.end();
+            acknowledge(channel, deliveryTag, message.getJobId());
+        }
+    }
+
+    private void acknowledge(Channel channel, long deliveryTag, String jobId) {
+        try {
+            channel.basicAck(deliveryTag, false);
+        } catch (Exception e) {
+            System.err.println("[TranscodeWorker] Failed to ack job " + jobId + ": " + e.getMessage());
+        }
+    }
+
+    private ScheduledFuture<?> startHeartbeat(String jobId) {
+        return heartbeatScheduler.scheduleAtFixedRate(() -> {
+            try {
+                int updated = transcodeJobRepository.extendLease(jobId, workerId,
+                        LocalDateTime.now().plusSeconds(leaseSeconds));
+                if (updated == 0) {
+                    System.err.println("[TranscodeWorker] Lost lease on job " + jobId);
+                }
+            } catch (Exception e) {
+                System.err.println("[TranscodeWorker] Heartbeat failed for job " + jobId + ": " + e.getMessage());
+            }
+        }, heartbeatIntervalSeconds, heartbeatIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Compare-and-set QUEUED (or PROCESSING with an expired lease) to PROCESSING for
+     * this worker. Redelivered messages for jobs that are completed or actively
+     * owned elsewhere fail the CAS and are acked without re-encoding.
+     */
+    private boolean claimJob(String jobId) {
+        LocalDateTime now = LocalDateTime.now();
+        if (transcodeJobRepository.claim(jobId, workerId, now, now.plusSeconds(leaseSeconds)) == 1) {
+            return true;
         }
+
+        duplicateDeliveryCounter.increment();
+        String status = transcodeJobRepository.findById(jobId)
+                .map(job -> job.getStatus() + " on worker " + job.getWorkerId())
+                .orElse("missing");
+        System.out.println("[TranscodeWorker] Skipping duplicate delivery for job " + jobId + " (" + status + ")");
+        return false;
     }
 
     private void executeTranscode(TranscodeMessage message, Span parentSpan) throws Exception {
-        TranscodeJob job = transcodeJobRepository.findById(message.getJobId())
-                .orElseThrow(() -> new RuntimeException("Job not found"));
+        boolean completed;
+        ScheduledFuture<?> heartbeat = startHeartbeat(message.getJobId());
+        try {
+            completed = transcodeAndUpload(message, parentSpan);
+        } finally {
+            heartbeat.cancel(false);
+        }
+
+        if (!completed) {
+            System.err.println("[TranscodeWorker] Lost ownership of job " + message.getJobId() + ", discarding result");
+            parentSpan.addEvent("Job ownership lost before completion");
+            return;
+        }
+
+        progressNotificationService.sendTranscodeComplete(message.getVideoId(), message.getQuality());
+        pipelineOrchestrator.completeStage(message.getVideoId(),
+                PipelineOrchestrator.transcodeStage(message.getQuality()));
+
+        transcodeSuccessCounter.increment();
+        parentSpan.addEvent("Transcode job completed successfully");
 
-        job.setStatus(TranscodeStatus.PROCESSING);
-        job.setWorkerId(workerId);
-        job.setStartedAt(LocalDateTime.now());
-        transcodeJobRepository.save(job);
+        System.out.println("✅ Completed transcode job: " + message.getJobId() +
+                " (" + message.getQuality() + ")");
+    }
+
+    private boolean transcodeAndUpload(TranscodeMessage message, Span parentSpan) throws Exception {
 
         parentSpan.addEvent("Job status updated to PROCESSING");
         progressNotificationService.sendTranscodeStarted(message.getVideoId(), message.getQuality(), workerId);
@@ -153,22 +258,45 @@ public class TranscodeWorker {
             downloadSpan.end();
         }
 
+        FFProbeService.VideoMetadata source = null;
+        try {
+            source = ffProbeService.extractMetadata(inputPath);
+        } catch (Exception e) {
+            System.err.println("[TranscodeWorker] Probe failed, re-encoding without passthrough: " + e.getMessage());
+        }
+
+        // Scored once in the probe stage and reused by every rung and any re-transcode
+        Double complexityScore = videoRepository.findById(message.getVideoId())
+                .map(video -> video.getComplexityScore())
+                .orElse(null);
+
         Path outputPath = Files.createTempFile("video-output-", "-" + message.getQuality() + ".mp4");
-        ffmpegService.transcode(inputPath, message.getQuality(), outputPath);
+        FFmpegService.TranscodeResult result = ffmpegService.transcode(inputPath, message.getQuality(), outputPath,
+                source, complexityScore, message.getEncodeProfile());
+
+        String codecs = null;
+        try {
+            codecs = ffProbeService.extractMetadata(outputPath).getCodecsAttribute();
+        } catch (Exception e) {
+            System.err.println("[TranscodeWorker] Could not probe output codecs: " + e.getMessage());
+        }
 
         Span uploadSpan = tracer.spanBuilder("upload-transcoded-video").startSpan();
-        String outputObjectName = null;
+        String outputObjectName = message.getVideoId() + "-" + message.getQuality() + ".mp4";
+        // Uploaded under this worker's own key: a worker that lost its lease must not overwrite the new owner's output
+        String stagedObjectName = outputObjectName + "." + workerId + ".part";
+        boolean staged = false;
 
         try (Scope uploadScope = uploadSpan.makeCurrent()) {
-            outputObjectName = message.getVideoId() + "-" + message.getQuality() + ".mp4";
             uploadSpan.setAttribute("bucket", transcodedBucket);
             uploadSpan.setAttribute("object", outputObjectName);
 
             long outputSize = Files.size(outputPath);
 
             try (InputStream stream = Files.newInputStream(outputPath)) {
-                minioService.uploadFile(transcodedBucket, outputObjectName, stream, outputSize, "video/mp4");
+                minioService.uploadFile(transcodedBucket, stagedObjectName, stream, outputSize, "video/mp4");
             }
+            staged = true;
 
             uploadSpan.setAttribute("file.size", outputSize);
             uploadSpan.addEvent("Transcoded video uploaded");
@@ -176,76 +304,89 @@ public class TranscodeWorker {
             System.out.println("  ⬆️  Uploaded " + message.getQuality() + ": " +
                     (outputSize / 1024 / 1024) + " MB");
 
-            progressNotificationService.sendTranscodeComplete(message.getVideoId(), message.getQuality());
-            job.setStatus(TranscodeStatus.COMPLETED);
-            job.setCompletedAt(LocalDateTime.now());
-            job.setOutputPath(outputObjectName);
-            job.setOutputSize(outputSize);
-            transcodeJobRepository.save(job);
+            Integer durationSeconds = source != null ? source.getDurationSeconds() : null;
+            Long outputBitrate = durationSeconds != null && durationSeconds > 0
+                    ? outputSize * 8 / durationSeconds : null;
+            double elapsedSeconds = result.getElapsed().toMillis() / 1000.0;
+            Double encodeSpeed = durationSeconds != null && elapsedSeconds > 0
+                    ? durationSeconds / elapsedSeconds : null;
+
+            meterRegistry.timer("transcode.encode.duration",
+                    "quality", message.getQuality(), "profile", result.getEncodeProfile())
+                    .record(result.getElapsed());
+
+            if (transcodeJobRepository.complete(message.getJobId(), workerId, LocalDateTime.now(),
+                    outputObjectName, outputSize, result.getEncodeProfile(), outputBitrate, encodeSpeed, codecs) == 0) {
+                return false;
+            }
+
+            // Only the worker whose completion CAS succeeded writes the shared rendition key
+            promote(message.getJobId(), stagedObjectName, outputObjectName);
+            uploadSpan.addEvent("Transcoded video promoted");
+
+            if (jitPackager.isEnabled()) {
+                // Index from the local copy; if this fails the packaging stage indexes from storage
+                try {
+                    jitPackager.storeIndex(message.getVideoId(), message.getQuality(), outputPath);
+                } catch (Exception e) {
+                    System.err.println("[TranscodeWorker] Could not index " + message.getQuality()
+                            + " for JIT packaging: " + e.getMessage());
+                }
+            }
+            return true;
 
         } finally {
             uploadSpan.end();
 
+            if (staged) {
+                deleteStaged(stagedObjectName);
+            }
             Files.deleteIfExists(inputPath);
             Files.deleteIfExists(outputPath);
         }
+    }
 
-        checkAndUpdateVideoStatus(message.getVideoId());
-
-        transcodeSuccessCounter.increment();
-        parentSpan.addEvent("Transcode job completed successfully");
+    /**
+     * Copies the staged upload to the rendition key. If that fails the job is
+     * reopened so the failure path can fail it, rather than leaving it
+     * COMPLETED without an output.
+     */
+    private void promote(String jobId, String stagedObjectName, String outputObjectName) throws Exception {
+        try {
+            minioService.copyFile(transcodedBucket, stagedObjectName, outputObjectName);
+        } catch (Exception e) {
+            transcodeJobRepository.reopenCompleted(jobId, workerId);
+            throw e;
+        }
+    }
 
-        System.out.println("✅ Completed transcode job: " + message.getJobId() +
-                " (" + message.getQuality() + ")");
+    private void deleteStaged(String stagedObjectName) {
+        try {
+            minioService.deleteFile(transcodedBucket, stagedObjectName);
+        } catch (Exception e) {
+            System.err.println("[TranscodeWorker] Could not delete staged upload " + stagedObjectName + ": "
+                    + e.getMessage());
+        }
     }
 
     private void handleTranscodeFailure(String jobId, Exception e) {
         try {
+            // Only the current owner may fail the job; a stale worker must not clobber a retry
+            if (transcodeJobRepository.fail(jobId, workerId, e.getMessage()) == 0) {
+                return;
+            }
+
             TranscodeJob job = transcodeJobRepository.findById(jobId).orElse(null);
             if (job != null) {
-                job.setStatus(TranscodeStatus.FAILED);
-                job.setErrorMessage(e.getMessage());
-                job.setRetryCount(job.getRetryCount() + 1);
-                transcodeJobRepository.save(job);
-
                 transcodeFailureCounter.increment();
 
                 System.err.println("❌ Transcode job failed: " + jobId + " - " + e.getMessage());
+                progressNotificationService.sendTranscodeFailed(job.getVideoId(), job.getQuality(), e.getMessage());
+                pipelineOrchestrator.failStage(job.getVideoId(),
+                        PipelineOrchestrator.transcodeStage(job.getQuality()), e.getMessage());
             }
         } catch (Exception ex) {
             System.err.println("Failed to update job status: " + ex.getMessage());
         }
     }
-
-    private void checkAndUpdateVideoStatus(String videoId) {
-        List<TranscodeJob> jobs = transcodeJobRepository.findByVideoId(videoId);
-
-        boolean allCompleted = jobs.stream()
-                .allMatch(job -> job.getStatus() == TranscodeStatus.COMPLETED);
-
-        boolean anyFailed = jobs.stream()
-                .anyMatch(job -> job.getStatus() == TranscodeStatus.FAILED);
-
-        Video video = videoRepository.findById(videoId).orElse(null);
-        if (video != null) {
-            if (allCompleted) {
-
-                try {
-                    System.out.println("All transcodes complete, generating HLS...");
-                    progressNotificationService.sendHLSGenerationStarted(videoId);
-                    hlsService.generateHLS(videoId);
-                } catch (Exception e) {
-                    System.err.println("HLS generation failed: " + e.getMessage());
-                }
-                video.setStatus(VideoStatus.READY);
-                videoRepository.save(video);
-                System.out.println("✅ All transcode jobs completed for video: " + videoId);
-                progressNotificationService.sendHLSGenerationComplete(videoId);
-            } else if (anyFailed) {
-                video.setStatus(VideoStatus.FAILED);
-                videoRepository.save(video);
-                System.out.println("❌ Some transcode jobs failed for video: " + videoId);
-            }
-        }
-    }
 }
@@ -0,0 +1,59 @@
+package com.pixl.backend.controller;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import org.junit.jupiter.api.Test;
+
+import com.pixl.backend.service.ObjectStatCache;
+
+class ByteRangesTest {
+
+    private static final ZonedDateTime LAST_MODIFIED = ZonedDateTime.of(2026, 3, 14, 9, 26, 53, 0, ZoneOffset.UTC);
+    private final ObjectStatCache.ObjectStat stat = new ObjectStatCache.ObjectStat(1000, "abc", LAST_MODIFIED);
+
+    @Test
+    void parsesClosedOpenAndSuffixRanges() {
+        assertArrayEquals(new long[] { 0, 99 }, ByteRanges.parse("bytes=0-99", 1000));
+        assertArrayEquals(new long[] { 500, 999 }, ByteRanges.parse("bytes=500-", 1000));
+        assertArrayEquals(new long[] { 900, 999 }, ByteRanges.parse("bytes=-100", 1000));
+        // Ends past the object and suffixes longer than it are clamped
+        assertArrayEquals(new long[] { 990, 999 }, ByteRanges.parse("bytes=990-5000", 1000));
+        assertArrayEquals(new long[] { 0, 999 }, ByteRanges.parse("bytes=-5000", 1000));
+        assertArrayEquals(new long[] { 10, 20 }, ByteRanges.parse("bytes= 10 - 20", 1000));
+    }
+
+    @Test
+    void unsatisfiableOrMalformedRangesAreNull() {
+        assertNull(ByteRanges.parse("bytes=1000-", 1000));
+        assertNull(ByteRanges.parse("bytes=50-10", 1000));
+        assertNull(ByteRanges.parse("bytes=-0", 1000));
+        assertNull(ByteRanges.parse("bytes=0-0", 0));
+        assertNull(ByteRanges.parse("bytes=abc", 1000));
+        assertNull(ByteRanges.parse("bytes=a-b", 1000));
+        assertNull(ByteRanges.parse("bytes=-", 1000));
+    }
+
+    @Test
+    void onlySingleByteRangesAreSingle() {
+        assertTrue(ByteRanges.isSingle("bytes=0-99"));
+        assertFalse(ByteRanges.isSingle("bytes=0-99,200-299"));
+        assertFalse(ByteRanges.isSingle("items=0-1"));
+        assertFalse(ByteRanges.isSingle(null));
+    }
+
+    @Test
+    void ifRangeMatchesEtagOrExactLastModified() {
+        assertTrue(ByteRanges.stillValid(null, "\"abc\"", stat));
+        assertTrue(ByteRanges.stillValid("\"abc\"", "\"abc\"", stat));
+        assertFalse(ByteRanges.stillValid("\"old\"", "\"abc\"", stat));
+        assertTrue(ByteRanges.stillValid("Sat, 14 Mar 2026 09:26:53 GMT", "\"abc\"", stat));
+        assertFalse(ByteRanges.stillValid("Sat, 14 Mar 2026 09:26:52 GMT", "\"abc\"", stat));
+        assertFalse(ByteRanges.stillValid("yesterday", "\"abc\"", stat));
+    }
+}
@@ -0,0 +1,89 @@
+package com.pixl.backend.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ClosedSegmentTrackerTest {
+
+    private static final String PREFIX = "video/hls/720p-h264/";
+
+    @TempDir
+    Path hlsDir;
+
+    private final MinioService minioService = mock(MinioService.class);
+    private final SegmentUploader uploader = new SegmentUploader(minioService, new SimpleMeterRegistry(), 2);
+
+    @AfterEach
+    void shutdown() {
+        uploader.shutdown();
+    }
+
+    @Test
+    void uploadsASegmentOnceTheNextOneIsOpened() throws Exception {
+        SegmentUploader.Batch batch = newBatch();
+        HLSService.ClosedSegmentTracker tracker = new HLSService.ClosedSegmentTracker(hlsDir, batch);
+        Path first = segment("segment000.ts");
+        segment("segment001.ts");
+
+        tracker.accept("[hls @ 0x5581] Opening '" + first + "' for writing");
+        tracker.accept("[hls @ 0x5581] Opening '" + hlsDir.resolve("playlist.m3u8.tmp") + "' for writing");
+        // Reopening the current segment does not close it
+        tracker.accept("[hls @ 0x5581] Opening '" + first + "' for writing");
+        batch.await();
+        verify(minioService, never()).uploadFile(any(), any(), any(InputStream.class), anyLong(), any());
+
+        tracker.accept("[hls @ 0x5581] Opening '" + hlsDir.resolve("segment001.ts") + "' for writing");
+        batch.await();
+
+        assertEquals(1, batch.getSegmentCount());
+        verify(minioService).uploadFile(eq("videos-transcoded"), eq(PREFIX + "segment000.ts"),
+                any(InputStream.class), eq(4L), eq("video/mp2t"));
+        // Still needed for the I-frame scan
+        assertTrue(Files.exists(first));
+    }
+
+    @Test
+    void ignoresInitSectionAndOtherLines() throws Exception {
+        SegmentUploader.Batch batch = newBatch();
+        HLSService.ClosedSegmentTracker tracker = new HLSService.ClosedSegmentTracker(hlsDir, batch);
+        segment("init.mp4");
+        segment("segment000.m4s");
+
+        tracker.accept("[hls @ 0x5581] Opening 'init.mp4' for writing");
+        tracker.accept("frame=  240 fps=0.0 q=-1.0 size=N/A time=00:00:08.00 bitrate=N/A");
+        // A relative name resolves against the rendition directory
+        tracker.accept("[hls @ 0x5581] Opening 'segment000.m4s' for writing");
+        tracker.accept("[hls @ 0x5581] Opening 'segment001.m4s' for writing");
+        batch.await();
+
+        assertEquals(1, batch.getSegmentCount());
+        verify(minioService).uploadFile(eq("videos-transcoded"), eq(PREFIX + "segment000.m4s"),
+                any(InputStream.class), eq(4L), eq("video/iso.segment"));
+    }
+
+    private SegmentUploader.Batch newBatch() {
+        ReflectionTestUtils.setField(uploader, "maxAttempts", 1);
+        return uploader.newBatch("videos-transcoded", PREFIX, 2);
+    }
+
+    private Path segment(String name) throws Exception {
+        return Files.write(hlsDir.resolve(name), new byte[4]);
+    }
+}
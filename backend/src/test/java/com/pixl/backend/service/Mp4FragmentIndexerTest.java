@@ -0,0 +1,136 @@
+package com.pixl.backend.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.pixl.backend.dto.Mp4Index;
+
+class Mp4FragmentIndexerTest {
+
+    private static final int TIMESCALE = 1000;
+    private static final int VIDEO_TRACK = 1;
+    private static final int AUDIO_TRACK = 2;
+    private static final int MDAT_PAYLOAD = 400;
+    // A 2-second first segment, then 4-second ones: boundaries at 0, 2, 6, 10
+    private final Mp4FragmentIndexer indexer = new Mp4FragmentIndexer(policy());
+
+    @Test
+    void groupsFragmentsOnPolicyBoundaries() throws Exception {
+        byte[] init = init();
+        byte[][] fragments = { fragment(0, 2000, 300), fragment(2000, 2000, 200),
+                fragment(4000, 2000, 250), fragment(6000, 1000, 100) };
+        Mp4Index index = indexer.index(new ByteArrayInputStream(concat(init, fragments)));
+
+        assertEquals(init.length, index.getInitLength());
+        List<Mp4Index.Segment> segments = index.getSegments();
+        assertEquals(3, segments.size());
+
+        assertEquals(init.length, segments.get(0).getOffset());
+        assertEquals(fragments[0].length, segments.get(0).getLength());
+        assertEquals(2.0, segments.get(0).getDurationSeconds(), 1e-9);
+
+        // The fragments at 2s and 4s both fall in the second segment, one contiguous byte range
+        assertEquals(init.length + fragments[0].length, segments.get(1).getOffset());
+        assertEquals(fragments[1].length + fragments[2].length, segments.get(1).getLength());
+        assertEquals(2.0, segments.get(1).getStartSeconds(), 1e-9);
+        assertEquals(4.0, segments.get(1).getDurationSeconds(), 1e-9);
+
+        assertEquals(6.0, segments.get(2).getStartSeconds(), 1e-9);
+        assertEquals(index.getFileSize(), segments.get(2).getOffset() + segments.get(2).getLength());
+    }
+
+    @Test
+    void keyframeRangeEndsAfterFirstVideoSample() throws Exception {
+        byte[] first = fragment(0, 2000, 300);
+        byte[] second = fragment(2000, 2000, 200);
+        Mp4Index index = indexer.indexFragments(new ByteArrayInputStream(concat(init(), first, second)));
+
+        assertEquals(2, index.getSegments().size());
+        // moof, then the mdat header, then the keyframe
+        assertEquals(first.length - MDAT_PAYLOAD + 300, index.getSegments().get(0).getKeyframeLength());
+        assertEquals(second.length - MDAT_PAYLOAD + 200, index.getSegments().get(1).getKeyframeLength());
+    }
+
+    @Test
+    void rejectsProgressiveMp4() {
+        byte[] progressive = concat(box("ftyp", ascii("isom")), box("mdat", new byte[64]), moov(false));
+        assertThrows(IOException.class, () -> indexer.index(new ByteArrayInputStream(progressive)));
+    }
+
+    private static SegmentPolicy policy() {
+        SegmentPolicy policy = new SegmentPolicy(4, 2, HLSService.JIT);
+        ReflectionTestUtils.setField(policy, "keyframeToleranceSeconds", 0.1);
+        return policy;
+    }
+
+    private static byte[] init() {
+        return concat(box("ftyp", ascii("isom")), moov(true));
+    }
+
+    private static byte[] moov(boolean fragmented) {
+        byte[] mvex = box("mvex", concat(trex(VIDEO_TRACK), trex(AUDIO_TRACK)));
+        byte[] traks = concat(trak(VIDEO_TRACK, "vide"), trak(AUDIO_TRACK, "soun"));
+        return box("moov", fragmented ? concat(traks, mvex) : traks);
+    }
+
+    private static byte[] trak(int trackId, String handler) {
+        byte[] tkhd = box("tkhd", ByteBuffer.allocate(84).putInt(0).putInt(0).putInt(0).putInt(trackId).array());
+        byte[] mdhd = box("mdhd", ByteBuffer.allocate(24).putInt(0).putInt(0).putInt(0).putInt(TIMESCALE).array());
+        byte[] hdlr = box("hdlr", ByteBuffer.allocate(24).putInt(0).putInt(0).put(ascii(handler)).array());
+        return box("trak", concat(tkhd, box("mdia", concat(mdhd, hdlr))));
+    }
+
+    private static byte[] trex(int trackId) {
+        return box("trex", ByteBuffer.allocate(24).putInt(0).putInt(trackId).putInt(1).putInt(0).putInt(0).putInt(0)
+                .array());
+    }
+
+    /**
+     * An audio traf first, then a video traf whose trun lists two samples, the
+     * keyframe first; sample offsets are relative to the moof.
+     */
+    private static byte[] fragment(long decodeTime, int duration, int keyframeSize) {
+        byte[] audio = traf(AUDIO_TRACK, decodeTime, 0, 0, 0);
+        int moofSize = 8 + box("mfhd", new byte[8]).length + audio.length + traf(VIDEO_TRACK, 0, 0, 0, 0).length;
+        byte[] video = traf(VIDEO_TRACK, decodeTime, duration, keyframeSize, moofSize + 8);
+        byte[] moof = box("moof", concat(box("mfhd", new byte[8]), audio, video));
+        return concat(moof, box("mdat", new byte[MDAT_PAYLOAD]));
+    }
+
+    private static byte[] traf(int trackId, long decodeTime, int duration, int keyframeSize, int dataOffset) {
+        byte[] tfhd = box("tfhd", ByteBuffer.allocate(8).putInt(0x020000).putInt(trackId).array());
+        byte[] tfdt = box("tfdt", ByteBuffer.allocate(12).putInt(0x01000000).putLong(decodeTime).array());
+        // data_offset, sample_duration and sample_size present
+        byte[] trun = box("trun", ByteBuffer.allocate(28).putInt(0x000301).putInt(2).putInt(dataOffset)
+                .putInt(duration / 2).putInt(keyframeSize).putInt(duration - duration / 2).putInt(10).array());
+        return box("traf", concat(tfhd, tfdt, trun));
+    }
+
+    private static byte[] box(String type, byte[] payload) {
+        return ByteBuffer.allocate(8 + payload.length).putInt(8 + payload.length).put(ascii(type)).put(payload)
+                .array();
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] concat(byte[] first, byte[]... rest) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(first);
+        for (byte[] bytes : rest) {
+            out.writeBytes(bytes);
+        }
+        return out.toByteArray();
+    }
+}
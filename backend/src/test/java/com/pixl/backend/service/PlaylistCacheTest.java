@@ -0,0 +1,26 @@
+package com.pixl.backend.service;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class PlaylistCacheTest {
+
+    @Test
+    void acceptsGzipWhenListedWithoutZeroQuality() {
+        assertTrue(PlaylistCache.acceptsGzip("gzip"));
+        assertTrue(PlaylistCache.acceptsGzip("gzip, deflate, br"));
+        assertTrue(PlaylistCache.acceptsGzip("br;q=1.0, GZIP;q=0.5"));
+        assertTrue(PlaylistCache.acceptsGzip("gzip;q=0.001"));
+    }
+
+    @Test
+    void refusesGzipWhenAbsentOrExcluded() {
+        assertFalse(PlaylistCache.acceptsGzip(null));
+        assertFalse(PlaylistCache.acceptsGzip(""));
+        assertFalse(PlaylistCache.acceptsGzip("deflate, br"));
+        assertFalse(PlaylistCache.acceptsGzip("gzip;q=0"));
+        assertFalse(PlaylistCache.acceptsGzip("br, gzip; q=0.000"));
+    }
+}
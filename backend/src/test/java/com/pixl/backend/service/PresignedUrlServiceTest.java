@@ -0,0 +1,88 @@
+package com.pixl.backend.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PresignedUrlServiceTest {
+
+    private final MinioService minioService = mock(MinioService.class);
+    private final PresignedUrlService service = new PresignedUrlService(minioService, new SimpleMeterRegistry(), 100);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(service, "mode", PresignedUrlService.PRESIGNED);
+        ReflectionTestUtils.setField(service, "playlistExpirySeconds", 3600);
+        ReflectionTestUtils.setField(service, "transcodedBucket", "videos-transcoded");
+        when(minioService.getPresignedUrl(anyString(), anyString(), anyInt(), any()))
+                .thenAnswer(call -> "https://minio/" + call.getArgument(0) + "/" + call.getArgument(1) + "?sig");
+    }
+
+    @Test
+    void signsSegmentAndMapUris() throws Exception {
+        String playlist = """
+                #EXTM3U
+                #EXT-X-VERSION:7
+                #EXT-X-MAP:URI="init.mp4"
+                #EXTINF:4.000,
+                segment000.m4s
+                #EXTINF:2.500,
+                segment001.m4s
+                #EXT-X-ENDLIST
+                """;
+
+        assertEquals("""
+                #EXTM3U
+                #EXT-X-VERSION:7
+                #EXT-X-MAP:URI="https://minio/videos-transcoded/v1/hls/720p-h264/init.mp4?sig"
+                #EXTINF:4.000,
+                https://minio/videos-transcoded/v1/hls/720p-h264/segment000.m4s?sig
+                #EXTINF:2.500,
+                https://minio/videos-transcoded/v1/hls/720p-h264/segment001.m4s?sig
+                #EXT-X-ENDLIST
+                """, service.signMediaPlaylist("v1", "720p-h264", playlist));
+    }
+
+    @Test
+    void keepsMapAttributesAndSignsJitRenditionOnce() throws Exception {
+        String playlist = """
+                #EXTM3U
+                #EXT-X-I-FRAMES-ONLY
+                #EXT-X-MAP:URI="media.mp4",BYTERANGE="812@0"
+                #EXTINF:2.000,
+                #EXT-X-BYTERANGE:9000@812
+                media.mp4
+                #EXTINF:4.000,
+                #EXT-X-BYTERANGE:7000@60000
+                media.mp4
+                #EXT-X-ENDLIST""";
+
+        String signed = service.signMediaPlaylist("v1", "1080p-av1", playlist);
+
+        String url = "https://minio/videos-transcoded/v1-1080p-av1.mp4?sig";
+        assertEquals(playlist.replace("URI=\"media.mp4\"", "URI=\"" + url + "\"")
+                .replace("\nmedia.mp4", "\n" + url), signed);
+        // Cached for the rest of the playlist and for the next signing
+        service.signMediaPlaylist("v1", "1080p-av1", playlist);
+        verify(minioService, times(1)).getPresignedUrl(eq("videos-transcoded"), eq("v1-1080p-av1.mp4"),
+                eq(3600), any());
+    }
+
+    @Test
+    void leavesAbsoluteUrisAlone() throws Exception {
+        String playlist = "#EXTM3U\nhttps://cdn.example.com/segment000.ts\n";
+        assertEquals(playlist, service.signMediaPlaylist("v1", "480p-h264", playlist));
+    }
+}
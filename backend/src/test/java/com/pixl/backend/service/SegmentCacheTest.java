@@ -0,0 +1,125 @@
+package com.pixl.backend.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class SegmentCacheTest {
+
+    private static final int PAGE_SIZE = 1024;
+    private static final int ENTRY_BYTES = 4 * PAGE_SIZE;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // 8 pages: a 4-page window and a 4-page main region, in one partial slab
+    private final SegmentCache cache = new SegmentCache(meterRegistry, true,
+            8 * PAGE_SIZE, PAGE_SIZE, ENTRY_BYTES);
+
+    @Test
+    void evictedEntryStillBeingReadDoesNotOvercommitPages() throws Exception {
+        InputStream reader = cache.put("a", ENTRY_BYTES, () -> source('a'));
+        assertNotNull(reader);
+
+        cache.put("b", ENTRY_BYTES, () -> source('b')).close();
+        touch("b", 3);
+
+        // c demotes b, which is requested more often than a, so a is evicted while still being read
+        cache.put("c", ENTRY_BYTES, () -> source('c')).close();
+        assertFalse(cache.contains("a"));
+        assertTrue(cache.contains("c"));
+
+        // Keep filling: every admission must fit in pages that are physically free
+        for (char key = 'd'; key <= 'k'; key++) {
+            InputStream stream = cache.put(String.valueOf(key), ENTRY_BYTES, () -> source('x'));
+            if (stream != null) {
+                stream.close();
+            }
+        }
+
+        assertArrayEquals(content('a'), reader.readAllBytes());
+        reader.close();
+
+        for (char key = 'l'; key <= 'p'; key++) {
+            char fill = key;
+            try (InputStream stream = cache.put(String.valueOf(key), ENTRY_BYTES, () -> source(fill))) {
+                assertNotNull(stream);
+                assertArrayEquals(content(fill), stream.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    void rejectsAdmissionWhenReadersPinEveryPage() throws Exception {
+        InputStream a = cache.put("a", ENTRY_BYTES, () -> source('a'));
+        InputStream b = cache.put("b", ENTRY_BYTES, () -> source('b'));
+        touch("b", 3);
+
+        // a is evicted but still read, b is in the main region and still read: no page is free
+        assertNull(cache.put("c", ENTRY_BYTES, () -> source('c')));
+        assertArrayEquals(content('a'), a.readAllBytes());
+        a.close();
+
+        try (InputStream c = cache.put("c", ENTRY_BYTES, () -> source('c'))) {
+            assertNotNull(c);
+            assertArrayEquals(content('c'), c.readAllBytes());
+        }
+        assertArrayEquals(content('b'), b.readAllBytes());
+        b.close();
+    }
+
+    @Test
+    void loadInFlightDoesNotCrowdAnotherOutOfTheWindow() throws Exception {
+        InputStream[] inner = new InputStream[1];
+        // b is loaded while a's load still holds its pages, as two concurrent misses would
+        InputStream a = cache.put("a", ENTRY_BYTES, () -> {
+            inner[0] = cache.put("b", ENTRY_BYTES, () -> source('b'));
+            return source('a');
+        });
+
+        assertNotNull(a);
+        assertNotNull(inner[0]);
+        assertArrayEquals(content('a'), a.readAllBytes());
+        assertArrayEquals(content('b'), inner[0].readAllBytes());
+        a.close();
+        inner[0].close();
+        assertTrue(cache.contains("a"));
+        assertTrue(cache.contains("b"));
+    }
+
+    @Test
+    void putOfCachedKeyIsNotCountedAsHit() throws Exception {
+        cache.put("a", ENTRY_BYTES, () -> source('a')).close();
+
+        try (InputStream again = cache.put("a", ENTRY_BYTES, () -> source('x'))) {
+            assertArrayEquals(content('a'), again.readAllBytes());
+        }
+        assertEquals(0, meterRegistry.counter("segment.cache.requests", "result", "hit").count());
+    }
+
+    private void touch(String key, int times) throws Exception {
+        for (int i = 0; i < times; i++) {
+            cache.get(key).close();
+        }
+    }
+
+    private static InputStream source(char fill) {
+        return new ByteArrayInputStream(content(fill));
+    }
+
+    private static byte[] content(char fill) {
+        byte[] bytes = new byte[ENTRY_BYTES];
+        Arrays.fill(bytes, (byte) fill);
+        return bytes;
+    }
+}
@@ -0,0 +1,65 @@
+package com.pixl.backend.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class SegmentPolicyTest {
+
+    // Boundaries at 0, 2, 6, 10, ...
+    private final SegmentPolicy jit = policy(4, 2, HLSService.JIT);
+    // ffmpeg packages: the first segment is a full target long
+    private final SegmentPolicy segmented = policy(4, 2, "segmented");
+
+    @Test
+    void forcesKeyframesOnEveryBoundary() {
+        assertEquals("expr:gte(t,if(eq(n_forced,0),0,2+(n_forced-1)*4))", jit.forceKeyFramesExpression());
+        assertEquals("expr:gte(t,if(eq(n_forced,0),0,4+(n_forced-1)*4))", segmented.forceKeyFramesExpression());
+        assertEquals("expr:gte(t,if(eq(n_forced,0),0,1.5+(n_forced-1)*4.5))",
+                policy(4.5, 1.5, HLSService.JIT).forceKeyFramesExpression());
+    }
+
+    @Test
+    void alignedOnlyWithAKeyframeNearEveryBoundaryBeforeTheEnd() {
+        assertTrue(jit.isAligned(List.of(0.0, 2.0, 6.05, 9.92), 12));
+        // Nothing near 6
+        assertFalse(jit.isAligned(List.of(0.0, 2.0, 5.5, 10.0), 12));
+        // The scan stopped at 6 but the video runs past 10
+        assertFalse(jit.isAligned(List.of(0.0, 2.0, 6.0), 12));
+        assertTrue(jit.isAligned(List.of(0.0, 2.0, 6.0), null));
+        assertFalse(jit.isAligned(List.of(), 12));
+        assertFalse(jit.isAligned(null, 12));
+    }
+
+    @Test
+    void timestampsJustBeforeABoundaryCountAsOnIt() {
+        assertEquals(0, jit.segmentIndexAt(0));
+        assertEquals(0, jit.segmentIndexAt(1.85));
+        assertEquals(1, jit.segmentIndexAt(1.95));
+        assertEquals(1, jit.segmentIndexAt(2));
+        assertEquals(1, jit.segmentIndexAt(5.5));
+        assertEquals(2, jit.segmentIndexAt(5.95));
+        assertEquals(3, jit.segmentIndexAt(10));
+
+        assertEquals(0, segmented.segmentIndexAt(2));
+        assertEquals(1, segmented.segmentIndexAt(4));
+    }
+
+    @Test
+    void rejectsFirstSegmentLongerThanTarget() {
+        assertThrows(IllegalStateException.class, () -> new SegmentPolicy(4, 6, HLSService.JIT));
+        assertThrows(IllegalStateException.class, () -> new SegmentPolicy(0, 0, HLSService.JIT));
+    }
+
+    private static SegmentPolicy policy(double target, double first, String packagingMode) {
+        SegmentPolicy policy = new SegmentPolicy(target, first, packagingMode);
+        ReflectionTestUtils.setField(policy, "keyframeToleranceSeconds", 0.1);
+        return policy;
+    }
+}